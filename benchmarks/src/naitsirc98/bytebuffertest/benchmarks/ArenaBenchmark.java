@@ -0,0 +1,94 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import naitsirc98.bytebuffertest.alloc.MemoryArena;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request scoped small object workload: allocate {@code objects} blocks of 16-256 bytes, touch each one
+ * and release them all, either with per-call {@code malloc}/{@code free} or with a {@link MemoryArena}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ArenaBenchmark {
+
+    @Param({"100", "10000"})
+    public int objects;
+
+    private int[] sizes;
+    private long[] pointers;
+    private MemoryArena arena;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        sizes = new int[objects];
+        for(int i = 0;i < objects;i++) {
+            sizes[i] = 16 + random.nextInt(241);
+        }
+        pointers = new long[objects];
+        arena = new MemoryArena();
+    }
+
+    // Thread scoped state: every benchmark thread closes the arena it created in setup
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        arena.close();
+    }
+
+    @Benchmark
+    public long mallocFree() {
+        long checksum = 0;
+        for(int i = 0;i < objects;i++) {
+            final long ptr = MemoryUtils.malloc(sizes[i]);
+            MemoryUtils.setLong(ptr, 0, i);
+            pointers[i] = ptr;
+        }
+        for(int i = 0;i < objects;i++) {
+            checksum += MemoryUtils.getLong(pointers[i], 0);
+            MemoryUtils.free(pointers[i]);
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long arenaReset() {
+        long checksum = 0;
+        for(int i = 0;i < objects;i++) {
+            final long ptr = arena.malloc(sizes[i]);
+            MemoryUtils.setLong(ptr, 0, i);
+            pointers[i] = ptr;
+        }
+        for(int i = 0;i < objects;i++) {
+            checksum += MemoryUtils.getLong(pointers[i], 0);
+        }
+        arena.reset();
+        return checksum;
+    }
+
+    @Benchmark
+    public long arenaScope() {
+        long checksum = 0;
+        final MemoryArena.Scope scope = arena.push();
+        try {
+            for(int i = 0;i < objects;i++) {
+                final long ptr = arena.malloc(sizes[i]);
+                MemoryUtils.setLong(ptr, 0, i);
+                pointers[i] = ptr;
+            }
+            for(int i = 0;i < objects;i++) {
+                checksum += MemoryUtils.getLong(pointers[i], 0);
+            }
+        } finally {
+            scope.close();
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,40 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH suites with a fixed configuration so results from different JDKs can be compared side by side.
+ * Every run writes a JSON report named after the JDK that produced it, e.g. {@code jmh-17.0.9.json}.
+ *
+ * Usage: {@code BenchmarkMain [include regex...]}. With no arguments every benchmark is run.
+ */
+public final class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException {
+        final String javaVersion = System.getProperty("java.version");
+        final String resultFile = "jmh-" + javaVersion + ".json";
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .shouldFailOnError(true);
+
+        if(args.length == 0) {
+            options.include(BenchmarkMain.class.getPackage().getName() + ".*");
+        } else {
+            for(String include : args) {
+                options.include(include);
+            }
+        }
+
+        System.out.println(">> Running benchmarks on " + System.getProperty("java.vm.name") + " " + javaVersion);
+        new Runner(options.build()).run();
+        System.out.println(">> Results written to " + resultFile);
+    }
+
+    private BenchmarkMain() {}
+}
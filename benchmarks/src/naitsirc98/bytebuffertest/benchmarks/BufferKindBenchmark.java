@@ -0,0 +1,106 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Same sequential and random workloads over a heap buffer, a direct buffer and a {@link java.nio.MappedByteBuffer}
+ * obtained through {@link MemoryUtils#map}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BufferKindBenchmark {
+
+    private static final int RANDOM_READS = 4096;
+
+    @Param({"heap", "direct", "mapped"})
+    public String kind;
+
+    @Param({"16777216"})
+    public int bufferSize;
+
+    private ByteBuffer buffer;
+    private Path file;
+    private FileChannel channel;
+    private int[] offsets;
+
+    @Setup
+    public void setup() throws IOException {
+        switch(kind) {
+            case "heap":
+                buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.nativeOrder());
+                break;
+            case "direct":
+                buffer = MemoryUtils.allocBuffer(bufferSize);
+                break;
+            case "mapped":
+                file = Files.createTempFile("bytebuffertest", ".bin");
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                buffer = MemoryUtils.map(channel, FileChannel.MapMode.READ_WRITE, 0, bufferSize);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown buffer kind: " + kind);
+        }
+        for(int i = 0;i < bufferSize;i += Long.BYTES) {
+            buffer.putLong(i, i);
+        }
+        offsets = new int[RANDOM_READS];
+        Random random = new Random(42);
+        for(int i = 0;i < RANDOM_READS;i++) {
+            offsets[i] = random.nextInt(bufferSize / Long.BYTES) * Long.BYTES;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if(buffer.isDirect()) {
+            MemoryUtils.free(buffer);
+        }
+        buffer = null;
+        if(channel != null) {
+            channel.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    public long sequentialRead() {
+        long sum = 0;
+        for(int i = 0;i < bufferSize;i += Long.BYTES) {
+            sum += buffer.getLong(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public ByteBuffer sequentialWrite() {
+        for(int i = 0;i < bufferSize;i += Long.BYTES) {
+            buffer.putLong(i, i);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RANDOM_READS)
+    public long randomRead() {
+        long sum = 0;
+        for(int offset : offsets) {
+            sum += buffer.getLong(offset);
+        }
+        return sum;
+    }
+}
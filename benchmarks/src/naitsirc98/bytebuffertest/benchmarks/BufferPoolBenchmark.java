@@ -0,0 +1,62 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import naitsirc98.bytebuffertest.alloc.DirectBufferPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation latency of a direct buffer under churn: {@code allocateDirect} released by GC,
+ * {@code allocateDirect} released explicitly through the Cleaner, and {@link DirectBufferPool} acquire/release.
+ * Run with {@code -t} to see how each path scales with threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-XX:MaxDirectMemorySize=512m")
+public class BufferPoolBenchmark {
+
+    @Param({"4096", "65536", "1048576"})
+    public int size;
+
+    private DirectBufferPool pool;
+
+    @Setup
+    public void setup() {
+        pool = new DirectBufferPool();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public byte allocateDirectGc() {
+        ByteBuffer buffer = MemoryUtils.allocBuffer(size);
+        buffer.put(0, (byte) 1);
+        return buffer.get(size - 1);
+    }
+
+    @Benchmark
+    public byte allocateDirectFree() {
+        ByteBuffer buffer = MemoryUtils.allocBuffer(size);
+        buffer.put(0, (byte) 1);
+        final byte value = buffer.get(size - 1);
+        MemoryUtils.free(buffer);
+        return value;
+    }
+
+    @Benchmark
+    public byte pooled() {
+        ByteBuffer buffer = pool.acquire(size);
+        buffer.put(0, (byte) 1);
+        final byte value = buffer.get(size - 1);
+        pool.release(buffer);
+        return value;
+    }
+}
@@ -0,0 +1,124 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Word-at-a-time {@link MemoryUtils#mismatch}, {@link MemoryUtils#memcmp}, {@link MemoryUtils#memchr} and
+ * {@link MemoryUtils#hash64} against byte by byte loops and the {@link ByteBuffer} equivalents. The compared
+ * buffers only differ in their last byte and the searched byte is only found at the end, so every operation
+ * scans the whole range.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BulkCompareBenchmark {
+
+    private static final byte NEEDLE = (byte) 0xFF;
+
+    @Param({"64", "4096", "262144", "16777216"})
+    public int size;
+
+    private ByteBuffer a;
+    private ByteBuffer b;
+    private long aAddress;
+    private long bAddress;
+
+    @Setup
+    public void setup() {
+        a = MemoryUtils.allocBuffer(size);
+        b = MemoryUtils.allocBuffer(size);
+        aAddress = MemoryUtils.addressOf(a);
+        bAddress = MemoryUtils.addressOf(b);
+        for(int i = 0;i < size;i++) {
+            a.put(i, (byte) (i % 251));
+            b.put(i, (byte) (i % 251));
+        }
+        a.put(size - 1, NEEDLE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MemoryUtils.free(a);
+        MemoryUtils.free(b);
+        a = b = null;
+    }
+
+    // ===== mismatch
+
+    @Benchmark
+    public long mismatch() {
+        return MemoryUtils.mismatch(aAddress, bAddress, size);
+    }
+
+    @Benchmark
+    public int bufferMismatch() {
+        return a.mismatch(b);
+    }
+
+    @Benchmark
+    public long mismatchByteLoop() {
+        for(long i = 0;i < size;i++) {
+            if(MemoryUtils.getByte(aAddress, i) != MemoryUtils.getByte(bAddress, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // ===== compare
+
+    @Benchmark
+    public int memcmp() {
+        return MemoryUtils.memcmp(aAddress, bAddress, size);
+    }
+
+    @Benchmark
+    public int bufferCompareTo() {
+        return a.compareTo(b);
+    }
+
+    // ===== search
+
+    @Benchmark
+    public long memchr() {
+        return MemoryUtils.memchr(aAddress, size, NEEDLE);
+    }
+
+    @Benchmark
+    public long memchrByteLoop() {
+        for(long i = 0;i < size;i++) {
+            if(MemoryUtils.getByte(aAddress, i) == NEEDLE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // ===== hash
+
+    @Benchmark
+    public long hash64() {
+        return MemoryUtils.hash64(aAddress, size, 0);
+    }
+
+    @Benchmark
+    public int bufferHashCode() {
+        return a.hashCode();
+    }
+
+    @Benchmark
+    public long hashByteLoop() {
+        long hash = 0;
+        for(long i = 0;i < size;i++) {
+            hash = 31 * hash + MemoryUtils.getByte(aAddress, i);
+        }
+        return hash;
+    }
+}
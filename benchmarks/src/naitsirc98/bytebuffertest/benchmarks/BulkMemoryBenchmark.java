@@ -0,0 +1,119 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk copy and fill at several sizes: {@link MemoryUtils#memcpy} / {@link MemoryUtils#memset}
+ * against the equivalent {@link ByteBuffer} bulk operations and plain loops.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BulkMemoryBenchmark {
+
+    @Param({"64", "4096", "262144", "16777216"})
+    public int size;
+
+    private ByteBuffer src;
+    private ByteBuffer dest;
+    private long srcAddress;
+    private long destAddress;
+    private byte[] array;
+
+    @Setup
+    public void setup() {
+        src = MemoryUtils.allocBuffer(size);
+        dest = MemoryUtils.allocBuffer(size);
+        srcAddress = MemoryUtils.addressOf(src);
+        destAddress = MemoryUtils.addressOf(dest);
+        array = new byte[size];
+        for(int i = 0;i < size;i++) {
+            src.put(i, (byte) i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        MemoryUtils.free(src);
+        MemoryUtils.free(dest);
+        src = dest = null;
+    }
+
+    // ===== direct -> direct
+
+    @Benchmark
+    public long memcpyAddress() {
+        MemoryUtils.memcpy(srcAddress, destAddress, size);
+        return destAddress;
+    }
+
+    @Benchmark
+    public ByteBuffer bufferPutBuffer() {
+        return dest.clear().put(src.clear());
+    }
+
+    @Benchmark
+    public ByteBuffer bufferLongLoop() {
+        for(int i = 0;i < size;i += Long.BYTES) {
+            dest.putLong(i, src.getLong(i));
+        }
+        return dest;
+    }
+
+    // ===== direct -> heap
+
+    @Benchmark
+    public byte[] memcpyToArray() {
+        MemoryUtils.memcpy(srcAddress, 0, array, 0, size);
+        return array;
+    }
+
+    @Benchmark
+    public byte[] bufferGetArray() {
+        src.get(0, array);
+        return array;
+    }
+
+    // ===== heap -> direct
+
+    @Benchmark
+    public long memcpyFromArray() {
+        MemoryUtils.memcpy(array, 0, destAddress, 0, size);
+        return destAddress;
+    }
+
+    @Benchmark
+    public ByteBuffer bufferPutArray() {
+        return dest.put(0, array);
+    }
+
+    // ===== fill
+
+    @Benchmark
+    public long memset() {
+        MemoryUtils.memset(destAddress, size, 0x5A);
+        return destAddress;
+    }
+
+    @Benchmark
+    public ByteBuffer bufferFillLoop() {
+        for(int i = 0;i < size;i += Long.BYTES) {
+            dest.putLong(i, 0x5A5A5A5A5A5A5A5AL);
+        }
+        return dest;
+    }
+
+    @Benchmark
+    public byte[] arrayFill() {
+        Arrays.fill(array, (byte) 0x5A);
+        return array;
+    }
+}
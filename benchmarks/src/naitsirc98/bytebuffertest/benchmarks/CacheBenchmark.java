@@ -0,0 +1,94 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.cache.OffHeapCache;
+import naitsirc98.bytebuffertest.cache.ValueReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and overwrites of a prefilled {@link OffHeapCache} that fits every key, so there are no evictions, against
+ * a {@link ConcurrentHashMap} of byte arrays. Reads go through the in place {@link ValueReader} view or copy into
+ * an array. Run with {@code -t <threads>} to see how the lock striping of the segments holds up under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CacheBenchmark {
+
+    private static final int KEYS = 10000;
+    private static final ValueReader FIRST_BYTE = value -> value.get(0);
+
+    @Param({"1", "64"})
+    public int segments;
+
+    @Param({"128", "4096"})
+    public int valueSize;
+
+    private OffHeapCache cache;
+    private ConcurrentHashMap<Long, byte[]> heapCache;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private final SplittableRandom random = new SplittableRandom();
+        private byte[] value;
+
+        @Setup
+        public void setup(CacheBenchmark benchmark) {
+            value = new byte[benchmark.valueSize];
+        }
+
+        long nextKey() {
+            return random.nextInt(KEYS);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        final long blockSize = Long.highestOneBit(valueSize + 16 - 1) << 1;
+        cache = OffHeapCache.allocate(Math.max(KEYS * blockSize * 2, segments * (long) OffHeapCache.DEFAULT_SLAB_SIZE * 2), segments);
+        heapCache = new ConcurrentHashMap<>();
+        final byte[] value = new byte[valueSize];
+        for(long key = 0;key < KEYS;key++) {
+            cache.put(key, value, 0, valueSize);
+            heapCache.put(key, value.clone());
+        }
+        System.out.printf("%n>> %s%n", cache.stats());
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Benchmark
+    public long readInPlace(ThreadState state) {
+        return cache.read(state.nextKey(), FIRST_BYTE, -1);
+    }
+
+    @Benchmark
+    public int getCopy(ThreadState state) {
+        return cache.get(state.nextKey(), state.value, 0);
+    }
+
+    @Benchmark
+    public boolean put(ThreadState state) {
+        return cache.put(state.nextKey(), state.value, 0, valueSize);
+    }
+
+    @Benchmark
+    public byte heapGet(ThreadState state) {
+        return heapCache.get(state.nextKey())[0];
+    }
+
+    @Benchmark
+    public byte[] heapPut(ThreadState state) {
+        return heapCache.put(state.nextKey(), state.value.clone());
+    }
+}
@@ -0,0 +1,203 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.collections.LongIntMap;
+import naitsirc98.bytebuffertest.collections.LongLongMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup and insertion of random long keys in the off-heap {@link LongLongMap} and {@link LongIntMap} against a
+ * boxed {@link HashMap} and a heap primitive open addressing map. Setup prints the footprint of every map: the
+ * native table size for the off-heap maps and the retained heap, measured around a full GC, for the heap ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CollectionsBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({"10000", "1000000"})
+    public int entries;
+
+    private long[] keys;
+    private long[] missingKeys;
+    private LongLongMap offHeapMap;
+    private LongIntMap offHeapIntMap;
+    private HashMap<Long, Long> boxedMap;
+    private HeapLongLongMap heapMap;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        keys = new long[entries];
+        missingKeys = new long[LOOKUPS];
+        for(int i = 0;i < entries;i++) {
+            keys[i] = random.nextLong() | 1;
+        }
+        for(int i = 0;i < LOOKUPS;i++) {
+            missingKeys[i] = random.nextLong() & ~1L;
+        }
+        offHeapMap = new LongLongMap();
+        offHeapIntMap = new LongIntMap();
+        for(long key : keys) {
+            offHeapMap.put(key, key);
+            offHeapIntMap.put(key, (int) key);
+        }
+        long before = usedHeap();
+        boxedMap = new HashMap<>();
+        for(long key : keys) {
+            boxedMap.put(key, key);
+        }
+        final long boxedBytes = usedHeap() - before;
+        before = usedHeap();
+        heapMap = new HeapLongLongMap();
+        for(long key : keys) {
+            heapMap.put(key, key);
+        }
+        final long heapBytes = usedHeap() - before;
+        System.out.printf("%n>> Footprint of %d entries: LongLongMap %d bytes, LongIntMap %d bytes, HashMap ~%d bytes," +
+                " heap primitive map ~%d bytes%n", entries, offHeapMap.memoryUsage(), offHeapIntMap.memoryUsage(),
+                boxedBytes, heapBytes);
+    }
+
+    @TearDown
+    public void tearDown() {
+        offHeapMap.close();
+        offHeapIntMap.close();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0;i < 3;i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private long nextKey() {
+        cursor = (cursor + 7919) % entries;
+        return keys[cursor];
+    }
+
+    private long nextMissingKey() {
+        cursor = (cursor + 1) & (LOOKUPS - 1);
+        return missingKeys[cursor];
+    }
+
+    // ===== hit
+
+    @Benchmark
+    public long offHeapGet() {
+        return offHeapMap.get(nextKey());
+    }
+
+    @Benchmark
+    public int offHeapIntGet() {
+        return offHeapIntMap.get(nextKey());
+    }
+
+    @Benchmark
+    public Long boxedGet() {
+        return boxedMap.get(nextKey());
+    }
+
+    @Benchmark
+    public long heapGet() {
+        return heapMap.get(nextKey());
+    }
+
+    // ===== miss
+
+    @Benchmark
+    public long offHeapGetMissing() {
+        return offHeapMap.get(nextMissingKey());
+    }
+
+    @Benchmark
+    public Long boxedGetMissing() {
+        return boxedMap.get(nextMissingKey());
+    }
+
+    @Benchmark
+    public long heapGetMissing() {
+        return heapMap.get(nextMissingKey());
+    }
+
+    // ===== update
+
+    @Benchmark
+    public long offHeapAddTo() {
+        return offHeapMap.addTo(nextKey(), 1);
+    }
+
+    @Benchmark
+    public Long boxedMerge() {
+        return boxedMap.merge(nextKey(), 1L, Long::sum);
+    }
+
+    /**
+     * Minimal heap equivalent of {@link LongLongMap}, with the same probing and hashing, standing in for the
+     * primitive maps of libraries such as fastutil or Agrona.
+     */
+    static final class HeapLongLongMap {
+
+        private long[] table = new long[32];
+        private int mask = 15;
+        private int size;
+
+        long get(long key) {
+            for(int slot = (int) mix(key) & mask;;slot = (slot + 1) & mask) {
+                final long current = table[slot << 1];
+                if(current == key) {
+                    return table[(slot << 1) + 1];
+                }
+                if(current == 0) {
+                    return 0;
+                }
+            }
+        }
+
+        void put(long key, long value) {
+            for(int slot = (int) mix(key) & mask;;slot = (slot + 1) & mask) {
+                final long current = table[slot << 1];
+                if(current == key || current == 0) {
+                    table[slot << 1] = key;
+                    table[(slot << 1) + 1] = value;
+                    if(current == 0 && ++size > (mask + 1) * 3 / 4) {
+                        grow();
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void grow() {
+            final long[] old = table;
+            table = new long[old.length << 1];
+            mask = (mask << 1) | 1;
+            size = 0;
+            for(int i = 0;i < old.length;i += 2) {
+                if(old[i] != 0) {
+                    put(old[i], old[i + 1]);
+                }
+            }
+        }
+
+        private static long mix(long key) {
+            key ^= key >>> 33;
+            key *= 0xFF51AFD7ED558CCDL;
+            key ^= key >>> 33;
+            key *= 0xC4CEB9FE1A85EC53L;
+            key ^= key >>> 33;
+            return key;
+        }
+    }
+}
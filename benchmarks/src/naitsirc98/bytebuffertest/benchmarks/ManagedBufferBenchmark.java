@@ -0,0 +1,114 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import naitsirc98.bytebuffertest.alloc.EpochReclaimer;
+import naitsirc98.bytebuffertest.alloc.ManagedBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the safe read path of {@link ManagedBuffer}: a short read of {@code reads} longs done through raw
+ * {@link MemoryUtils} accessors, through the checked accessors, inside a retain/release pair and inside an
+ * {@link EpochReclaimer} epoch. The contended variants run the same reads from four threads on one shared buffer,
+ * where every retain/release hits the same reference counter while epochs only touch thread local slots.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ManagedBufferBenchmark {
+
+    private static final int SIZE = 4096;
+
+    @Param({"1", "16"})
+    public int reads;
+
+    private EpochReclaimer reclaimer;
+    private ManagedBuffer counted;
+    private ManagedBuffer epochBuffer;
+    private long address;
+
+    @Setup
+    public void setup() {
+        reclaimer = new EpochReclaimer();
+        counted = ManagedBuffer.allocate(SIZE);
+        epochBuffer = ManagedBuffer.allocate(SIZE, reclaimer);
+        address = MemoryUtils.calloc(SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        counted.release();
+        epochBuffer.release();
+        reclaimer.close();
+        MemoryUtils.free(address);
+    }
+
+    private long readChecked(ManagedBuffer buffer) {
+        long sum = 0;
+        for(int i = 0;i < reads;i++) {
+            sum += buffer.getLong(i * 64L);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long raw() {
+        long sum = 0;
+        for(int i = 0;i < reads;i++) {
+            sum += MemoryUtils.getLong(address, i * 64L);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long checked() {
+        return readChecked(counted);
+    }
+
+    @Benchmark
+    public long refCounted() {
+        counted.retain();
+        try {
+            return readChecked(counted);
+        } finally {
+            counted.release();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadGuard {
+
+        private EpochReclaimer.Guard guard;
+
+        @Setup
+        public void setup(ManagedBufferBenchmark benchmark) {
+            guard = benchmark.reclaimer.guard();
+        }
+    }
+
+    @Benchmark
+    public long epoch(ThreadGuard threadGuard) {
+        final EpochReclaimer.Guard guard = threadGuard.guard.enter();
+        try {
+            return readChecked(epochBuffer);
+        } finally {
+            guard.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long refCountedContended() {
+        return refCounted();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long epochContended(ThreadGuard threadGuard) {
+        return epoch(threadGuard);
+    }
+}
@@ -0,0 +1,132 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.MemoryBackend;
+import naitsirc98.bytebuffertest.MemoryUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.foreign.ValueLayout.JAVA_LONG_UNALIGNED;
+
+/**
+ * The same loops through {@link MemoryUtils} with each {@link MemoryBackend}, one fork configuration per backend.
+ * The unsafe fork also runs the loops directly on memory segments: one sized to the buffer, whose bounds checks
+ * the JIT should hoist out of the loop, and one spanning the whole address space like the foreign backend uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public abstract class MemoryBackendBenchmark {
+
+    private static final int RANDOM_READS = 4096;
+
+    @Param({"4096", "1048576"})
+    public int size;
+
+    protected ByteBuffer buffer;
+    protected long address;
+    protected long copyAddress;
+    protected int[] offsets;
+
+    @Setup
+    public void setup() {
+        buffer = MemoryUtils.allocBuffer(size);
+        address = MemoryUtils.addressOf(buffer);
+        copyAddress = MemoryUtils.malloc(size);
+        for(int i = 0;i < size;i += Long.BYTES) {
+            MemoryUtils.setLong(address, i, i);
+        }
+        offsets = new int[RANDOM_READS];
+        Random random = new Random(42);
+        for(int i = 0;i < RANDOM_READS;i++) {
+            offsets[i] = random.nextInt(size / Long.BYTES) * Long.BYTES;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        MemoryUtils.free(copyAddress);
+        MemoryUtils.free(buffer);
+        buffer = null;
+    }
+
+    @Benchmark
+    public long sumLongs() {
+        long sum = 0;
+        for(int i = 0;i < size;i += Long.BYTES) {
+            sum += MemoryUtils.getLong(address, i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long writeLongs() {
+        for(int i = 0;i < size;i += Long.BYTES) {
+            MemoryUtils.setLong(address, i, i);
+        }
+        return address;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RANDOM_READS)
+    public long randomReads() {
+        long sum = 0;
+        for(int offset : offsets) {
+            sum += MemoryUtils.getLong(address, offset);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long memcpy() {
+        MemoryUtils.memcpy(address, copyAddress, size);
+        return copyAddress;
+    }
+
+    @Benchmark
+    public long mallocFree() {
+        final long ptr = MemoryUtils.malloc(64);
+        MemoryUtils.free(ptr);
+        return ptr;
+    }
+
+    @Fork(2)
+    public static class Unsafe extends MemoryBackendBenchmark {
+
+        private MemorySegment sized;
+        private MemorySegment everything;
+
+        @Setup
+        public void setupSegments() {
+            sized = MemorySegment.ofAddress(address).reinterpret(size);
+            everything = MemorySegment.NULL.reinterpret(Long.MAX_VALUE);
+        }
+
+        @Benchmark
+        public long sumLongsSizedSegment() {
+            long sum = 0;
+            for(long i = 0;i < sized.byteSize();i += Long.BYTES) {
+                sum += sized.get(JAVA_LONG_UNALIGNED, i);
+            }
+            return sum;
+        }
+
+        @Benchmark
+        public long sumLongsEverythingSegment() {
+            long sum = 0;
+            for(int i = 0;i < size;i += Long.BYTES) {
+                sum += everything.get(JAVA_LONG_UNALIGNED, address + i);
+            }
+            return sum;
+        }
+    }
+
+    @Fork(value = 2, jvmArgsAppend = {"-D" + MemoryBackend.PROPERTY + "=foreign", "--enable-native-access=ALL-UNNAMED"})
+    public static class Foreign extends MemoryBackendBenchmark {
+    }
+}
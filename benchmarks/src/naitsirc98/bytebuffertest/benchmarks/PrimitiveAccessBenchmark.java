@@ -0,0 +1,278 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single value get/put at every primitive width through the three access paths we have:
+ * absolute {@link ByteBuffer} accessors, {@link MemoryUtils} raw pointer accessors and byte buffer view {@link VarHandle}s.
+ * Offsets are random but 8-byte aligned so every width reads the same cache lines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PrimitiveAccessBenchmark {
+
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+    private static final VarHandle SHORT = MethodHandles.byteBufferViewVarHandle(short[].class, ORDER);
+    private static final VarHandle CHAR = MethodHandles.byteBufferViewVarHandle(char[].class, ORDER);
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ORDER);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ORDER);
+    private static final VarHandle FLOAT = MethodHandles.byteBufferViewVarHandle(float[].class, ORDER);
+    private static final VarHandle DOUBLE = MethodHandles.byteBufferViewVarHandle(double[].class, ORDER);
+
+    private static final int OFFSETS = 4096;
+
+    @Param({"4096", "16777216"})
+    public int bufferSize;
+
+    private ByteBuffer buffer;
+    private long address;
+    private int[] offsets;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        buffer = MemoryUtils.allocBuffer(bufferSize, ORDER);
+        address = MemoryUtils.addressOf(buffer);
+        offsets = new int[OFFSETS];
+        Random random = new Random(42);
+        for(int i = 0;i < OFFSETS;i++) {
+            offsets[i] = random.nextInt(bufferSize / Long.BYTES) * Long.BYTES;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        MemoryUtils.free(buffer);
+        buffer = null;
+    }
+
+    private int next() {
+        return offsets[cursor++ & (OFFSETS - 1)];
+    }
+
+    // ===== byte
+
+    @Benchmark
+    public byte bufferGetByte() {
+        return buffer.get(next());
+    }
+
+    @Benchmark
+    public void bufferPutByte() {
+        buffer.put(next(), (byte) cursor);
+    }
+
+    @Benchmark
+    public byte unsafeGetByte() {
+        return MemoryUtils.getByte(address, next());
+    }
+
+    @Benchmark
+    public void unsafeSetByte() {
+        MemoryUtils.setByte(address, next(), cursor);
+    }
+
+    // ===== short
+
+    @Benchmark
+    public short bufferGetShort() {
+        return buffer.getShort(next());
+    }
+
+    @Benchmark
+    public void bufferPutShort() {
+        buffer.putShort(next(), (short) cursor);
+    }
+
+    @Benchmark
+    public short unsafeGetShort() {
+        return MemoryUtils.getShort(address, next());
+    }
+
+    @Benchmark
+    public void unsafeSetShort() {
+        MemoryUtils.setShort(address, next(), cursor);
+    }
+
+    @Benchmark
+    public short varHandleGetShort() {
+        return (short) SHORT.get(buffer, next());
+    }
+
+    @Benchmark
+    public void varHandleSetShort() {
+        SHORT.set(buffer, next(), (short) cursor);
+    }
+
+    // ===== char
+
+    @Benchmark
+    public char bufferGetChar() {
+        return buffer.getChar(next());
+    }
+
+    @Benchmark
+    public void bufferPutChar() {
+        buffer.putChar(next(), (char) cursor);
+    }
+
+    @Benchmark
+    public char unsafeGetChar() {
+        return MemoryUtils.getChar(address, next());
+    }
+
+    @Benchmark
+    public void unsafeSetChar() {
+        MemoryUtils.setChar(address, next(), (char) cursor);
+    }
+
+    @Benchmark
+    public char varHandleGetChar() {
+        return (char) CHAR.get(buffer, next());
+    }
+
+    @Benchmark
+    public void varHandleSetChar() {
+        CHAR.set(buffer, next(), (char) cursor);
+    }
+
+    // ===== int
+
+    @Benchmark
+    public int bufferGetInt() {
+        return buffer.getInt(next());
+    }
+
+    @Benchmark
+    public void bufferPutInt() {
+        buffer.putInt(next(), cursor);
+    }
+
+    @Benchmark
+    public int unsafeGetInt() {
+        return MemoryUtils.getInt(address, next());
+    }
+
+    @Benchmark
+    public void unsafeSetInt() {
+        MemoryUtils.setInt(address, next(), cursor);
+    }
+
+    @Benchmark
+    public int varHandleGetInt() {
+        return (int) INT.get(buffer, next());
+    }
+
+    @Benchmark
+    public void varHandleSetInt() {
+        INT.set(buffer, next(), cursor);
+    }
+
+    // ===== long
+
+    @Benchmark
+    public long bufferGetLong() {
+        return buffer.getLong(next());
+    }
+
+    @Benchmark
+    public void bufferPutLong() {
+        buffer.putLong(next(), cursor);
+    }
+
+    @Benchmark
+    public long unsafeGetLong() {
+        return MemoryUtils.getLong(address, next());
+    }
+
+    @Benchmark
+    public void unsafeSetLong() {
+        MemoryUtils.setLong(address, next(), cursor);
+    }
+
+    @Benchmark
+    public long varHandleGetLong() {
+        return (long) LONG.get(buffer, next());
+    }
+
+    @Benchmark
+    public void varHandleSetLong() {
+        LONG.set(buffer, next(), (long) cursor);
+    }
+
+    // ===== float
+
+    @Benchmark
+    public float bufferGetFloat() {
+        return buffer.getFloat(next());
+    }
+
+    @Benchmark
+    public void bufferPutFloat() {
+        buffer.putFloat(next(), cursor);
+    }
+
+    @Benchmark
+    public float unsafeGetFloat() {
+        return MemoryUtils.getFloat(address, next());
+    }
+
+    @Benchmark
+    public void unsafeSetFloat() {
+        MemoryUtils.setFloat(address, next(), cursor);
+    }
+
+    @Benchmark
+    public float varHandleGetFloat() {
+        return (float) FLOAT.get(buffer, next());
+    }
+
+    @Benchmark
+    public void varHandleSetFloat() {
+        FLOAT.set(buffer, next(), (float) cursor);
+    }
+
+    // ===== double
+
+    @Benchmark
+    public double bufferGetDouble() {
+        return buffer.getDouble(next());
+    }
+
+    @Benchmark
+    public void bufferPutDouble() {
+        buffer.putDouble(next(), cursor);
+    }
+
+    @Benchmark
+    public double unsafeGetDouble() {
+        return MemoryUtils.getDouble(address, next());
+    }
+
+    @Benchmark
+    public void unsafeSetDouble() {
+        MemoryUtils.setDouble(address, next(), cursor);
+    }
+
+    @Benchmark
+    public double varHandleGetDouble() {
+        return (double) DOUBLE.get(buffer, next());
+    }
+
+    @Benchmark
+    public void varHandleSetDouble() {
+        DOUBLE.set(buffer, next(), (double) cursor);
+    }
+}
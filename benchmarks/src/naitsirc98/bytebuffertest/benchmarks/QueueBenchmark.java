@@ -0,0 +1,208 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import naitsirc98.bytebuffertest.queue.MessageHandler;
+import naitsirc98.bytebuffertest.queue.MpscRingBuffer;
+import naitsirc98.bytebuffertest.queue.SpscRingBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Producer/consumer throughput of the off-heap ring buffers against {@link ArrayBlockingQueue} and
+ * {@link ConcurrentLinkedQueue}, with one producer and with three contended producers. Calls that find the queue
+ * full or empty return immediately, so only the {@code sent} and {@code received} counters are meaningful.
+ * The ring buffers copy a {@value #MESSAGE_LENGTH} byte record in and out; the heap queues pass a reference.
+ * {@link ConcurrentLinkedQueue} is unbounded, so its backlog is capped with an atomic counter.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class QueueBenchmark {
+
+    static final int MESSAGE_LENGTH = 32;
+    private static final int CAPACITY = 64 * 1024;
+    private static final int QUEUE_CAPACITY = CAPACITY / (MESSAGE_LENGTH + 8);
+    private static final Object MESSAGE = new Object();
+
+    private SpscRingBuffer spsc;
+    private MpscRingBuffer mpsc;
+    private Queue<Object> arrayBlockingQueue;
+    private Queue<Object> concurrentLinkedQueue;
+    private final AtomicInteger concurrentLinkedQueueBacklog = new AtomicInteger();
+
+    @Setup
+    public void setup() {
+        spsc = SpscRingBuffer.allocate(CAPACITY);
+        mpsc = MpscRingBuffer.allocate(CAPACITY);
+        arrayBlockingQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        concurrentLinkedQueue = new ConcurrentLinkedQueue<>();
+    }
+
+    @TearDown
+    public void tearDown() {
+        MemoryUtils.free(spsc.buffer());
+        MemoryUtils.free(mpsc.buffer());
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long sent;
+        public long received;
+
+        private long message;
+        private long checksum;
+        private final MessageHandler handler = (typeId, address, length) -> checksum += MemoryUtils.getLong(address, 0);
+
+        @Setup(Level.Trial)
+        public void setup() {
+            message = MemoryUtils.calloc(MESSAGE_LENGTH);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            MemoryUtils.free(message);
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            sent = received = 0;
+        }
+    }
+
+    private static long offer(Queue<Object> queue, Counters counters) {
+        if(queue.offer(MESSAGE)) {
+            ++counters.sent;
+        }
+        return counters.sent;
+    }
+
+    private static Object poll(Queue<Object> queue, Counters counters) {
+        final Object message = queue.poll();
+        if(message != null) {
+            ++counters.received;
+        }
+        return message;
+    }
+
+    // ===== one producer
+
+    @Benchmark
+    @Group("spsc")
+    public boolean spscWrite(Counters counters) {
+        final boolean written = spsc.write(1, counters.message, MESSAGE_LENGTH);
+        if(written) {
+            ++counters.sent;
+        }
+        return written;
+    }
+
+    @Benchmark
+    @Group("spsc")
+    public int spscRead(Counters counters) {
+        final int read = spsc.read(counters.handler);
+        counters.received += read;
+        return read;
+    }
+
+    @Benchmark
+    @Group("mpsc")
+    public boolean mpscWrite(Counters counters) {
+        final boolean written = mpsc.write(1, counters.message, MESSAGE_LENGTH);
+        if(written) {
+            ++counters.sent;
+        }
+        return written;
+    }
+
+    @Benchmark
+    @Group("mpsc")
+    public int mpscRead(Counters counters) {
+        final int read = mpsc.read(counters.handler);
+        counters.received += read;
+        return read;
+    }
+
+    @Benchmark
+    @Group("arrayBlockingQueue")
+    public long arrayBlockingQueueOffer(Counters counters) {
+        return offer(arrayBlockingQueue, counters);
+    }
+
+    @Benchmark
+    @Group("arrayBlockingQueue")
+    public Object arrayBlockingQueuePoll(Counters counters) {
+        return poll(arrayBlockingQueue, counters);
+    }
+
+    @Benchmark
+    @Group("concurrentLinkedQueue")
+    public long concurrentLinkedQueueOffer(Counters counters) {
+        // The queue is unbounded: cap the backlog so the producers cannot run away from the consumer and fill the heap
+        if(concurrentLinkedQueueBacklog.get() >= QUEUE_CAPACITY) {
+            return counters.sent;
+        }
+        concurrentLinkedQueueBacklog.incrementAndGet();
+        return offer(concurrentLinkedQueue, counters);
+    }
+
+    @Benchmark
+    @Group("concurrentLinkedQueue")
+    public Object concurrentLinkedQueuePoll(Counters counters) {
+        final Object message = poll(concurrentLinkedQueue, counters);
+        if(message != null) {
+            concurrentLinkedQueueBacklog.decrementAndGet();
+        }
+        return message;
+    }
+
+    // ===== three contended producers
+
+    @Benchmark
+    @Group("mpscContended")
+    @GroupThreads(3)
+    public boolean mpscContendedWrite(Counters counters) {
+        return mpscWrite(counters);
+    }
+
+    @Benchmark
+    @Group("mpscContended")
+    public int mpscContendedRead(Counters counters) {
+        return mpscRead(counters);
+    }
+
+    @Benchmark
+    @Group("arrayBlockingQueueContended")
+    @GroupThreads(3)
+    public long arrayBlockingQueueContendedOffer(Counters counters) {
+        return arrayBlockingQueueOffer(counters);
+    }
+
+    @Benchmark
+    @Group("arrayBlockingQueueContended")
+    public Object arrayBlockingQueueContendedPoll(Counters counters) {
+        return arrayBlockingQueuePoll(counters);
+    }
+
+    @Benchmark
+    @Group("concurrentLinkedQueueContended")
+    @GroupThreads(3)
+    public long concurrentLinkedQueueContendedOffer(Counters counters) {
+        return concurrentLinkedQueueOffer(counters);
+    }
+
+    @Benchmark
+    @Group("concurrentLinkedQueueContended")
+    public Object concurrentLinkedQueueContendedPoll(Counters counters) {
+        return concurrentLinkedQueuePoll(counters);
+    }
+}
@@ -0,0 +1,129 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import naitsirc98.bytebuffertest.queue.MessageHandler;
+import naitsirc98.bytebuffertest.queue.RingBuffer;
+import naitsirc98.bytebuffertest.queue.SpscRingBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Control;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip latency between two threads: the ping thread sends a message and spins until the pong thread echoes it
+ * back through a second queue. Sample time mode reports the percentiles of the full round trip.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class QueueLatencyBenchmark {
+
+    private static final int CAPACITY = 64 * 1024;
+    private static final Object MESSAGE = new Object();
+
+    private SpscRingBuffer ping;
+    private SpscRingBuffer pong;
+    private long message;
+    private Queue<Object> arrayBlockingPing;
+    private Queue<Object> arrayBlockingPong;
+    private Queue<Object> linkedPing;
+    private Queue<Object> linkedPong;
+
+    @Setup
+    public void setup() {
+        ping = SpscRingBuffer.allocate(CAPACITY);
+        pong = SpscRingBuffer.allocate(CAPACITY);
+        message = MemoryUtils.calloc(QueueBenchmark.MESSAGE_LENGTH);
+        arrayBlockingPing = new ArrayBlockingQueue<>(1024);
+        arrayBlockingPong = new ArrayBlockingQueue<>(1024);
+        linkedPing = new ConcurrentLinkedQueue<>();
+        linkedPong = new ConcurrentLinkedQueue<>();
+    }
+
+    @TearDown
+    public void tearDown() {
+        MemoryUtils.free(ping.buffer());
+        MemoryUtils.free(pong.buffer());
+        MemoryUtils.free(message);
+    }
+
+    private final MessageHandler echo = (typeId, address, length) -> {
+        while(!pong.write(typeId, address, length)) {
+            Thread.onSpinWait();
+        }
+    };
+
+    private static final MessageHandler IGNORE = (typeId, address, length) -> {};
+
+    private static int roundTrip(RingBuffer out, RingBuffer in, long message, Control control) {
+        if(!out.write(1, message, QueueBenchmark.MESSAGE_LENGTH)) {
+            return 0;
+        }
+        int read = 0;
+        while(!control.stopMeasurement && (read = in.read(IGNORE, 1)) == 0) {
+            Thread.onSpinWait();
+        }
+        return read;
+    }
+
+    private static Object roundTrip(Queue<Object> out, Queue<Object> in, Control control) {
+        if(!out.offer(MESSAGE)) {
+            return null;
+        }
+        Object reply = null;
+        while(!control.stopMeasurement && (reply = in.poll()) == null) {
+            Thread.onSpinWait();
+        }
+        return reply;
+    }
+
+    private static Object echo(Queue<Object> in, Queue<Object> out) {
+        final Object message = in.poll();
+        if(message != null) {
+            out.offer(message);
+        }
+        return message;
+    }
+
+    @Benchmark
+    @Group("spsc")
+    public int spscPing(Control control) {
+        return roundTrip(ping, pong, message, control);
+    }
+
+    @Benchmark
+    @Group("spsc")
+    public int spscPong() {
+        return ping.read(echo, 1);
+    }
+
+    @Benchmark
+    @Group("arrayBlockingQueue")
+    public Object arrayBlockingQueuePing(Control control) {
+        return roundTrip(arrayBlockingPing, arrayBlockingPong, control);
+    }
+
+    @Benchmark
+    @Group("arrayBlockingQueue")
+    public Object arrayBlockingQueuePong() {
+        return echo(arrayBlockingPing, arrayBlockingPong);
+    }
+
+    @Benchmark
+    @Group("concurrentLinkedQueue")
+    public Object concurrentLinkedQueuePing(Control control) {
+        return roundTrip(linkedPing, linkedPong, control);
+    }
+
+    @Benchmark
+    @Group("concurrentLinkedQueue")
+    public Object concurrentLinkedQueuePong() {
+        return echo(linkedPing, linkedPong);
+    }
+}
@@ -0,0 +1,207 @@
+package naitsirc98.bytebuffertest.benchmarks;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import naitsirc98.bytebuffertest.benchmarks.struct.ParticleAos;
+import naitsirc98.bytebuffertest.benchmarks.struct.ParticleSoa;
+import org.openjdk.jmh.annotations.*;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generated flyweights ({@link ParticleAos}, {@link ParticleSoa}) against the same loops written by hand with
+ * {@link MemoryUtils} and with raw {@link Unsafe} calls, for array of structs and struct of arrays layouts.
+ * The three variants of each loop should run at the same speed: once inlined the flyweight is only the
+ * constant offset arithmetic, and the index check of {@code at} is hoisted out of the loop.
+ * Run with {@code -prof perfasm} to compare the generated code.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StructBenchmark {
+
+    private static final Unsafe UNSAFE = unsafe();
+    private static final double DT = 0.01;
+
+    // Offsets of the generated layout, so the hand-written loops cannot drift from it
+    private static final long X = ParticleAos.X_OFFSET;
+    private static final long Y = ParticleAos.Y_OFFSET;
+    private static final long VX = ParticleAos.VX_OFFSET;
+    private static final long VY = ParticleAos.VY_OFFSET;
+    private static final long MASS = ParticleAos.MASS_OFFSET;
+    private static final long ALIVE = ParticleAos.ALIVE_OFFSET;
+    private static final long SIZE = ParticleAos.SIZE;
+
+    @Param({"1024", "1048576"})
+    public int count;
+
+    private ByteBuffer aosBuffer;
+    private ByteBuffer soaBuffer;
+    private long aos;
+    private final ParticleAos aosParticle = new ParticleAos();
+    private final ParticleSoa soaParticle = new ParticleSoa();
+    private long xColumn;
+    private long yColumn;
+    private long vxColumn;
+    private long vyColumn;
+    private long massColumn;
+    private long aliveColumn;
+
+    @Setup
+    public void setup() {
+        aosBuffer = MemoryUtils.allocBuffer(ParticleAos.sizeOf(count));
+        soaBuffer = MemoryUtils.allocBuffer(ParticleSoa.sizeOf(count));
+        aos = MemoryUtils.addressOf(aosBuffer);
+        aosParticle.wrap(aosBuffer);
+        soaParticle.wrap(soaBuffer, count);
+        xColumn = soaParticle.xColumn();
+        yColumn = soaParticle.yColumn();
+        vxColumn = soaParticle.vxColumn();
+        vyColumn = soaParticle.vyColumn();
+        massColumn = soaParticle.massColumn();
+        aliveColumn = soaParticle.aliveColumn();
+        SplittableRandom random = new SplittableRandom(42);
+        for(int i = 0;i < count;i++) {
+            final double x = random.nextDouble();
+            final double y = random.nextDouble();
+            final double vx = random.nextDouble();
+            final double vy = random.nextDouble();
+            final float mass = (float) random.nextDouble();
+            final byte alive = (byte) (random.nextInt(4) != 0 ? 1 : 0);
+            aosParticle.at(i).x(x).y(y).vx(vx).vy(vy).mass(mass).alive(alive).id(i);
+            soaParticle.at(i).x(x).y(y).vx(vx).vy(vy).mass(mass).alive(alive).id(i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        MemoryUtils.free(aosBuffer);
+        MemoryUtils.free(soaBuffer);
+        aosBuffer = null;
+        soaBuffer = null;
+    }
+
+    // ===== integrate: read and write four doubles of every particle
+
+    @Benchmark
+    public void aosFlyweightIntegrate() {
+        final ParticleAos p = aosParticle;
+        for(int i = 0;i < count;i++) {
+            p.at(i);
+            p.x(p.x() + p.vx() * DT).y(p.y() + p.vy() * DT);
+        }
+    }
+
+    @Benchmark
+    public void aosHandWrittenIntegrate() {
+        for(int i = 0;i < count;i++) {
+            final long p = aos + i * SIZE;
+            MemoryUtils.setDouble(p, X, MemoryUtils.getDouble(p, X) + MemoryUtils.getDouble(p, VX) * DT);
+            MemoryUtils.setDouble(p, Y, MemoryUtils.getDouble(p, Y) + MemoryUtils.getDouble(p, VY) * DT);
+        }
+    }
+
+    @Benchmark
+    public void aosUnsafeIntegrate() {
+        for(int i = 0;i < count;i++) {
+            final long p = aos + i * SIZE;
+            UNSAFE.putDouble(p + X, UNSAFE.getDouble(p + X) + UNSAFE.getDouble(p + VX) * DT);
+            UNSAFE.putDouble(p + Y, UNSAFE.getDouble(p + Y) + UNSAFE.getDouble(p + VY) * DT);
+        }
+    }
+
+    @Benchmark
+    public void soaFlyweightIntegrate() {
+        final ParticleSoa p = soaParticle;
+        for(int i = 0;i < count;i++) {
+            p.at(i);
+            p.x(p.x() + p.vx() * DT).y(p.y() + p.vy() * DT);
+        }
+    }
+
+    @Benchmark
+    public void soaHandWrittenIntegrate() {
+        for(int i = 0;i < count;i++) {
+            final long offset = (long) i * Double.BYTES;
+            MemoryUtils.setDouble(xColumn, offset, MemoryUtils.getDouble(xColumn, offset) + MemoryUtils.getDouble(vxColumn, offset) * DT);
+            MemoryUtils.setDouble(yColumn, offset, MemoryUtils.getDouble(yColumn, offset) + MemoryUtils.getDouble(vyColumn, offset) * DT);
+        }
+    }
+
+    @Benchmark
+    public void soaUnsafeIntegrate() {
+        for(int i = 0;i < count;i++) {
+            final long offset = (long) i * Double.BYTES;
+            UNSAFE.putDouble(xColumn + offset, UNSAFE.getDouble(xColumn + offset) + UNSAFE.getDouble(vxColumn + offset) * DT);
+            UNSAFE.putDouble(yColumn + offset, UNSAFE.getDouble(yColumn + offset) + UNSAFE.getDouble(vyColumn + offset) * DT);
+        }
+    }
+
+    // ===== alive mass: read two narrow fields, where struct of arrays touches 10x fewer cache lines
+
+    @Benchmark
+    public double aosFlyweightAliveMass() {
+        final ParticleAos p = aosParticle;
+        double mass = 0;
+        for(int i = 0;i < count;i++) {
+            p.at(i);
+            if(p.alive() != 0) {
+                mass += p.mass();
+            }
+        }
+        return mass;
+    }
+
+    @Benchmark
+    public double aosHandWrittenAliveMass() {
+        double mass = 0;
+        for(int i = 0;i < count;i++) {
+            final long p = aos + i * SIZE;
+            if(MemoryUtils.getByte(p, ALIVE) != 0) {
+                mass += MemoryUtils.getFloat(p, MASS);
+            }
+        }
+        return mass;
+    }
+
+    @Benchmark
+    public double soaFlyweightAliveMass() {
+        final ParticleSoa p = soaParticle;
+        double mass = 0;
+        for(int i = 0;i < count;i++) {
+            p.at(i);
+            if(p.alive() != 0) {
+                mass += p.mass();
+            }
+        }
+        return mass;
+    }
+
+    @Benchmark
+    public double soaHandWrittenAliveMass() {
+        double mass = 0;
+        for(int i = 0;i < count;i++) {
+            if(MemoryUtils.getByte(aliveColumn, i) != 0) {
+                mass += MemoryUtils.getFloat(massColumn, (long) i * Float.BYTES);
+            }
+        }
+        return mass;
+    }
+
+    private static Unsafe unsafe() {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe) field.get(null);
+        } catch(ReflectiveOperationException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package naitsirc98.bytebuffertest.benchmarks.struct;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Array of structs flyweight over Particle structs of 48 bytes:
+ * x: double at 0
+ * y: double at 8
+ * vx: double at 16
+ * vy: double at 24
+ * id: int at 32
+ * mass: float at 36
+ * tags: short[2] at 40
+ * alive: byte at 44
+ *
+ * Generated by naitsirc98.bytebuffertest.struct.FlyweightGenerator, do not edit.
+ */
+public final class ParticleAos {
+
+    public static final long SIZE = 48;
+    public static final int ALIGNMENT = 8;
+    public static final long X_OFFSET = 0;
+    public static final long Y_OFFSET = 8;
+    public static final long VX_OFFSET = 16;
+    public static final long VY_OFFSET = 24;
+    public static final long ID_OFFSET = 32;
+    public static final long MASS_OFFSET = 36;
+    public static final long TAGS_OFFSET = 40;
+    public static final int TAGS_LENGTH = 2;
+    public static final long ALIVE_OFFSET = 44;
+
+    public static long sizeOf(long count) {
+        return count * SIZE;
+    }
+
+    private long base;
+    private long count;
+    private long address;
+
+    public ParticleAos wrap(long address, long count) {
+        this.base = address;
+        this.count = count;
+        this.address = address;
+        return this;
+    }
+
+    public ParticleAos wrap(ByteBuffer buffer) {
+        return wrap(MemoryUtils.addressOf(buffer), buffer.capacity() / SIZE);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public ParticleAos at(long index) {
+        Objects.checkIndex(index, count);
+        address = base + index * SIZE;
+        return this;
+    }
+
+    public long address() {
+        return address;
+    }
+
+    public double x() {
+        return MemoryUtils.getDouble(address, X_OFFSET);
+    }
+
+    public ParticleAos x(double value) {
+        MemoryUtils.setDouble(address, X_OFFSET, value);
+        return this;
+    }
+
+    public double y() {
+        return MemoryUtils.getDouble(address, Y_OFFSET);
+    }
+
+    public ParticleAos y(double value) {
+        MemoryUtils.setDouble(address, Y_OFFSET, value);
+        return this;
+    }
+
+    public double vx() {
+        return MemoryUtils.getDouble(address, VX_OFFSET);
+    }
+
+    public ParticleAos vx(double value) {
+        MemoryUtils.setDouble(address, VX_OFFSET, value);
+        return this;
+    }
+
+    public double vy() {
+        return MemoryUtils.getDouble(address, VY_OFFSET);
+    }
+
+    public ParticleAos vy(double value) {
+        MemoryUtils.setDouble(address, VY_OFFSET, value);
+        return this;
+    }
+
+    public int id() {
+        return MemoryUtils.getInt(address, ID_OFFSET);
+    }
+
+    public ParticleAos id(int value) {
+        MemoryUtils.setInt(address, ID_OFFSET, value);
+        return this;
+    }
+
+    public float mass() {
+        return MemoryUtils.getFloat(address, MASS_OFFSET);
+    }
+
+    public ParticleAos mass(float value) {
+        MemoryUtils.setFloat(address, MASS_OFFSET, value);
+        return this;
+    }
+
+    public short tags(int i) {
+        Objects.checkIndex(i, TAGS_LENGTH);
+        return MemoryUtils.getShort(address, TAGS_OFFSET + (long) i * 2);
+    }
+
+    public ParticleAos tags(int i, short value) {
+        Objects.checkIndex(i, TAGS_LENGTH);
+        MemoryUtils.setShort(address, TAGS_OFFSET + (long) i * 2, value);
+        return this;
+    }
+
+    public byte alive() {
+        return MemoryUtils.getByte(address, ALIVE_OFFSET);
+    }
+
+    public ParticleAos alive(byte value) {
+        MemoryUtils.setByte(address, ALIVE_OFFSET, value);
+        return this;
+    }
+}
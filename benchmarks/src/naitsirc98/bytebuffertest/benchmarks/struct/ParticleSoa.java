@@ -0,0 +1,202 @@
+package naitsirc98.bytebuffertest.benchmarks.struct;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Struct of arrays flyweight over Particle structs, one column per field aligned to 64 bytes:
+ * x: double
+ * y: double
+ * vx: double
+ * vy: double
+ * id: int
+ * mass: float
+ * tags: short[2]
+ * alive: byte
+ *
+ * Generated by naitsirc98.bytebuffertest.struct.FlyweightGenerator, do not edit.
+ */
+public final class ParticleSoa {
+
+    public static final int COLUMN_ALIGNMENT = 64;
+    public static final int TAGS_LENGTH = 2;
+
+    public static long sizeOf(long count) {
+        long offset = 0;
+        offset = align(offset + count * 8);
+        offset = align(offset + count * 8);
+        offset = align(offset + count * 8);
+        offset = align(offset + count * 8);
+        offset = align(offset + count * 4);
+        offset = align(offset + count * 4);
+        offset = align(offset + count * 4);
+        offset = align(offset + count * 1);
+        return offset;
+    }
+
+    private static long align(long offset) {
+        return (offset + COLUMN_ALIGNMENT - 1) & -COLUMN_ALIGNMENT;
+    }
+
+    private long count;
+    private long index;
+    private long xColumn;
+    private long yColumn;
+    private long vxColumn;
+    private long vyColumn;
+    private long idColumn;
+    private long massColumn;
+    private long tagsColumn;
+    private long aliveColumn;
+
+    public ParticleSoa wrap(long address, long count) {
+        this.count = count;
+        this.index = 0;
+        long offset = 0;
+        xColumn = address + offset;
+        offset = align(offset + count * 8);
+        yColumn = address + offset;
+        offset = align(offset + count * 8);
+        vxColumn = address + offset;
+        offset = align(offset + count * 8);
+        vyColumn = address + offset;
+        offset = align(offset + count * 8);
+        idColumn = address + offset;
+        offset = align(offset + count * 4);
+        massColumn = address + offset;
+        offset = align(offset + count * 4);
+        tagsColumn = address + offset;
+        offset = align(offset + count * 4);
+        aliveColumn = address + offset;
+        return this;
+    }
+
+    public ParticleSoa wrap(ByteBuffer buffer, long count) {
+        if(sizeOf(count) > buffer.capacity()) {
+            throw new IllegalArgumentException(count + " structs do not fit in " + buffer.capacity() + " bytes");
+        }
+        return wrap(MemoryUtils.addressOf(buffer), count);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public ParticleSoa at(long index) {
+        Objects.checkIndex(index, count);
+        this.index = index;
+        return this;
+    }
+
+    public long index() {
+        return index;
+    }
+
+    public double x() {
+        return MemoryUtils.getDouble(xColumn, index * 8);
+    }
+
+    public ParticleSoa x(double value) {
+        MemoryUtils.setDouble(xColumn, index * 8, value);
+        return this;
+    }
+
+    public long xColumn() {
+        return xColumn;
+    }
+
+    public double y() {
+        return MemoryUtils.getDouble(yColumn, index * 8);
+    }
+
+    public ParticleSoa y(double value) {
+        MemoryUtils.setDouble(yColumn, index * 8, value);
+        return this;
+    }
+
+    public long yColumn() {
+        return yColumn;
+    }
+
+    public double vx() {
+        return MemoryUtils.getDouble(vxColumn, index * 8);
+    }
+
+    public ParticleSoa vx(double value) {
+        MemoryUtils.setDouble(vxColumn, index * 8, value);
+        return this;
+    }
+
+    public long vxColumn() {
+        return vxColumn;
+    }
+
+    public double vy() {
+        return MemoryUtils.getDouble(vyColumn, index * 8);
+    }
+
+    public ParticleSoa vy(double value) {
+        MemoryUtils.setDouble(vyColumn, index * 8, value);
+        return this;
+    }
+
+    public long vyColumn() {
+        return vyColumn;
+    }
+
+    public int id() {
+        return MemoryUtils.getInt(idColumn, index * 4);
+    }
+
+    public ParticleSoa id(int value) {
+        MemoryUtils.setInt(idColumn, index * 4, value);
+        return this;
+    }
+
+    public long idColumn() {
+        return idColumn;
+    }
+
+    public float mass() {
+        return MemoryUtils.getFloat(massColumn, index * 4);
+    }
+
+    public ParticleSoa mass(float value) {
+        MemoryUtils.setFloat(massColumn, index * 4, value);
+        return this;
+    }
+
+    public long massColumn() {
+        return massColumn;
+    }
+
+    public short tags(int i) {
+        Objects.checkIndex(i, TAGS_LENGTH);
+        return MemoryUtils.getShort(tagsColumn, (index * TAGS_LENGTH + i) * 2);
+    }
+
+    public ParticleSoa tags(int i, short value) {
+        Objects.checkIndex(i, TAGS_LENGTH);
+        MemoryUtils.setShort(tagsColumn, (index * TAGS_LENGTH + i) * 2, value);
+        return this;
+    }
+
+    public long tagsColumn() {
+        return tagsColumn;
+    }
+
+    public byte alive() {
+        return MemoryUtils.getByte(aliveColumn, index * 1);
+    }
+
+    public ParticleSoa alive(byte value) {
+        MemoryUtils.setByte(aliveColumn, index * 1, value);
+        return this;
+    }
+
+    public long aliveColumn() {
+        return aliveColumn;
+    }
+}
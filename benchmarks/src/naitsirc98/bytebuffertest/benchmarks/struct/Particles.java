@@ -0,0 +1,42 @@
+package naitsirc98.bytebuffertest.benchmarks.struct;
+
+import naitsirc98.bytebuffertest.struct.FieldType;
+import naitsirc98.bytebuffertest.struct.FlyweightGenerator;
+import naitsirc98.bytebuffertest.struct.StructLayout;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Particle struct used by the struct benchmarks. Declared with its fields interleaved by width on purpose:
+ * {@link StructLayout.Builder#reorder()} packs it into 48 bytes instead of 64.
+ *
+ * Running this class regenerates {@link ParticleAos} and {@link ParticleSoa}.
+ * Usage: {@code Particles [source root]}, default is {@code benchmarks/src}.
+ */
+public final class Particles {
+
+    public static final StructLayout LAYOUT = StructLayout.builder("Particle")
+            .field("id", FieldType.INT)
+            .field("x", FieldType.DOUBLE)
+            .field("alive", FieldType.BYTE)
+            .field("y", FieldType.DOUBLE)
+            .field("mass", FieldType.FLOAT)
+            .field("vx", FieldType.DOUBLE)
+            .field("vy", FieldType.DOUBLE)
+            .array("tags", FieldType.SHORT, 2)
+            .reorder()
+            .build();
+
+    public static void main(String[] args) {
+        final Path sourceRoot = Paths.get(args.length > 0 ? args[0] : "benchmarks/src");
+        final String packageName = Particles.class.getPackage().getName();
+        System.out.println(">> " + LAYOUT);
+        System.out.println(">> Wrote " + FlyweightGenerator.write(sourceRoot, packageName, "ParticleAos",
+                FlyweightGenerator.arrayOfStructs(LAYOUT, packageName, "ParticleAos")));
+        System.out.println(">> Wrote " + FlyweightGenerator.write(sourceRoot, packageName, "ParticleSoa",
+                FlyweightGenerator.structOfArrays(LAYOUT, packageName, "ParticleSoa")));
+    }
+
+    private Particles() {}
+}
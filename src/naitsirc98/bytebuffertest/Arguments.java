@@ -1,16 +1,61 @@
 package naitsirc98.bytebuffertest;
 
+import naitsirc98.bytebuffertest.workload.AccessPattern;
+import naitsirc98.bytebuffertest.workload.AccessWidth;
+import naitsirc98.bytebuffertest.workload.Workload;
+
 public class Arguments {
 
     private int iterations = 10;
     private boolean exception = false;
-    private int bufferSize = 1024;
+    private long bufferBytes = 1024L * 1024L * 1024L;
     private int numThreads = 1;
+    private int numBuffers = 0;
+    private boolean virtualThreads = false;
     private boolean free = false;
     private boolean gc = false;
     private boolean crash = false;
     private boolean checkMemAfterGc = false;
     private boolean verbose = false;
+    private boolean pool = false;
+    private boolean region = false;
+    private boolean mapped = false;
+    private String mapPath = null;
+    private boolean mapSingleFile = false;
+    private SyncPolicy syncPolicy = SyncPolicy.UNMAP;
+    private boolean latency = false;
+    private boolean noSleep = false;
+    private AccessPattern pattern = AccessPattern.RANDOM;
+    private AccessWidth width = AccessWidth.BYTE;
+    private int readPercent = 50;
+    private int stride = 64;
+    private double zipfExponent = 0.99;
+    private int operations = 100000;
+    private boolean pointerAccess = false;
+    private boolean allocInWorker = false;
+    private boolean prefault = false;
+    private boolean parallelInit = false;
+    private boolean shared = false;
+    private AtomicOperation atomicOperation = AtomicOperation.ADD;
+    private SharedLayout sharedLayout = SharedLayout.CONTENDED;
+    private boolean padding = false;
+    private boolean managed = false;
+    private boolean epochReclamation = false;
+    private String sampleFile = null;
+    private int sampleInterval = 100;
+    private int churnRate = 0;
+    private String eventFile = null;
+    private String snapshotFile = null;
+    private String resultsFile = null;
+    private int warmupIterations = 0;
+    private String restoreFile = null;
+    private boolean incrementalSnapshot = false;
+    private int snapshotThreads = Runtime.getRuntime().availableProcessors();
+    private PageMode pageMode = PageMode.NONE;
+    private boolean dontNeed = false;
+    private boolean cache = false;
+    private int cacheKeys = 1000000;
+    private int cacheValueSize = 1024;
 
     public Arguments(String[] args) {
         parseArguments(args);
@@ -24,18 +69,29 @@ public class Arguments {
         return exception;
     }
 
-    public int bufferSize() {
-        return bufferSize;
+    public String bufferSize() {
+        return formatBytes(bufferBytes);
+    }
+
+    public long bufferBytes() {
+        return bufferBytes;
     }
 
     public int numBuffers() {
-        return numThreads;
+        if (shared) {
+            return 1;
+        }
+        return numBuffers > 0 ? numBuffers : numThreads;
     }
 
     public int numThreads() {
         return numThreads;
     }
 
+    public boolean virtualThreads() {
+        return virtualThreads;
+    }
+
     public boolean free() {
         return free;
     }
@@ -56,24 +112,164 @@ public class Arguments {
         return verbose;
     }
 
+    public boolean pool() {
+        return pool;
+    }
+
+    public boolean region() {
+        return region;
+    }
+
+    public boolean mapped() {
+        return mapped;
+    }
+
+    public String mapPath() {
+        return mapPath;
+    }
+
+    public boolean mapSingleFile() {
+        return mapSingleFile;
+    }
+
+    public SyncPolicy syncPolicy() {
+        return syncPolicy;
+    }
+
+    public boolean latency() {
+        return latency;
+    }
+
+    public boolean noSleep() {
+        return noSleep;
+    }
+
+    public Workload workload() {
+        return new Workload(pattern, width, readPercent, stride, zipfExponent);
+    }
+
+    public int operations() {
+        return operations;
+    }
+
+    public boolean pointerAccess() {
+        return pointerAccess;
+    }
+
+    public boolean allocInWorker() {
+        return allocInWorker;
+    }
+
+    public boolean prefault() {
+        return prefault;
+    }
+
+    public boolean parallelInit() {
+        return parallelInit;
+    }
+
+    public boolean shared() {
+        return shared;
+    }
+
+    public AtomicOperation atomicOperation() {
+        return atomicOperation;
+    }
+
+    public SharedLayout sharedLayout() {
+        return sharedLayout;
+    }
+
+    public boolean padding() {
+        return padding;
+    }
+
+    public boolean managed() {
+        return managed;
+    }
+
+    public boolean epochReclamation() {
+        return epochReclamation;
+    }
+
+    public String sampleFile() {
+        return sampleFile;
+    }
+
+    public int sampleInterval() {
+        return sampleInterval;
+    }
+
+    public int churnRate() {
+        return churnRate;
+    }
+
+    public String eventFile() {
+        return eventFile;
+    }
+
+    public String resultsFile() {
+        return resultsFile;
+    }
+
+    public int warmupIterations() {
+        return warmupIterations;
+    }
+
+    public String snapshotFile() {
+        return snapshotFile;
+    }
+
+    public String restoreFile() {
+        return restoreFile;
+    }
+
+    public boolean incrementalSnapshot() {
+        return incrementalSnapshot;
+    }
+
+    public int snapshotThreads() {
+        return snapshotThreads;
+    }
+
+    public PageMode pageMode() {
+        return pageMode;
+    }
+
+    public boolean dontNeed() {
+        return dontNeed;
+    }
+
+    public boolean cache() {
+        return cache;
+    }
+
+    public int cacheKeys() {
+        return cacheKeys;
+    }
+
+    public int cacheValueSize() {
+        return cacheValueSize;
+    }
+
     private void parseArguments(String[] args) {
         for (String arg : args) {
-            String argument = arg.trim().toLowerCase();
-            parse(argument);
+            parse(arg.trim());
         }
     }
 
-    private void parse(String argument) {
+    private void parse(String rawArgument) {
+        final String argument = rawArgument.toLowerCase();
         if (argument.startsWith("-iterations")) {
             iterations = parseInt(argument, 10);
         } else if (argument.equals("-exc")) {
             exception = true;
         } else if (argument.startsWith("-size")) {
-            bufferSize = parseInt(argument, 1024);
-            if (bufferSize > 1024) {
-                System.out.println(">> Max size of buffer is 1024, otherwise it could overflow because it is an int." +
-                        "If you want to allocate more memory, specify more buffers with -count.");
-                bufferSize = 1024;
+            bufferBytes = parseSize(argument, 1024L * 1024L * 1024L);
+            if (bufferBytes > 1024L * 1024L * 1024L && !region) {
+                System.out.println(">> Max size of a ByteBuffer is 1024 MB, otherwise it could overflow because it is an int." +
+                        " Using long-indexed off-heap regions instead.");
+                region = true;
             }
         } else if (argument.equals("-free")) {
             if (checkMemAfterGc) {
@@ -95,21 +291,206 @@ public class Arguments {
             checkMemAfterGc = true;
         } else if (argument.startsWith("-threads")) {
             numThreads = parseInt(argument, 1);
+        } else if (argument.startsWith("-buffers")) {
+            numBuffers = parseInt(argument, 1);
+        } else if (argument.equals("-virtual")) {
+            virtualThreads = true;
         } else if(argument.equalsIgnoreCase("-verbose")) {
             verbose = true;
+        } else if(argument.equals("-pool")) {
+            pool = true;
+        } else if(argument.equals("-region")) {
+            region = true;
+        } else if(argument.equals("-mapped")) {
+            mapped = true;
+        } else if(argument.startsWith("-mapped=")) {
+            mapped = true;
+            mapPath = parseString(rawArgument);
+        } else if(argument.equals("-mapsinglefile")) {
+            mapped = true;
+            mapSingleFile = true;
+        } else if(argument.startsWith("-sync")) {
+            syncPolicy = parseEnum(argument, SyncPolicy.class, SyncPolicy.UNMAP);
+        } else if(argument.equals("-latency")) {
+            latency = true;
+        } else if(argument.equals("-nosleep")) {
+            noSleep = true;
+        } else if(argument.startsWith("-pattern")) {
+            pattern = parseEnum(argument, AccessPattern.class, AccessPattern.RANDOM);
+        } else if(argument.startsWith("-width")) {
+            width = parseEnum(argument, AccessWidth.class, AccessWidth.BYTE);
+        } else if(argument.startsWith("-reads")) {
+            readPercent = Math.min(parseInt(argument, 50, 0), 100);
+        } else if(argument.startsWith("-stride")) {
+            stride = parseInt(argument, 64);
+        } else if(argument.startsWith("-zipf")) {
+            zipfExponent = parseDouble(argument, 0.99);
+        } else if(argument.startsWith("-ops")) {
+            operations = parseInt(argument, 100000);
+        } else if(argument.startsWith("-access")) {
+            pointerAccess = parseString(argument).equals("pointer");
+        } else if(argument.equals("-allocinworker")) {
+            allocInWorker = true;
+        } else if(argument.equals("-prefault")) {
+            prefault = true;
+        } else if(argument.equals("-parallelinit")) {
+            parallelInit = true;
+        } else if(argument.equals("-shared")) {
+            shared = true;
+        } else if(argument.startsWith("-atomic")) {
+            shared = true;
+            atomicOperation = parseEnum(argument, AtomicOperation.class, AtomicOperation.ADD);
+        } else if(argument.startsWith("-layout")) {
+            shared = true;
+            sharedLayout = parseEnum(argument, SharedLayout.class, SharedLayout.CONTENDED);
+        } else if(argument.equals("-padding")) {
+            padding = true;
+        } else if(argument.equals("-managed")) {
+            managed = true;
+        } else if(argument.startsWith("-managed=")) {
+            managed = true;
+            epochReclamation = parseString(argument).equals("epoch");
+        } else if(argument.startsWith("-sample=")) {
+            sampleFile = parseString(rawArgument);
+        } else if(argument.startsWith("-sampleinterval")) {
+            sampleInterval = parseInt(argument, 100);
+        } else if(argument.startsWith("-churn")) {
+            churnRate = parseInt(argument, 100);
+        } else if(argument.startsWith("-events=")) {
+            eventFile = parseString(rawArgument);
+        } else if(argument.startsWith("-results=")) {
+            resultsFile = parseString(rawArgument);
+        } else if(argument.startsWith("-warmup")) {
+            warmupIterations = parseInt(argument, 0, 0);
+        } else if(argument.startsWith("-snapshot=")) {
+            snapshotFile = parseString(rawArgument);
+        } else if(argument.startsWith("-restore=")) {
+            restoreFile = parseString(rawArgument);
+        } else if(argument.equals("-incremental")) {
+            incrementalSnapshot = true;
+        } else if(argument.startsWith("-snapshotthreads")) {
+            snapshotThreads = parseInt(argument, Runtime.getRuntime().availableProcessors());
+        } else if(argument.startsWith("-pages")) {
+            pageMode = parseEnum(argument, PageMode.class, PageMode.NONE);
+        } else if(argument.equals("-dontneed")) {
+            dontNeed = true;
+        } else if(argument.equals("-cache")) {
+            cache = true;
+        } else if(argument.startsWith("-keys")) {
+            cacheKeys = parseInt(argument, 1000000);
+        } else if(argument.startsWith("-valuesize")) {
+            cacheValueSize = parseInt(argument, 1024, 2);
+        }
+        if (pool && region) {
+            throw new RuntimeException("Cannot specify pool with off-heap regions");
+        }
+        if (mapped && (pool || region)) {
+            throw new RuntimeException("Cannot specify mapped buffers with pool or off-heap regions");
+        }
+        if (managed && (pool || region || mapped)) {
+            throw new RuntimeException("Cannot specify managed buffers with pool, off-heap regions or mapped buffers");
+        }
+        if (shared && (allocInWorker || numBuffers > 0 || free)) {
+            throw new RuntimeException("Cannot specify a shared buffer with allocInWorker, buffers, free or crash");
+        }
+        if (snapshotFile != null && free) {
+            throw new RuntimeException("Cannot snapshot buffers released by free or crash");
+        }
+        if (restoreFile != null && allocInWorker) {
+            throw new RuntimeException("Cannot restore buffers that are allocated by their worker threads");
+        }
+        if (pageMode != PageMode.NONE && (pool || region || mapped || managed)) {
+            throw new RuntimeException("Cannot specify pages with pool, off-heap regions, mapped or managed buffers");
+        }
+        if (dontNeed && (pageMode == PageMode.NONE || crash)) {
+            throw new RuntimeException("Cannot specify dontNeed without pages or with crash");
+        }
+        if (cache && (shared || allocInWorker || free || restoreFile != null)) {
+            throw new RuntimeException("Cannot specify cache with shared, allocInWorker, free, crash or restore");
+        }
+        if (pattern == AccessPattern.STRIDED && (stride % width.bytes() != 0 || stride >= bufferBytes)) {
+            throw new RuntimeException("Stride " + stride + " must be a multiple of the " + width.bytes()
+                    + " byte access width and smaller than the buffer size " + bufferBytes);
         }
     }
 
     private int parseInt(String argument, int defaultValue) {
+        return parseInt(argument, defaultValue, 1);
+    }
+
+    private int parseInt(String argument, int defaultValue, int minValue) {
         try {
             final int value = Integer.parseInt(argument.substring(argument.indexOf('=') + 1).trim());
+            if (value < minValue) {
+                System.out.println(">> Value of " + argument + " cannot be < " + minValue + ". Using default value: " + defaultValue);
+                return defaultValue;
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            System.err.println(">> Invalid int value in: " + argument + ". Using default:" + defaultValue);
+        }
+        return defaultValue;
+    }
+
+    // Plain numbers are megabytes, as they always were. A k, m or g suffix selects the unit explicitly
+    private long parseSize(String argument, long defaultValue) {
+        String value = argument.substring(argument.indexOf('=') + 1).trim();
+        long unit = 1024L * 1024L;
+        if (value.endsWith("b")) {
+            value = value.substring(0, value.length() - 1);
+            unit = 1;
+        }
+        final int suffix = "kmg".indexOf(value.isEmpty() ? ' ' : value.charAt(value.length() - 1));
+        if (suffix >= 0) {
+            unit = 1L << (10 * (suffix + 1));
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            final long size = Long.parseLong(value.trim());
+            if (size < 1) {
+                System.out.println(">> Value of " + argument + " cannot be < 1. Using default value: " + formatBytes(defaultValue));
+                return defaultValue;
+            }
+            return Math.multiplyExact(size, unit);
+        } catch (NumberFormatException | ArithmeticException e) {
+            System.err.println(">> Invalid size in: " + argument + ". Using default:" + formatBytes(defaultValue));
+        }
+        return defaultValue;
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes % (1024L * 1024L) == 0) {
+            return bytes / (1024L * 1024L) + "MB";
+        }
+        if (bytes % 1024L == 0) {
+            return bytes / 1024L + "KB";
+        }
+        return bytes + "B";
+    }
+
+    private double parseDouble(String argument, double defaultValue) {
+        try {
+            final double value = Double.parseDouble(argument.substring(argument.indexOf('=') + 1).trim());
             if (value <= 0) {
                 System.out.println(">> Value of " + argument + " cannot be <= 0. Using default value: " + defaultValue);
                 return defaultValue;
             }
             return value;
         } catch (NumberFormatException e) {
-            System.err.println(">> Invalid int value in: " + argument + ". Using default:" + defaultValue);
+            System.err.println(">> Invalid decimal value in: " + argument + ". Using default:" + defaultValue);
+        }
+        return defaultValue;
+    }
+
+    private String parseString(String rawArgument) {
+        return rawArgument.substring(rawArgument.indexOf('=') + 1).trim();
+    }
+
+    private <T extends Enum<T>> T parseEnum(String argument, Class<T> type, T defaultValue) {
+        try {
+            return Enum.valueOf(type, argument.substring(argument.indexOf('=') + 1).trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println(">> Invalid value in: " + argument + ". Using default:" + defaultValue);
         }
         return defaultValue;
     }
@@ -119,14 +500,50 @@ public class Arguments {
         return "Arguments{" +
                 "iterations=" + iterations +
                 ", exception=" + exception +
-                ", bufferSize=" + bufferSize + "MB" +
+                ", bufferSize=" + bufferSize() +
                 ", numBuffers=" + numBuffers() +
                 ", numThreads=" + numThreads +
+                ", virtualThreads=" + virtualThreads +
                 ", free=" + free +
                 ", gc=" + gc +
                 ", crash=" + crash +
                 ", checkMemAfterGc=" + checkMemAfterGc +
                 ", verbose=" + verbose +
+                ", pool=" + pool +
+                ", region=" + region +
+                ", mapped=" + mapped +
+                ", mapPath=" + mapPath +
+                ", mapSingleFile=" + mapSingleFile +
+                ", syncPolicy=" + syncPolicy +
+                ", latency=" + latency +
+                ", noSleep=" + noSleep +
+                ", workload=" + workload() +
+                ", operations=" + operations +
+                ", pointerAccess=" + pointerAccess +
+                ", allocInWorker=" + allocInWorker +
+                ", prefault=" + prefault +
+                ", parallelInit=" + parallelInit +
+                ", shared=" + shared +
+                ", atomicOperation=" + atomicOperation +
+                ", sharedLayout=" + sharedLayout +
+                ", padding=" + padding +
+                ", managed=" + managed +
+                ", epochReclamation=" + epochReclamation +
+                ", sampleFile=" + sampleFile +
+                ", sampleInterval=" + sampleInterval +
+                ", churnRate=" + churnRate +
+                ", eventFile=" + eventFile +
+                ", resultsFile=" + resultsFile +
+                ", warmupIterations=" + warmupIterations +
+                ", snapshotFile=" + snapshotFile +
+                ", restoreFile=" + restoreFile +
+                ", incrementalSnapshot=" + incrementalSnapshot +
+                ", snapshotThreads=" + snapshotThreads +
+                ", pageMode=" + pageMode +
+                ", dontNeed=" + dontNeed +
+                ", cache=" + cache +
+                ", cacheKeys=" + cacheKeys +
+                ", cacheValueSize=" + cacheValueSize +
                 '}';
     }
 }
@@ -0,0 +1,8 @@
+package naitsirc98.bytebuffertest;
+
+public enum AtomicOperation {
+    ADD,
+    CAS,
+    WRITE,
+    READ
+}
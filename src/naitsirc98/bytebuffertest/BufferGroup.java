@@ -1,32 +1,323 @@
 package naitsirc98.bytebuffertest;
 
+import naitsirc98.bytebuffertest.alloc.DirectBufferPool;
+import naitsirc98.bytebuffertest.alloc.EpochReclaimer;
+import naitsirc98.bytebuffertest.alloc.ManagedBuffer;
+import naitsirc98.bytebuffertest.event.EventLog;
+import naitsirc98.bytebuffertest.event.EventType;
+
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 import static naitsirc98.bytebuffertest.MemoryUtils.addressOf;
 import static naitsirc98.bytebuffertest.MemoryUtils.allocBuffer;
+import static naitsirc98.bytebuffertest.MemoryUtils.free;
+import static naitsirc98.bytebuffertest.MemoryUtils.map;
+import static naitsirc98.bytebuffertest.MemoryUtils.wrap;
 
 public class BufferGroup {
 
     private final Arguments arguments;
     private final ByteBuffer[] buffers;
+    private final OffHeapRegion[] regions;
+    private final ManagedBuffer[] managedBuffers;
+    private final EpochReclaimer reclaimer;
     private final long[] addresses;
+    private final DirectBufferPool pool;
+    private final PageMode pageMode;
+    private final boolean[] unmapped;
+    private long peakAnonHugePages = -1;
+    private final Path[] files;
+    private final FileChannel[] channels;
+    private final Path tempDirectory;
 
     public BufferGroup(Arguments arguments) {
         this.arguments = arguments;
-        Log.logVerbose("Allocating " + arguments.numBuffers() + " of " + arguments.bufferSize() + " MB each...");
+        Log.logVerbose("Allocating " + arguments.numBuffers() + " " + (arguments.region() ? "regions" : "buffers")
+                + " of " + arguments.bufferSize() + " each...");
         buffers = new ByteBuffer[arguments.numBuffers()];
+        regions = arguments.region() ? new OffHeapRegion[arguments.numBuffers()] : null;
+        managedBuffers = arguments.managed() ? new ManagedBuffer[arguments.numBuffers()] : null;
+        reclaimer = arguments.epochReclamation() ? new EpochReclaimer() : null;
         addresses = new long[arguments.numBuffers()];
+        pool = arguments.pool() ? new DirectBufferPool() : null;
+        pageMode = arguments.pageMode();
+        unmapped = pageMode != PageMode.NONE ? new boolean[arguments.numBuffers()] : null;
+        if(arguments.mapped()) {
+            final int fileCount = arguments.mapSingleFile() ? 1 : arguments.numBuffers();
+            files = new Path[fileCount];
+            channels = new FileChannel[fileCount];
+            tempDirectory = arguments.mapPath() == null ? createTempDirectory() : null;
+            openFiles(tempDirectory != null ? tempDirectory : Paths.get(arguments.mapPath()));
+        } else {
+            files = null;
+            channels = null;
+            tempDirectory = null;
+        }
+        if(arguments.allocInWorker()) {
+            Log.logVerbose("Buffers will be allocated by their worker threads");
+            return;
+        }
+        long initNanos = 0;
         for(int i = 0;i < arguments.numBuffers();i++) {
-            buffers[i] = allocBuffer((long)arguments.bufferSize() * 1024L * 1024L);
-            addresses[i] = addressOf(buffers[i]);
+            initNanos += allocate(i);
+        }
+        Log.log("Initialized " + arguments.numBuffers() + " buffers in " + initNanos / 1e6 + " ms");
+    }
+
+    public final long allocate(int index) {
+        // Page faults are only reported by the verbose log, so do not sample them otherwise
+        final boolean logFaults = !EventLog.isEnabled() && Log.isVerbose();
+        final PageFaults faults = logFaults ? sampleFaults() : null;
+        final long start = System.nanoTime();
+        allocateBuffer(index);
+        final long allocated = System.nanoTime();
+        if(arguments.prefault()) {
+            final long size = size(index);
+            if(arguments.parallelInit()) {
+                ParallelMemory.prefault(addresses[index], size);
+            } else {
+                MemoryUtils.prefault(addresses[index], size);
+            }
+        }
+        final long end = System.nanoTime();
+        if(EventLog.isEnabled()) {
+            EventLog.record(EventType.BUFFER_ALLOCATED, index, size(index), end - start);
+        } else if(logFaults) {
+            final PageFaults initFaults = sampleFaults().since(faults);
+            Log.log(Thread.currentThread().getName() + ": Buffer " + index + " allocated in " + (allocated - start) / 1e6 + " ms"
+                    + (arguments.prefault() ? ", prefaulted in " + (end - allocated) / 1e6 + " ms" : "") + ", " + initFaults);
+        }
+        return end - start;
+    }
+
+    private PageFaults sampleFaults() {
+        return arguments.parallelInit() ? PageFaults.ofProcess() : PageFaults.ofThread();
+    }
+
+    private void allocateBuffer(int index) {
+        final long size = arguments.bufferBytes();
+        if(regions != null) {
+            regions[index] = arguments.parallelInit() ? OffHeapRegion.allocateZeroedParallel(size) : OffHeapRegion.allocateZeroed(size);
+            addresses[index] = regions[index].address();
+        } else if(managedBuffers != null) {
+            managedBuffers[index] = reclaimer != null ? ManagedBuffer.allocate(size, reclaimer) : ManagedBuffer.allocate(size);
+            addresses[index] = managedBuffers[index].address();
+        } else if(channels != null) {
+            final boolean singleFile = arguments.mapSingleFile();
+            final FileChannel channel = channels[singleFile ? 0 : index];
+            buffers[index] = map(channel, FileChannel.MapMode.READ_WRITE, singleFile ? index * size : 0, size);
+            addresses[index] = addressOf(buffers[index]);
+        } else if(unmapped != null) {
+            if(size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Size " + size + " too large for ByteBuffer");
+            }
+            addresses[index] = HugePages.map(size, pageMode);
+            if(arguments.prefault()) {
+                HugePages.willNeed(addresses[index], size);
+            }
+            buffers[index] = wrap(addresses[index], (int) size);
+        } else {
+            buffers[index] = pool != null ? pool.acquire((int) size) : allocBuffer(size);
+            addresses[index] = addressOf(buffers[index]);
+        }
+    }
+
+    private static Path createTempDirectory() {
+        try {
+            return Files.createTempDirectory("bytebuffertest");
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void openFiles(Path path) {
+        try {
+            if(arguments.mapSingleFile()) {
+                files[0] = Files.isDirectory(path) ? path.resolve("buffers.bin") : path;
+            } else {
+                Files.createDirectories(path);
+                for(int i = 0;i < files.length;i++) {
+                    files[i] = path.resolve("buffer-" + i + ".bin");
+                }
+            }
+            for(int i = 0;i < files.length;i++) {
+                Log.logVerbose("Mapping " + files[i]);
+                channels[i] = FileChannel.open(files[i], StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public boolean isRegion() {
+        return regions != null;
+    }
+
+    public boolean isManaged() {
+        return managedBuffers != null;
+    }
+
+    public boolean isMapped() {
+        return channels != null;
+    }
+
+    /**
+     * Whether buffers are anonymous mappings of {@link HugePages}, released by {@link #release(int)} and not by the
+     * garbage collector.
+     */
+    public boolean isPageMapped() {
+        return unmapped != null;
+    }
+
+    public PageMode pageMode() {
+        return pageMode;
+    }
+
+    /**
+     * Bytes of the process backed by transparent huge pages, or -1 if unknown or the buffers are not mapped with
+     * -pages. Buffers released with -free or -dontneed have already given their pages back, so this is the highest
+     * value sampled before releasing any of them.
+     */
+    public synchronized long anonHugePages() {
+        if(unmapped == null) {
+            return -1;
+        }
+        return Math.max(peakAnonHugePages, MemorySampler.anonHugePages());
+    }
+
+    private synchronized void sampleAnonHugePages() {
+        peakAnonHugePages = Math.max(peakAnonHugePages, MemorySampler.anonHugePages());
+    }
+
+    public long force(int index) {
+        if(channels == null) {
+            return 0;
         }
+        final long start = System.nanoTime();
+        ((MappedByteBuffer) buffers[index]).force();
+        return System.nanoTime() - start;
     }
 
     public ByteBuffer get(int index) {
         return buffers[index];
     }
 
+    /**
+     * Drops the group's references to its buffers, so they become unreachable once the tests let go of them too.
+     */
+    public void dropBuffers() {
+        Arrays.fill(buffers, null);
+    }
+
+    public OffHeapRegion getRegion(int index) {
+        return regions[index];
+    }
+
+    public ManagedBuffer getManaged(int index) {
+        return managedBuffers[index];
+    }
+
+    public EpochReclaimer reclaimer() {
+        return reclaimer;
+    }
+
+    public final long size(int index) {
+        if(regions != null) {
+            return regions[index].size();
+        }
+        return managedBuffers != null ? managedBuffers[index].size() : buffers[index].capacity();
+    }
+
+    public int count() {
+        return addresses.length;
+    }
+
+    /**
+     * Saves the contents of every buffer to a snapshot file, see {@link BufferSnapshot}.
+     */
+    public BufferSnapshot.Stats save(Path file, boolean incremental, int threads) {
+        return BufferSnapshot.save(this, file, incremental, threads);
+    }
+
+    /**
+     * Loads the contents of every buffer back from a snapshot file taken from a group with the same buffer sizes.
+     */
+    public BufferSnapshot.Stats restore(Path file, int threads) {
+        return BufferSnapshot.restore(this, file, threads);
+    }
+
     public long getAddress(int index) {
         return addresses[index];
     }
+
+    public void release(int index) {
+        if(EventLog.isEnabled()) {
+            EventLog.record(EventType.BUFFER_RELEASED, index);
+        }
+        if(regions != null) {
+            regions[index].free();
+        } else if(managedBuffers != null) {
+            managedBuffers[index].release();
+        } else if(pool != null) {
+            pool.release(buffers[index]);
+        } else if(unmapped != null) {
+            sampleAnonHugePages();
+            if(arguments.dontNeed()) {
+                HugePages.dontNeed(addresses[index], size(index));
+            } else {
+                HugePages.unmap(addresses[index], size(index));
+                unmapped[index] = true;
+            }
+        } else {
+            free(buffers[index]);
+        }
+    }
+
+    public DirectBufferPool pool() {
+        return pool;
+    }
+
+    public void close() {
+        if(reclaimer != null) {
+            reclaimer.close();
+        }
+        if(pool != null) {
+            pool.close();
+        }
+        if(unmapped != null) {
+            sampleAnonHugePages();
+            for(int i = 0;i < unmapped.length;i++) {
+                if(!unmapped[i] && addresses[i] != 0) {
+                    HugePages.unmap(addresses[i], arguments.bufferBytes());
+                    unmapped[i] = true;
+                }
+            }
+        }
+        if(channels == null) {
+            return;
+        }
+        try {
+            for(FileChannel channel : channels) {
+                channel.close();
+            }
+            if(tempDirectory != null) {
+                for(Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+                Files.deleteIfExists(tempDirectory);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 }
@@ -0,0 +1,338 @@
+package naitsirc98.bytebuffertest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Snapshot file of the contents of every buffer of a {@link BufferGroup}, to get a warm process back after a restart.
+ *
+ * The file starts with a header: magic, version, chunk size and buffer count, the size and data offset of every buffer
+ * and the CRC32C of every chunk. Buffer data follows, each buffer starting on a page boundary. Snapshots are written
+ * by several threads, each one with its own channel and gathering writes of consecutive chunks, and the header is
+ * written last. Incremental snapshots compare every chunk against the checksum in the existing file and only rewrite
+ * the chunks that changed, trading a read of the memory for disk bandwidth.
+ *
+ * Restores map the file chunk by chunk, verify each chunk checksum and copy it into the buffers, in parallel.
+ */
+public final class BufferSnapshot {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final long MAGIC = 0x4242545350534E41L;
+    private static final int VERSION = 1;
+    private static final int PAGE_SIZE = 4096;
+    private static final int MAX_GATHER = 64;
+
+    public static Stats save(BufferGroup group, Path file, boolean incremental, int threads) {
+        final Layout layout = new Layout(group, DEFAULT_CHUNK_SIZE);
+        final int[] previous = incremental ? readChecksums(file, layout) : null;
+        if(incremental && previous == null) {
+            Log.log("No compatible snapshot at " + file + ", writing a full one");
+        }
+        final long start = System.nanoTime();
+        final int[] checksums = new int[layout.chunks];
+        final AtomicLong writtenBytes = new AtomicLong();
+        final AtomicLong writtenChunks = new AtomicLong();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if(previous == null) {
+                channel.truncate(0);
+            }
+            runParallel(threads, layout.chunks, (first, end) -> {
+                try(FileChannel writer = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    List<ByteBuffer> run = new ArrayList<>(MAX_GATHER);
+                    long runStart = 0;
+                    long runEnd = 0;
+                    for(int chunk = first;chunk < end;chunk++) {
+                        final ByteBuffer view = layout.view(group, chunk);
+                        checksums[chunk] = crc(view);
+                        if(previous != null && previous[chunk] == checksums[chunk]) {
+                            continue;
+                        }
+                        final long position = layout.filePosition(chunk);
+                        if(!run.isEmpty() && (position != runEnd || run.size() == MAX_GATHER)) {
+                            writtenBytes.addAndGet(gather(writer, runStart, run));
+                        }
+                        if(run.isEmpty()) {
+                            runStart = position;
+                        }
+                        run.add(view);
+                        runEnd = position + view.remaining();
+                        writtenChunks.incrementAndGet();
+                    }
+                    if(!run.isEmpty()) {
+                        writtenBytes.addAndGet(gather(writer, runStart, run));
+                    }
+                }
+            });
+            // Header last, so a snapshot interrupted while writing data fails its checksums instead of looking valid
+            final ByteBuffer header = layout.header(checksums);
+            while(header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        } catch(IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+        return new Stats("Snapshot", layout.totalBytes, writtenBytes.get(), layout.chunks, writtenChunks.get(),
+                System.nanoTime() - start);
+    }
+
+    public static Stats restore(BufferGroup group, Path file, int threads) {
+        final Layout layout = new Layout(group, DEFAULT_CHUNK_SIZE);
+        final int[] checksums = readChecksums(file, layout);
+        if(checksums == null) {
+            throw new IllegalArgumentException(file + " is not a snapshot of " + group.count() + " buffers of these sizes");
+        }
+        final long start = System.nanoTime();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            runParallel(threads, layout.chunks, (first, end) -> {
+                for(int chunk = first;chunk < end;chunk++) {
+                    final int length = layout.chunkLength(chunk);
+                    final MappedByteBuffer mapped = MemoryUtils.map(channel, FileChannel.MapMode.READ_ONLY, layout.filePosition(chunk), length);
+                    try {
+                        if(crc(mapped) != checksums[chunk]) {
+                            throw new IllegalStateException("Chunk " + layout.chunkInBuffer(chunk) + " of buffer "
+                                    + layout.buffer(chunk) + " in " + file + " is corrupt");
+                        }
+                        MemoryUtils.memcpy(MemoryUtils.addressOf(mapped), layout.address(group, chunk), length);
+                    } finally {
+                        MemoryUtils.free(mapped);
+                    }
+                }
+            });
+        } catch(IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+        return new Stats("Restore", layout.totalBytes, layout.totalBytes, layout.chunks, layout.chunks, System.nanoTime() - start);
+    }
+
+    private static int crc(ByteBuffer view) {
+        CRC32C crc = new CRC32C();
+        crc.update(view.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static long gather(FileChannel channel, long position, List<ByteBuffer> run) throws IOException {
+        final ByteBuffer[] sources = run.toArray(new ByteBuffer[0]);
+        long bytes = 0;
+        for(ByteBuffer source : sources) {
+            bytes += source.remaining();
+        }
+        channel.position(position);
+        long written = 0;
+        while(written < bytes) {
+            written += channel.write(sources);
+        }
+        run.clear();
+        return written;
+    }
+
+    /**
+     * Checksums of an existing snapshot with the same layout, or null if there is no such snapshot.
+     */
+    private static int[] readChecksums(Path file, Layout layout) {
+        if(!Files.isRegularFile(file)) {
+            return null;
+        }
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer expected = layout.header(new int[layout.chunks]);
+            if(channel.size() < layout.fileLength()) {
+                return null;
+            }
+            final ByteBuffer header = ByteBuffer.allocate(expected.remaining());
+            while(header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // Keep reading
+            }
+            header.flip();
+            final int checksumsStart = layout.checksumsOffset();
+            if(header.limit() < expected.limit() || !header.slice(0, checksumsStart).equals(expected.slice(0, checksumsStart))) {
+                return null;
+            }
+            final int[] checksums = new int[layout.chunks];
+            header.position(checksumsStart);
+            for(int i = 0;i < checksums.length;i++) {
+                checksums[i] = header.getInt();
+            }
+            return checksums;
+        } catch(IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void runParallel(int threads, int chunks, ChunkRange task) {
+        final int workers = Math.max(1, Math.min(threads, chunks));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> futures = new ArrayList<>(workers);
+            for(int i = 0;i < workers;i++) {
+                final int first = (int) ((long) chunks * i / workers);
+                final int end = (int) ((long) chunks * (i + 1) / workers);
+                futures.add(executor.submit(() -> {
+                    task.run(first, end);
+                    return null;
+                }));
+            }
+            for(Future<?> future : futures) {
+                future.get();
+            }
+        } catch(InterruptedException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkRange {
+        void run(int first, int end) throws IOException;
+    }
+
+    /**
+     * Where every buffer and chunk lives in the file. Chunks are numbered across all the buffers.
+     */
+    private static final class Layout {
+
+        private final int chunkSize;
+        private final long[] sizes;
+        private final long[] dataOffsets;
+        private final int[] firstChunks;
+        private final int chunks;
+        private final long totalBytes;
+
+        private Layout(BufferGroup group, int chunkSize) {
+            this.chunkSize = chunkSize;
+            final int count = group.count();
+            sizes = new long[count];
+            dataOffsets = new long[count];
+            firstChunks = new int[count + 1];
+            long total = 0;
+            for(int i = 0;i < count;i++) {
+                sizes[i] = group.size(i);
+                total += sizes[i];
+                firstChunks[i + 1] = Math.toIntExact(firstChunks[i] + (sizes[i] + chunkSize - 1) / chunkSize);
+            }
+            chunks = firstChunks[count];
+            totalBytes = total;
+            long offset = align(checksumsOffset() + (long) chunks * Integer.BYTES);
+            for(int i = 0;i < count;i++) {
+                dataOffsets[i] = offset;
+                offset = align(offset + sizes[i]);
+            }
+        }
+
+        private int checksumsOffset() {
+            return Long.BYTES + 3 * Integer.BYTES + sizes.length * 2 * Long.BYTES;
+        }
+
+        private long fileLength() {
+            return sizes.length == 0 ? align(checksumsOffset()) : dataOffsets[sizes.length - 1] + sizes[sizes.length - 1];
+        }
+
+        private int buffer(int chunk) {
+            int buffer = 0;
+            while(firstChunks[buffer + 1] <= chunk) {
+                ++buffer;
+            }
+            return buffer;
+        }
+
+        private int chunkInBuffer(int chunk) {
+            return chunk - firstChunks[buffer(chunk)];
+        }
+
+        private long offsetInBuffer(int chunk) {
+            return (long) chunkInBuffer(chunk) * chunkSize;
+        }
+
+        private int chunkLength(int chunk) {
+            return (int) Math.min(chunkSize, sizes[buffer(chunk)] - offsetInBuffer(chunk));
+        }
+
+        private long filePosition(int chunk) {
+            return dataOffsets[buffer(chunk)] + offsetInBuffer(chunk);
+        }
+
+        private long address(BufferGroup group, int chunk) {
+            return group.getAddress(buffer(chunk)) + offsetInBuffer(chunk);
+        }
+
+        private ByteBuffer view(BufferGroup group, int chunk) {
+            return MemoryUtils.wrap(address(group, chunk), chunkLength(chunk));
+        }
+
+        private ByteBuffer header(int[] checksums) {
+            ByteBuffer header = ByteBuffer.allocate(checksumsOffset() + checksums.length * Integer.BYTES);
+            header.putLong(MAGIC).putInt(VERSION).putInt(chunkSize).putInt(sizes.length);
+            for(int i = 0;i < sizes.length;i++) {
+                header.putLong(sizes[i]).putLong(dataOffsets[i]);
+            }
+            for(int checksum : checksums) {
+                header.putInt(checksum);
+            }
+            return header.flip();
+        }
+
+        private static long align(long offset) {
+            return (offset + PAGE_SIZE - 1) & -PAGE_SIZE;
+        }
+    }
+
+    public static final class Stats {
+
+        private final String operation;
+        private final long totalBytes;
+        private final long bytes;
+        private final int chunks;
+        private final long changedChunks;
+        private final long nanos;
+
+        private Stats(String operation, long totalBytes, long bytes, int chunks, long changedChunks, long nanos) {
+            this.operation = operation;
+            this.totalBytes = totalBytes;
+            this.bytes = bytes;
+            this.chunks = chunks;
+            this.changedChunks = changedChunks;
+            this.nanos = nanos;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+
+        public long nanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            final double seconds = nanos / 1e9;
+            return String.format("%s of %.1f MB: %.1f MB in %d of %d chunks, %.3f ms, %.1f MB/s of buffer data, %.1f MB/s of disk",
+                    operation, totalBytes / 1024.0 / 1024.0, bytes / 1024.0 / 1024.0, changedChunks, chunks, nanos / 1e6,
+                    totalBytes / 1024.0 / 1024.0 / seconds, bytes / 1024.0 / 1024.0 / seconds);
+        }
+    }
+
+    private BufferSnapshot() {}
+}
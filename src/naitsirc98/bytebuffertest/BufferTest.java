@@ -0,0 +1,15 @@
+package naitsirc98.bytebuffertest;
+
+/**
+ * Results every test run by {@link Main} reports once its thread is done.
+ */
+public interface BufferTest extends Runnable {
+
+    LatencyHistogram histogram();
+
+    long operations();
+
+    long accessNanos();
+
+    long initNanos();
+}
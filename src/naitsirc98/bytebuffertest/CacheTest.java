@@ -0,0 +1,158 @@
+package naitsirc98.bytebuffertest;
+
+import naitsirc98.bytebuffertest.cache.OffHeapCache;
+import naitsirc98.bytebuffertest.cache.ValueReader;
+import naitsirc98.bytebuffertest.event.EventLog;
+import naitsirc98.bytebuffertest.event.EventType;
+import naitsirc98.bytebuffertest.workload.AccessPattern;
+import naitsirc98.bytebuffertest.workload.AccessWidth;
+import naitsirc98.bytebuffertest.workload.OffsetGenerator;
+import naitsirc98.bytebuffertest.workload.Workload;
+
+import java.util.SplittableRandom;
+
+/**
+ * Test where every thread runs a read-through workload against one {@link OffHeapCache} built over the buffers of
+ * the group, one segment per buffer. Keys are drawn from a zipfian distribution over -keys keys. A read that misses
+ * puts the value, as a cache in front of a slower store would, and the rest of the operations overwrite the value.
+ * Every key has its own value length, between half and all of -valueSize.
+ */
+public class CacheTest implements BufferTest {
+
+    // Reads the first and last byte in place, so hits do not copy the value
+    private static final ValueReader CHECKSUM = value -> value.get(0) + value.get(value.limit() - 1) + value.limit();
+
+    private final OffHeapCache cache;
+    private final int index;
+    private final Arguments args;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long operations;
+    private long accessNanos;
+    private long checksum;
+
+    public CacheTest(OffHeapCache cache, int index, Arguments args) {
+        this.cache = cache;
+        this.index = index;
+        this.args = args;
+    }
+
+    private String thread() {
+        final Thread thread = Thread.currentThread();
+        return thread.isVirtual() ? "virtual-" + index : thread.getName();
+    }
+
+    @Override
+    public void run() {
+        Log.logVerbose(thread() + ": Executing cache test " + args);
+
+        final SplittableRandom random = new SplittableRandom(System.nanoTime());
+        final Workload workload = args.workload();
+        final OffsetGenerator keys = OffsetGenerator.of(new Workload(AccessPattern.ZIPFIAN, AccessWidth.BYTE,
+                workload.readPercent(), 1, workload.zipfExponent()), args.cacheKeys(), random);
+        final byte[] value = new byte[args.cacheValueSize()];
+        random.nextBytes(value);
+        final int operationsPerIteration = args.operations();
+
+        for(int j = 0;j < args.warmupIterations();j++) {
+            run(keys, random, value, operationsPerIteration, null);
+        }
+
+        final boolean events = EventLog.isEnabled();
+        if(events) {
+            EventLog.record(EventType.TEST_STARTED, index);
+        }
+        final boolean recordLatency = args.latency();
+        final LatencyHistogram iterationHistogram = new LatencyHistogram();
+
+        for(int j = 0;j < args.iterations();j++) {
+            if(events) {
+                EventLog.record(EventType.ITERATION_STARTED, index, j);
+            }
+            if(!args.noSleep()) {
+                sleep(1000);
+            }
+            final long iterationStart = System.nanoTime();
+            run(keys, random, value, operationsPerIteration, recordLatency ? iterationHistogram : null);
+            final long iterationNanos = System.nanoTime() - iterationStart;
+            accessNanos += iterationNanos;
+            operations += operationsPerIteration;
+            if(events) {
+                EventLog.record(EventType.ITERATION_FINISHED, index, j, operationsPerIteration, iterationNanos);
+            }
+            if(recordLatency) {
+                Log.log(thread() + ": Iteration " + j + ": " + DirectByteBufferTest.throughput(operationsPerIteration, iterationNanos)
+                        + ", " + iterationHistogram.summary());
+                histogram.add(iterationHistogram);
+                iterationHistogram.reset();
+            } else if(!events && Log.isVerbose()) {
+                Log.log(thread() + ": Iteration " + j + ": " + DirectByteBufferTest.throughput(operationsPerIteration, iterationNanos));
+            }
+        }
+
+        if(events) {
+            EventLog.record(EventType.TEST_FINISHED, index, operations, accessNanos);
+        }
+        final String summary = thread() + ": " + DirectByteBufferTest.throughput(operations, accessNanos)
+                + (recordLatency ? ", " + histogram.summary() : "");
+        if(args.virtualThreads()) {
+            Log.logVerbose(summary);
+        } else {
+            Log.log(summary);
+        }
+        Log.logVerbose(thread() + ": Cache checksum " + checksum);
+    }
+
+    private void run(OffsetGenerator keys, SplittableRandom random, byte[] value, int operations, LatencyHistogram latencies) {
+        final int readPercent = args.workload().readPercent();
+        final int halfValue = Math.max(1, value.length / 2);
+        for(int i = 0;i < operations;i++) {
+            final long key = keys.next();
+            final long start = latencies != null ? System.nanoTime() : 0;
+            if(random.nextInt(100) < readPercent) {
+                final long result = cache.read(key, CHECKSUM, Long.MIN_VALUE);
+                if(result != Long.MIN_VALUE) {
+                    checksum += result;
+                } else {
+                    cache.put(key, value, 0, valueLength(key, halfValue, value.length));
+                }
+            } else {
+                cache.put(key, value, 0, valueLength(key, halfValue, value.length));
+            }
+            if(latencies != null) {
+                latencies.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static int valueLength(long key, int min, int max) {
+        return min + (int) Math.floorMod(key * 0x9E3779B97F4A7C15L, (long) (max - min + 1));
+    }
+
+    @Override
+    public LatencyHistogram histogram() {
+        return histogram;
+    }
+
+    @Override
+    public long operations() {
+        return operations;
+    }
+
+    @Override
+    public long accessNanos() {
+        return accessNanos;
+    }
+
+    @Override
+    public long initNanos() {
+        return 0;
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
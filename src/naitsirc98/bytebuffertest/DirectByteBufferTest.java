@@ -1,66 +1,209 @@
 package naitsirc98.bytebuffertest;
 
+import naitsirc98.bytebuffertest.alloc.EpochReclaimer;
+import naitsirc98.bytebuffertest.alloc.ManagedBuffer;
+import naitsirc98.bytebuffertest.event.EventLog;
+import naitsirc98.bytebuffertest.event.EventType;
+import naitsirc98.bytebuffertest.workload.AccessTarget;
+import naitsirc98.bytebuffertest.workload.OffsetGenerator;
+import naitsirc98.bytebuffertest.workload.Workload;
+
 import java.nio.ByteBuffer;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import static naitsirc98.bytebuffertest.MemoryUtils.*;
 
-public class DirectByteBufferTest implements Runnable {
+public class DirectByteBufferTest implements BufferTest {
 
+    private final BufferGroup bufferGroup;
+    private final int index;
     private ByteBuffer buffer;
+    private OffHeapRegion region;
+    private ManagedBuffer managed;
     private final Arguments args;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long operations;
+    private long accessNanos;
+    private long checksum;
+    private long initNanos;
 
-    public DirectByteBufferTest(ByteBuffer buffer, Arguments args) {
-        this.buffer = buffer;
+    public DirectByteBufferTest(BufferGroup bufferGroup, int index, Arguments args) {
+        this.bufferGroup = bufferGroup;
+        this.index = index;
         this.args = args;
     }
 
     private String thread() {
-        return Thread.currentThread().getName();
+        final Thread thread = Thread.currentThread();
+        return thread.isVirtual() ? "virtual-" + index : thread.getName();
+    }
+
+    private Object target() {
+        if(managed != null) {
+            return managed;
+        }
+        return region != null ? region : buffer;
     }
 
     public void run() {
 
         Log.logVerbose(thread() + ": Executing ByteBuffer test " + args);
 
-        Random random = new Random(System.nanoTime());
+        if(args.allocInWorker()) {
+            initNanos = bufferGroup.allocate(index);
+        }
+        buffer = bufferGroup.get(index);
+        region = bufferGroup.isRegion() ? bufferGroup.getRegion(index) : null;
+        managed = bufferGroup.isManaged() ? bufferGroup.getManaged(index) : null;
+        final EpochReclaimer reclaimer = bufferGroup.reclaimer();
+
+        SplittableRandom random = new SplittableRandom(System.nanoTime());
+        final Workload workload = args.workload();
+        final AccessTarget accessTarget = accessTarget();
+        final OffsetGenerator offsets = workload.offsets(accessTarget, random);
+        final int operationsPerIteration = args.operations();
 
         Runtime r = Runtime.getRuntime();
 
+        for(int j = 0;j < args.warmupIterations();j++) {
+            if(reclaimer != null) {
+                final EpochReclaimer.Guard guard = reclaimer.enter();
+                try {
+                    checksum += workload.run(accessTarget, offsets, random, operationsPerIteration, null);
+                } finally {
+                    guard.close();
+                }
+            } else {
+                checksum += workload.run(accessTarget, offsets, random, operationsPerIteration, null);
+            }
+        }
+        if(args.warmupIterations() > 0) {
+            Log.logVerbose(thread() + ": " + args.warmupIterations() + " warm-up iterations done");
+        }
+
         final long start = System.currentTimeMillis();
 
+        final boolean events = EventLog.isEnabled();
+        if(events) {
+            EventLog.record(EventType.TEST_STARTED, index);
+        }
+
+        PageFaults totalFaults = PageFaults.ofThread();
+        long totalSyncNanos = 0;
+        final boolean recordLatency = args.latency();
+        final boolean reportFaults = bufferGroup.isMapped() && (events || Log.isVerbose());
+        final LatencyHistogram iterationHistogram = new LatencyHistogram();
+
         for(int j = 0;j < args.iterations();j++) {
-            Log.logVerbose(thread() + ": Starting iteration " + j + "...");
-            sleep(1000);
-            for(int i = 0;i < 100000;i++) {
-                final int pos1 = random.nextInt(buffer.capacity());
-                final int pos2 = random.nextInt(buffer.capacity());
-                buffer.put(pos1, random.nextBoolean() ? (byte) i : buffer.get(pos2));
-                if(args.exception() && j >= 2 && random.nextBoolean()) {
-                    throw new UserRequestedException(thread() + ": User requested exception: buffer = " + buffer);
+            if(events) {
+                EventLog.record(EventType.ITERATION_STARTED, index, j);
+            } else if(Log.isVerbose()) {
+                Log.log(thread() + ": Starting iteration " + j + "...");
+            }
+            if(!args.noSleep()) {
+                sleep(1000);
+            }
+            final PageFaults faults = reportFaults ? PageFaults.ofThread() : null;
+            final long iterationStart = System.nanoTime();
+            if(reclaimer != null) {
+                final EpochReclaimer.Guard guard = reclaimer.enter();
+                try {
+                    checksum += workload.run(accessTarget, offsets, random, operationsPerIteration,
+                            recordLatency ? iterationHistogram : null);
+                } finally {
+                    guard.close();
                 }
+            } else {
+                checksum += workload.run(accessTarget, offsets, random, operationsPerIteration,
+                        recordLatency ? iterationHistogram : null);
+            }
+            final long iterationNanos = System.nanoTime() - iterationStart;
+            accessNanos += iterationNanos;
+            operations += operationsPerIteration;
+            if(buffer != null) {
+                buffer.clear();
             }
-            buffer.clear();
             if(args.exception()) {
-                throw new UserRequestedException(thread() + ": User requested exception: buffer = " + buffer);
+                throw new UserRequestedException(thread() + ": User requested exception: buffer = " + target());
+            }
+            if(events) {
+                EventLog.record(EventType.ITERATION_FINISHED, index, j, operationsPerIteration, iterationNanos);
+            }
+            if(recordLatency) {
+                Log.log(thread() + ": Iteration " + j + ": " + throughput(operationsPerIteration, iterationNanos)
+                        + ", " + iterationHistogram.summary());
+                histogram.add(iterationHistogram);
+                iterationHistogram.reset();
+            } else if(!events && Log.isVerbose()) {
+                Log.log(thread() + ": Iteration " + j + ": " + throughput(operationsPerIteration, iterationNanos));
+            }
+            if(reportFaults) {
+                final PageFaults iterationFaults = PageFaults.ofThread().since(faults);
+                if(events) {
+                    EventLog.record(EventType.PAGE_FAULTS, index, j, iterationFaults.minor(), iterationFaults.major());
+                } else {
+                    Log.log(thread() + ": Iteration " + j + " caused " + iterationFaults);
+                }
+            }
+            if(bufferGroup.isMapped() && args.syncPolicy() == SyncPolicy.ITERATION) {
+                final long syncNanos = bufferGroup.force(index);
+                totalSyncNanos += syncNanos;
+                if(events) {
+                    EventLog.record(EventType.MSYNC, index, j, syncNanos);
+                } else if(Log.isVerbose()) {
+                    Log.log(thread() + ": Iteration " + j + " msync took " + syncNanos / 1e6 + " ms");
+                }
             }
         }
 
+        if(events) {
+            EventLog.record(EventType.TEST_FINISHED, index, operations, accessNanos);
+        }
+        final String summary = thread() + ": " + throughput(operations, accessNanos)
+                + (recordLatency ? ", " + histogram.summary() : "")
+                + (args.allocInWorker() ? String.format(", init %.3f ms", initNanos / 1e6) : "");
+        if(args.virtualThreads()) {
+            Log.logVerbose(summary);
+        } else {
+            Log.log(summary);
+        }
+        Log.logVerbose(thread() + ": " + workload + " checksum " + checksum);
         Log.logVerbose(thread() + ": Loop terminated in " + (System.currentTimeMillis() - start) / 1000.0 + " seconds.");
+        if(bufferGroup.isMapped()) {
+            Log.log(thread() + ": Loop caused " + PageFaults.ofThread().since(totalFaults)
+                    + ", msync total " + totalSyncNanos / 1e6 + " ms");
+        }
 
         if(args.free()) {
             Log.log(thread() + ": Deleting buffer explicitly...");
             sleep(3000);
-            free(buffer);
-            Log.log(thread() + ": Buffer cleaner invoked " + buffer);
-            Log.log(thread() + ": Native memory is supposed to be freed at this point.");
+            if(bufferGroup.isMapped() && args.syncPolicy() == SyncPolicy.UNMAP) {
+                Log.log(thread() + ": msync before unmap took " + bufferGroup.force(index) / 1e6 + " ms");
+            }
+            bufferGroup.release(index);
+            Log.log(thread() + ": Buffer " + (args.pool() ? "returned to pool " : region != null ? "freed " : args.mapped() ? "unmapped "
+                    : managed != null ? "released " : args.dontNeed() ? "pages dropped with MADV_DONTNEED "
+                    : bufferGroup.isPageMapped() ? "unmapped " : "cleaner invoked ") + target());
+            if(bufferGroup.isPageMapped()) {
+                Log.log(thread() + ": " + nativeMemory());
+            }
+            if(reclaimer != null) {
+                Log.log(thread() + ": " + reclaimer.pending() + " buffers waiting for readers to leave their epoch");
+            } else if(!args.pool()) {
+                Log.log(thread() + ": Native memory is supposed to be freed at this point.");
+            }
             sleep(3000);
             if(args.crash()) {
                 Log.log(thread() + ": Provoking an illegal (to deleted) memory access...");
                 Log.log(thread() + ": Please notice this could cause either an exception or a program crash");
                 Byte b = null;
                 try {
-                    b = buffer.get(0);
+                    if(MemorySanitizer.ENABLED && region != null) {
+                        // Through the raw pointer, so the sanitizer reports the use after free with its sites
+                        b = MemoryUtils.getByte(bufferGroup.getAddress(index), 0);
+                    } else {
+                        b = managed != null ? managed.getByte(0) : region != null ? region.getByte(0) : buffer.get(0);
+                    }
                 } catch (Exception e) {
                     Log.log(thread() + ": Accessing deleted memory throws exception, as expected: " + e + "\n" + e.getMessage());
                 }
@@ -75,20 +218,58 @@ public class DirectByteBufferTest implements Runnable {
             double totalMem = r.totalMemory() / 1024.0 / 1024.0;
             double freeMem = r.freeMemory() / 1024.0 / 1024.0;
             double usedMed = totalMem - freeMem;
-            Log.log(thread() + ": JVM Memory used before gc: " + usedMed + " MB");
+            Log.log(thread() + ": JVM Memory used before gc: " + usedMed + " MB, " + nativeMemory());
             sleep(2000);
             System.gc();
             sleep(3000);
             totalMem = r.totalMemory() / 1024.0 / 1024.0;
             freeMem = r.freeMemory() / 1024.0 / 1024.0;
             usedMed = totalMem - freeMem;
-            Log.log(thread() + ": JVM Memory used after gc: " + usedMed + " MB");
+            Log.log(thread() + ": JVM Memory used after gc: " + usedMed + " MB, " + nativeMemory());
             sleep(3000);
         }
 
         Log.logVerbose(thread() + ": Test terminated");
 
         buffer = null;
+        region = null;
+        managed = null;
+    }
+
+    private AccessTarget accessTarget() {
+        if(args.pointerAccess()) {
+            return AccessTarget.ofPointer(bufferGroup.getAddress(index), bufferGroup.size(index));
+        }
+        if(managed != null) {
+            return AccessTarget.of(managed);
+        }
+        return region != null ? AccessTarget.of(region) : AccessTarget.of(buffer);
+    }
+
+    private static String nativeMemory() {
+        return String.format("direct buffers %.1f MB, RSS %.1f MB", MemorySampler.directMemoryUsed() / 1024.0 / 1024.0,
+                MemorySampler.residentSetSize() / 1024.0 / 1024.0);
+    }
+
+    static String throughput(long operations, long nanos) {
+        return String.format("%d ops in %.3f ms, %.0f ops/s", operations, nanos / 1e6,
+                nanos == 0 ? 0.0 : operations * 1e9 / nanos);
+    }
+
+    public LatencyHistogram histogram() {
+        return histogram;
+    }
+
+    public long operations() {
+        return operations;
+    }
+
+    public long accessNanos() {
+        return accessNanos;
+    }
+
+    public long initNanos() {
+        return initNanos;
     }
 
     private void sleep(long millis) {
@@ -0,0 +1,168 @@
+package naitsirc98.bytebuffertest;
+
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * {@link MemoryBackend} on the Foreign Function and Memory API. Raw addresses are accessed through a single segment
+ * spanning the whole address space, and malloc/realloc/free are downcalls to the C library, because an
+ * {@link java.lang.foreign.Arena} can only release all of its segments at once.
+ *
+ * Requires the FFM API (final in JDK 22) and {@code --enable-native-access=ALL-UNNAMED} to avoid restricted
+ * method warnings.
+ */
+final class ForeignMemoryBackend implements MemoryBackend {
+
+    private static final MemorySegment ALL = MemorySegment.NULL.reinterpret(Long.MAX_VALUE);
+    private static final MethodHandle MALLOC;
+    private static final MethodHandle REALLOC;
+    private static final MethodHandle FREE;
+
+    @Override
+    public String name() {
+        return "foreign";
+    }
+
+    @Override
+    public long malloc(long bytes) {
+        try {
+            return checkAllocation(((MemorySegment) MALLOC.invokeExact(bytes)).address(), bytes);
+        } catch(OutOfMemoryError e) {
+            throw e;
+        } catch(Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public long realloc(long ptr, long bytes) {
+        try {
+            // On failure libc leaves the original block untouched, so the caller still owns ptr
+            return checkAllocation(((MemorySegment) REALLOC.invokeExact(MemorySegment.ofAddress(ptr), bytes)).address(), bytes);
+        } catch(OutOfMemoryError e) {
+            throw e;
+        } catch(Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void free(long ptr) {
+        try {
+            FREE.invokeExact(MemorySegment.ofAddress(ptr));
+        } catch(Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void memset(long ptr, long bytes, byte value) {
+        ALL.asSlice(ptr, bytes).fill(value);
+    }
+
+    @Override
+    public void memcpy(long src, long dest, long bytes) {
+        MemorySegment.copy(ALL, src, ALL, dest, bytes);
+    }
+
+    @Override
+    public void memcpy(long src, byte[] dest, int destOffset, int bytes) {
+        MemorySegment.copy(ALL, JAVA_BYTE, src, dest, destOffset, bytes);
+    }
+
+    @Override
+    public void memcpy(byte[] src, int srcOffset, long dest, int bytes) {
+        MemorySegment.copy(src, srcOffset, ALL, JAVA_BYTE, dest, bytes);
+    }
+
+    @Override
+    public byte getByte(long ptr) {
+        return ALL.get(JAVA_BYTE, ptr);
+    }
+
+    @Override
+    public void setByte(long ptr, byte value) {
+        ALL.set(JAVA_BYTE, ptr, value);
+    }
+
+    @Override
+    public short getShort(long ptr) {
+        return ALL.get(JAVA_SHORT_UNALIGNED, ptr);
+    }
+
+    @Override
+    public void setShort(long ptr, short value) {
+        ALL.set(JAVA_SHORT_UNALIGNED, ptr, value);
+    }
+
+    @Override
+    public char getChar(long ptr) {
+        return ALL.get(JAVA_CHAR_UNALIGNED, ptr);
+    }
+
+    @Override
+    public void setChar(long ptr, char value) {
+        ALL.set(JAVA_CHAR_UNALIGNED, ptr, value);
+    }
+
+    @Override
+    public int getInt(long ptr) {
+        return ALL.get(JAVA_INT_UNALIGNED, ptr);
+    }
+
+    @Override
+    public void setInt(long ptr, int value) {
+        ALL.set(JAVA_INT_UNALIGNED, ptr, value);
+    }
+
+    @Override
+    public long getLong(long ptr) {
+        return ALL.get(JAVA_LONG_UNALIGNED, ptr);
+    }
+
+    @Override
+    public void setLong(long ptr, long value) {
+        ALL.set(JAVA_LONG_UNALIGNED, ptr, value);
+    }
+
+    @Override
+    public float getFloat(long ptr) {
+        return ALL.get(JAVA_FLOAT_UNALIGNED, ptr);
+    }
+
+    @Override
+    public void setFloat(long ptr, float value) {
+        ALL.set(JAVA_FLOAT_UNALIGNED, ptr, value);
+    }
+
+    @Override
+    public double getDouble(long ptr) {
+        return ALL.get(JAVA_DOUBLE_UNALIGNED, ptr);
+    }
+
+    @Override
+    public void setDouble(long ptr, double value) {
+        ALL.set(JAVA_DOUBLE_UNALIGNED, ptr, value);
+    }
+
+    // Same contract as Unsafe: only a zero byte request may return NULL
+    private static long checkAllocation(long address, long bytes) {
+        if(address == MemoryUtils.NULL && bytes != 0) {
+            throw new OutOfMemoryError("Unable to allocate " + bytes + " bytes");
+        }
+        return address;
+    }
+
+    static {
+        final Linker linker = Linker.nativeLinker();
+        final SymbolLookup libc = linker.defaultLookup();
+        MALLOC = linker.downcallHandle(libc.find("malloc").orElseThrow(), FunctionDescriptor.of(ADDRESS, JAVA_LONG));
+        REALLOC = linker.downcallHandle(libc.find("realloc").orElseThrow(), FunctionDescriptor.of(ADDRESS, ADDRESS, JAVA_LONG));
+        FREE = linker.downcallHandle(libc.find("free").orElseThrow(), FunctionDescriptor.ofVoid(ADDRESS));
+    }
+}
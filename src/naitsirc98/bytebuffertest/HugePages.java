@@ -0,0 +1,179 @@
+package naitsirc98.bytebuffertest;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.invoke.MethodHandle;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * Anonymous memory mapped with mmap through the FFM linker, so random access over large buffers can use 2 MB pages
+ * and miss the TLB 512 times less often than with 4 KB pages.
+ *
+ * Explicit huge pages ({@link PageMode#HUGETLB}) come from the pool reserved in /proc/sys/vm/nr_hugepages. When the
+ * pool is empty mmap fails with ENOMEM, and the mapping falls back to transparent huge pages. Transparent huge pages
+ * ({@link PageMode#THP}) are requested with madvise(MADV_HUGEPAGE) on a 2 MB aligned mapping; when THP is disabled
+ * the mapping simply keeps its 4 KB pages. Neither case is an error, so check {@link MemorySampler#anonHugePages()}
+ * or {@link MemorySampler#hugetlbPages()} to see what the kernel actually gave.
+ *
+ * Linux only. Mappings are always a multiple of 2 MB, unmap them with the same size they were mapped with.
+ */
+public final class HugePages {
+
+    public static final long HUGE_PAGE_SIZE = 2 * 1024 * 1024;
+
+    private static final int PROT_READ = 0x1;
+    private static final int PROT_WRITE = 0x2;
+    private static final int MAP_PRIVATE = 0x02;
+    private static final int MAP_ANONYMOUS = 0x20;
+    private static final int MAP_HUGETLB = 0x40000;
+    private static final int MADV_WILLNEED = 3;
+    private static final int MADV_DONTNEED = 4;
+    private static final int MADV_HUGEPAGE = 14;
+    private static final int MADV_NOHUGEPAGE = 15;
+    private static final long MAP_FAILED = -1L;
+    private static final int EPERM = 1;
+    private static final int ENOMEM = 12;
+    private static final int EINVAL = 22;
+
+    private static final StructLayout CALL_STATE = Linker.Option.captureStateLayout();
+    private static final long ERRNO_OFFSET = CALL_STATE.byteOffset(MemoryLayout.PathElement.groupElement("errno"));
+    // errno of every call is captured into this one segment, so the calls and the errno reads after them are
+    // serialized by the synchronized public methods
+    private static final MemorySegment CALL_STATE_SEGMENT = Arena.global().allocate(CALL_STATE);
+    private static final MethodHandle MMAP;
+    private static final MethodHandle MUNMAP;
+    private static final MethodHandle MADVISE;
+
+    private static boolean hugetlbFallbackLogged;
+
+    /**
+     * Maps at least {@code bytes} of zeroed memory with the pages of the given mode.
+     */
+    public static synchronized long map(long bytes, PageMode mode) {
+        if(bytes <= 0) {
+            throw new IllegalArgumentException("Size must be positive: " + bytes);
+        }
+        final long size = mappedSize(bytes);
+        switch(mode) {
+            case HUGETLB: {
+                final long address = mmap(size, MAP_HUGETLB);
+                if(address != MAP_FAILED) {
+                    return address;
+                }
+                if(!hugetlbFallbackLogged) {
+                    hugetlbFallbackLogged = true;
+                    Log.log("No explicit huge pages available (" + errorName(lastErrno()) + ", "
+                            + MemorySampler.hugetlbPages() + " free in /proc/sys/vm/nr_hugepages), falling back to transparent huge pages");
+                }
+                return mapAligned(size, MADV_HUGEPAGE);
+            }
+            case THP:
+                return mapAligned(size, MADV_HUGEPAGE);
+            case SMALL:
+                return mapAligned(size, MADV_NOHUGEPAGE);
+            default:
+                throw new IllegalArgumentException("Page mode " + mode + " is not backed by mmap");
+        }
+    }
+
+    public static synchronized void unmap(long address, long bytes) {
+        if(munmap(address, mappedSize(bytes)) != 0) {
+            throw new IllegalStateException("munmap of 0x" + Long.toHexString(address) + " failed: " + errorName(lastErrno()));
+        }
+    }
+
+    /**
+     * Releases the physical pages of the range. The mapping stays valid and reads back zeros on the next access.
+     */
+    public static synchronized void dontNeed(long address, long bytes) {
+        madvise(address, bytes, MADV_DONTNEED);
+    }
+
+    /**
+     * Hints that the range will be accessed soon. On anonymous memory this only reads back swapped out pages, it does
+     * not populate pages that were never touched.
+     */
+    public static synchronized void willNeed(long address, long bytes) {
+        madvise(address, bytes, MADV_WILLNEED);
+    }
+
+    public static long mappedSize(long bytes) {
+        return (bytes + HUGE_PAGE_SIZE - 1) & -HUGE_PAGE_SIZE;
+    }
+
+    // THP only backs 2 MB aligned ranges with huge pages, so over-map and trim both ends to a 2 MB boundary
+    private static long mapAligned(long size, int advice) {
+        final long address = mmap(size + HUGE_PAGE_SIZE, 0);
+        if(address == MAP_FAILED) {
+            throw new OutOfMemoryError("mmap of " + size + " bytes failed: " + errorName(lastErrno()));
+        }
+        final long aligned = (address + HUGE_PAGE_SIZE - 1) & -HUGE_PAGE_SIZE;
+        if(aligned > address) {
+            munmap(address, aligned - address);
+        }
+        munmap(aligned + size, address + HUGE_PAGE_SIZE - aligned);
+        madvise(aligned, size, advice);
+        return aligned;
+    }
+
+    private static void madvise(long address, long bytes, int advice) {
+        final int result;
+        try {
+            result = (int) MADVISE.invokeExact(CALL_STATE_SEGMENT, MemorySegment.ofAddress(address), bytes, advice);
+        } catch(Throwable e) {
+            throw new RuntimeException(e);
+        }
+        // EINVAL for MADV_HUGEPAGE means THP is not built into the kernel: keep the small pages
+        if(result != 0) {
+            Log.logVerbose("madvise(" + advice + ") of 0x" + Long.toHexString(address) + " failed: " + errorName(lastErrno()));
+        }
+    }
+
+    private static long mmap(long size, int flags) {
+        try {
+            return ((MemorySegment) MMAP.invokeExact(CALL_STATE_SEGMENT, MemorySegment.NULL, size,
+                    PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANONYMOUS | flags, -1, 0L)).address();
+        } catch(Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int munmap(long address, long size) {
+        try {
+            return (int) MUNMAP.invokeExact(CALL_STATE_SEGMENT, MemorySegment.ofAddress(address), size);
+        } catch(Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int lastErrno() {
+        return CALL_STATE_SEGMENT.get(JAVA_INT, ERRNO_OFFSET);
+    }
+
+    private static String errorName(int errno) {
+        switch(errno) {
+            case ENOMEM: return "ENOMEM";
+            case EPERM: return "EPERM";
+            case EINVAL: return "EINVAL";
+            default: return "errno " + errno;
+        }
+    }
+
+    static {
+        final Linker linker = Linker.nativeLinker();
+        final Linker.Option errno = Linker.Option.captureCallState("errno");
+        MMAP = linker.downcallHandle(linker.defaultLookup().find("mmap").orElseThrow(),
+                FunctionDescriptor.of(ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_LONG), errno);
+        MUNMAP = linker.downcallHandle(linker.defaultLookup().find("munmap").orElseThrow(),
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG), errno);
+        MADVISE = linker.downcallHandle(linker.defaultLookup().find("madvise").orElseThrow(),
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG, JAVA_INT), errno);
+    }
+
+    private HugePages() {}
+}
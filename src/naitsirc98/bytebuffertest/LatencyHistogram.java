@@ -0,0 +1,121 @@
+package naitsirc98.bytebuffertest;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of nanosecond latencies in the style of HdrHistogram: every power of two range is split in
+ * {@value #SUB_BUCKETS_HALF} linear sub-buckets, so recorded values keep better than 2% precision from 1 ns up to
+ * the whole long range, in a fixed array of counters.
+ *
+ * Recording does not allocate and is not thread safe: keep one histogram per thread and {@link #add merge} them
+ * when the threads are done.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKETS_HALF = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS_HALF;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record(long value) {
+        if(value < 0) {
+            value = 0;
+        }
+        ++counts[indexOf(value)];
+        ++count;
+        sum += value;
+        if(value < min) {
+            min = value;
+        }
+        if(value > max) {
+            max = value;
+        }
+    }
+
+    public void add(LatencyHistogram other) {
+        for(int i = 0;i < BUCKETS;i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return count == 0 ? 0.0 : sum / (double) count;
+    }
+
+    public long percentile(double percentile) {
+        if(count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for(int i = 0;i < BUCKETS;i++) {
+            seen += counts[i];
+            if(seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    public String summary() {
+        return String.format("p50=%s p99=%s p99.9=%s max=%s mean=%s",
+                format(percentile(50)), format(percentile(99)), format(percentile(99.9)), format(max), format((long) mean()));
+    }
+
+    private static int indexOf(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS + 1;
+        return SUB_BUCKETS + (shift - 1) * SUB_BUCKETS_HALF + (int) (value >>> shift) - SUB_BUCKETS_HALF;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if(index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKETS) / SUB_BUCKETS_HALF + 1;
+        final long top = (index - SUB_BUCKETS) % SUB_BUCKETS_HALF + SUB_BUCKETS_HALF;
+        return ((top + 1) << shift) - 1;
+    }
+
+    private static String format(long nanos) {
+        if(nanos < 10_000) {
+            return nanos + "ns";
+        }
+        if(nanos < 10_000_000) {
+            return String.format("%.1fus", nanos / 1e3);
+        }
+        return String.format("%.1fms", nanos / 1e6);
+    }
+}
@@ -1,11 +1,28 @@
 package naitsirc98.bytebuffertest;
 
+import naitsirc98.bytebuffertest.cache.OffHeapCache;
+import naitsirc98.bytebuffertest.event.EventLog;
+import naitsirc98.bytebuffertest.event.EventLogDecoder;
+import naitsirc98.bytebuffertest.matrix.FlatJson;
+import naitsirc98.bytebuffertest.matrix.MatrixRunner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 public class Main {
 
+    private static final long RELEASE_TIMEOUT_MILLIS = 10000;
+
     public static void main(String[] args) {
         if(args.length > 0 && args[0].equalsIgnoreCase("-help")) {
             help();
@@ -13,19 +30,83 @@ public class Main {
         }
         Arguments arguments = new Arguments(args);
         Log.setVerbose(arguments.verbose());
+        MemorySampler sampler = arguments.sampleFile() != null
+                ? new MemorySampler(arguments.sampleFile(), arguments.sampleInterval()) : null;
+        EventLog eventLog = arguments.eventFile() != null ? EventLog.start(arguments.eventFile()) : null;
         BufferGroup bufferGroup = new BufferGroup(arguments);
-        runTests(arguments, bufferGroup);
+        if(arguments.restoreFile() != null) {
+            Log.log("Restoring buffers from " + arguments.restoreFile() + "...");
+            Log.log(bufferGroup.restore(Paths.get(arguments.restoreFile()), arguments.snapshotThreads()).toString());
+        }
+        OffHeapCache cache = arguments.cache() ? newCache(arguments, bufferGroup) : null;
+        BufferTest[] tests = runTests(arguments, bufferGroup, cache);
+        reportResults(arguments, bufferGroup, tests, cache);
+        if(cache != null) {
+            cache.close();
+        }
         onTestsFinished(arguments, bufferGroup);
+        bufferGroup.close();
+        if(eventLog != null) {
+            EventLog.stop();
+            Log.log("Wrote " + eventLog.events() + " events to " + eventLog.file() + (eventLog.dropped() > 0
+                    ? ", " + eventLog.dropped() + " dropped" : "") + ". Decode them with " + EventLogDecoder.class.getName());
+        }
+        if(sampler != null) {
+            sampler.close();
+        }
     }
 
-    private static void runTests(Arguments arguments, BufferGroup bufferGroup) {
-        if(arguments.numThreads() == 1) {
-            new DirectByteBufferTest(bufferGroup.get(0), arguments).run();
+    private static OffHeapCache newCache(Arguments arguments, BufferGroup bufferGroup) {
+        final long[] segments = new long[bufferGroup.count()];
+        for(int i = 0;i < segments.length;i++) {
+            segments[i] = bufferGroup.getAddress(i);
+        }
+        OffHeapCache cache = new OffHeapCache(segments, arguments.bufferBytes());
+        if(arguments.cacheValueSize() > cache.maxValueBytes()) {
+            throw new IllegalArgumentException("Values of " + arguments.cacheValueSize() + " bytes do not fit in cache blocks of "
+                    + arguments.bufferSize() + " segments, the maximum is " + cache.maxValueBytes());
+        }
+        Log.log("Cache of " + segments.length + " segments of " + arguments.bufferSize() + " for " + arguments.cacheKeys()
+                + " keys with values of up to " + arguments.cacheValueSize() + " bytes");
+        return cache;
+    }
+
+    private static BufferTest[] runTests(Arguments arguments, BufferGroup bufferGroup, OffHeapCache cache) {
+        BufferTest[] tests;
+        if(cache != null) {
+            tests = new BufferTest[arguments.numThreads()];
+            for(int i = 0;i < tests.length;i++) {
+                tests[i] = new CacheTest(cache, i, arguments);
+            }
+        } else if(arguments.shared()) {
+            if(arguments.bufferBytes() < SharedBufferTest.requiredBytes(arguments)) {
+                throw new IllegalArgumentException("Shared buffer of " + arguments.bufferSize() + " is too small for "
+                        + arguments.numThreads() + " " + arguments.sharedLayout() + " counters");
+            }
+            CyclicBarrier barrier = new CyclicBarrier(arguments.numThreads());
+            tests = new BufferTest[arguments.numThreads()];
+            for(int i = 0;i < tests.length;i++) {
+                tests[i] = new SharedBufferTest(bufferGroup, i, arguments, barrier);
+            }
         } else {
-            Log.log("Preparing thread pool of " + arguments.numThreads() + "...");
-            ExecutorService threadPool = Executors.newFixedThreadPool(arguments.numThreads());
-            for(int i = 0;i < arguments.numThreads();i++) {
-                threadPool.submit(new DirectByteBufferTest(bufferGroup.get(i), arguments));
+            tests = new BufferTest[arguments.numBuffers()];
+            for(int i = 0;i < tests.length;i++) {
+                tests[i] = new DirectByteBufferTest(bufferGroup, i, arguments);
+            }
+        }
+        if(tests.length == 1 && !arguments.virtualThreads()) {
+            tests[0].run();
+        } else {
+            ExecutorService threadPool;
+            if(arguments.virtualThreads()) {
+                Log.log("Starting " + tests.length + " tests on virtual threads...");
+                threadPool = Executors.newVirtualThreadPerTaskExecutor();
+            } else {
+                Log.log("Preparing thread pool of " + arguments.numThreads() + " for " + tests.length + " tests...");
+                threadPool = Executors.newFixedThreadPool(arguments.numThreads());
+            }
+            for(BufferTest test : tests) {
+                threadPool.submit(test);
             }
             threadPool.shutdown();
             try {
@@ -34,43 +115,147 @@ public class Main {
                 e.printStackTrace();
             }
         }
+        return tests;
     }
 
-    private static void onTestsFinished(Arguments arguments, BufferGroup bufferGroup) {
-        if(arguments.checkMemAfterGc()) {
-            Log.log("Checking if native memory was freed by Java...");
-            Log.log("Invoking System.gc() and waiting 5 seconds to let Java garbage collect the ByteBuffer reference...");
-            try {
-                Thread.sleep(2000);
-                System.gc();
-                Thread.sleep(3000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+    private static void reportResults(Arguments arguments, BufferGroup bufferGroup, BufferTest[] tests, OffHeapCache cache) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long operations = 0;
+        double opsPerSecond = 0;
+        long initNanos = 0;
+        long maxInitNanos = 0;
+        for(BufferTest test : tests) {
+            histogram.add(test.histogram());
+            initNanos += test.initNanos();
+            maxInitNanos = Math.max(maxInitNanos, test.initNanos());
+            operations += test.operations();
+            if(test.accessNanos() > 0) {
+                opsPerSecond += test.operations() * 1e9 / test.accessNanos();
+            }
+        }
+        final String threads = arguments.virtualThreads() ? "virtual threads" : Math.min(arguments.numThreads(), tests.length) + " threads";
+        // Summed rates only mean something when every test ran at the same time
+        final boolean concurrent = !arguments.virtualThreads() && tests.length <= arguments.numThreads();
+        Log.log(String.format("Total: %d ops, %.0f ops/s %s across %d tests on %s", operations,
+                concurrent ? opsPerSecond : opsPerSecond / tests.length, concurrent ? "aggregated" : "mean per test", tests.length, threads)
+                + (arguments.latency() ? ", " + histogram.summary() : "")
+                + (arguments.allocInWorker() ? String.format(", worker init mean %.3f ms, max %.3f ms",
+                        initNanos / 1e6 / tests.length, maxInitNanos / 1e6) : ""));
+        final OffHeapCache.Stats cacheStats = cache != null ? cache.stats() : null;
+        if(cacheStats != null) {
+            Log.log("Cache " + cacheStats);
+        }
+        final long anonHugePages = bufferGroup.anonHugePages();
+        if(arguments.pageMode() != PageMode.NONE) {
+            Log.log(String.format("Pages: %s, %.1f MB of the process backed by transparent huge pages, %d free explicit huge pages",
+                    arguments.pageMode(), anonHugePages / 1024.0 / 1024.0, MemorySampler.hugetlbPages()));
+        }
+        if(arguments.resultsFile() != null) {
+            final boolean latency = histogram.count() > 0;
+            Map<String, Object> results = new LinkedHashMap<>();
+            results.put("javaVersion", System.getProperty("java.version"));
+            results.put("gc", ReclamationProbe.collectors());
+            results.put("arguments", arguments.toString());
+            results.put("tests", tests.length);
+            results.put("operations", operations);
+            results.put("opsPerSecond", concurrent ? opsPerSecond : opsPerSecond / tests.length);
+            results.put("aggregated", concurrent);
+            results.put("latencyP50Nanos", latency ? histogram.percentile(50) : -1);
+            results.put("latencyP99Nanos", latency ? histogram.percentile(99) : -1);
+            results.put("latencyP999Nanos", latency ? histogram.percentile(99.9) : -1);
+            results.put("latencyMaxNanos", latency ? histogram.max() : -1);
+            results.put("initMeanMillis", initNanos / 1e6 / tests.length);
+            results.put("heapUsed", Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+            results.put("directUsed", MemorySampler.directMemoryUsed());
+            results.put("rss", MemorySampler.residentSetSize());
+            results.put("peakRss", MemorySampler.peakResidentSetSize());
+            if(cacheStats != null) {
+                results.put("cacheHitRate", cacheStats.hitRate());
+                results.put("cacheEvictionRate", cacheStats.evictionRate());
+                results.put("cacheRejected", cacheStats.rejected());
             }
-            Log.log("");
-            Log.log("[IMPORTANT] Checking access to native memory via the buffer native pointer to memory." +
-                    " If native memory is deleted, then this will cause a crash (EXCEPTION_ACCESS_VIOLATION) or an exception.");
-            Log.log("");
+            results.put("pages", arguments.pageMode().name());
+            results.put("anonHugePages", anonHugePages);
             try {
-                Thread.sleep(5000);
-            } catch (InterruptedException e) {
+                Files.write(Paths.get(arguments.resultsFile()), (FlatJson.write(results) + "\n").getBytes(StandardCharsets.UTF_8));
+            } catch(IOException e) {
                 e.printStackTrace();
+                throw new RuntimeException(e);
             }
+            Log.logVerbose("Results written to " + arguments.resultsFile());
+        }
+    }
 
-            Byte value = null;
-            try {
-                value = MemoryUtils.getByte(bufferGroup.getAddress(0), 0);
-            } catch (Throwable e) {
-                Log.log("Access to native memory cause an exception, as expected: " + e + ", \n" + e.getMessage());
-            }
-            if(value != null) {
-                Log.log("Access to native pointer " + bufferGroup.getAddress(0) + " did not throw an exception. The native memory" +
-                        "is still being used by this process...");
-            }
+    private static void onTestsFinished(Arguments arguments, BufferGroup bufferGroup) {
+        if(arguments.snapshotFile() != null) {
+            Log.log("Saving " + (arguments.incrementalSnapshot() ? "incremental " : "") + "snapshot to " + arguments.snapshotFile() + "...");
+            Log.log(bufferGroup.save(Paths.get(arguments.snapshotFile()), arguments.incrementalSnapshot(),
+                    arguments.snapshotThreads()).toString());
+        }
+        if(arguments.checkMemAfterGc()) {
+            checkMemAfterGc(arguments, bufferGroup);
+        }
+        if(arguments.churnRate() > 0) {
+            churn(arguments);
+        }
+        if(bufferGroup.pool() != null) {
+            Log.log("Buffer pool " + bufferGroup.pool().stats());
         }
         Log.log("Exiting application...");
     }
 
+    private static void checkMemAfterGc(Arguments arguments, BufferGroup bufferGroup) {
+        if(bufferGroup.isRegion() || bufferGroup.isManaged() || bufferGroup.isPageMapped() || bufferGroup.pool() != null) {
+            Log.log("Only direct and mapped buffers are released by the garbage collector, nothing to check");
+            return;
+        }
+        Log.log("Checking if native memory was freed by Java...");
+        ReclamationProbe probe = new ReclamationProbe(bufferGroup.isMapped() ? "mapped" : "direct");
+        ReclamationProbe.Probe[] probes = new ReclamationProbe.Probe[arguments.numBuffers()];
+        for(int i = 0;i < probes.length;i++) {
+            probes[i] = probe.track(bufferGroup.get(i));
+        }
+        bufferGroup.dropBuffers();
+        for(ReclamationProbe.Probe buffer : probes) {
+            buffer.dropped();
+        }
+        Log.log("Invoking System.gc() and waiting up to " + RELEASE_TIMEOUT_MILLIS / 1000 + " seconds for the native memory to be released...");
+        System.gc();
+        if(!probe.awaitReleased(RELEASE_TIMEOUT_MILLIS)) {
+            Log.log("Not every buffer was released in time, some reference may still be reachable");
+        }
+        Log.log("Reclamation: " + probe.report());
+        probe.close();
+    }
+
+    private static void churn(Arguments arguments) {
+        if(arguments.bufferBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Churn buffers of " + arguments.bufferSize() + " do not fit in a ByteBuffer");
+        }
+        final long interval = 1_000_000_000L / arguments.churnRate();
+        final long duration = arguments.iterations() * 1_000_000_000L;
+        Log.log("Allocating and dropping " + arguments.churnRate() + " buffers of " + arguments.bufferSize()
+                + " per second for " + arguments.iterations() + " seconds...");
+        ReclamationProbe probe = new ReclamationProbe("direct");
+        final long start = System.nanoTime();
+        long next = start;
+        int count = 0;
+        while(next - start < duration) {
+            ByteBuffer buffer = MemoryUtils.allocBuffer(arguments.bufferBytes());
+            buffer.put(0, (byte) 1);
+            probe.track(buffer).dropped();
+            ++count;
+            next += interval;
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+        Log.log("Dropped " + count + " buffers, waiting up to " + RELEASE_TIMEOUT_MILLIS / 1000 + " seconds for the rest to be released...");
+        if(!probe.awaitReleased(RELEASE_TIMEOUT_MILLIS)) {
+            Log.log("Not every buffer was released in time, the collector had no reason to run yet");
+        }
+        Log.log("Churn reclamation: " + probe.report());
+        probe.close();
+    }
+
     private static void help() {
         Log.info("==> Test Direct Byte Buffers <==");
         Log.info("Params:");
@@ -78,15 +263,93 @@ public class Main {
                 " Default is 10.");
         Log.info("  -exc: if you want to throw an exception in the middle of execution and in any thread.");
         Log.info("  -verbose: if you want to log every event of the application.");
-        Log.info("  -size=<MB>: to specify size in MB. Default is 1024 MB (1GB). Max value is 1024MB.");
-        Log.info("  -threads=<thread count>: to specify the number of threads to run, and therefore, the number of buffers to create." +
-                " Default is 1.");
+        Log.info("  -size=<size>[k|m|g]: to specify the size of each buffer. Plain numbers are MB. Default is 1024 MB (1GB)." +
+                " Sizes over 1024MB do not fit in a ByteBuffer and use long-indexed off-heap regions.");
+        Log.info("  -region: if you want to back each buffer with a malloc'd off-heap region accessed with long offsets" +
+                " instead of a ByteBuffer.");
+        Log.info("  -mapped[=<path>]: if you want to back each buffer with a memory mapped file. Path is a directory for one" +
+                " file per buffer, or the file to use with -mapSingleFile. Default is a temporary directory deleted on exit.");
+        Log.info("  -mapSingleFile: if you want every mapped buffer to be a slice of one large file.");
+        Log.info("  -sync=<none|iteration|unmap>: when mapped buffers are forced to disk (msync). Default is unmap," +
+                " which forces before -free unmaps the buffer.");
+        Log.info("  -threads=<thread count>: to specify the number of platform threads that run the tests. Default is 1.");
+        Log.info("  -buffers=<buffer count>: to specify the number of buffers, each one tested by its own task." +
+                " Default is the number of threads.");
+        Log.info("  -virtual: if you want to run every test on its own virtual thread instead of the -threads pool.");
+        Log.info("  -latency: if you want to time every access and report p50/p99/p99.9/max latencies per iteration," +
+                " per thread and in total.");
+        Log.info("  -noSleep: if you want to skip the 1 second sleep before every iteration, for pure throughput runs.");
+        Log.info("  -pattern=<sequential|strided|random|zipfian>: access pattern of the test loop. Default is random.");
+        Log.info("  -width=<byte|int|long|double>: width of every access. Default is byte.");
+        Log.info("  -reads=<percent>: percentage of accesses that are reads, the rest are writes. Default is 50.");
+        Log.info("  -stride=<bytes>: distance between accesses of the strided pattern, a multiple of the access width" +
+                " smaller than the buffer. Default is 64.");
+        Log.info("  -zipf=<exponent>: skew of the zipfian pattern. Default is 0.99.");
+        Log.info("  -ops=<count>: number of accesses per iteration. Default is 100000.");
+        Log.info("  -access=<buffer|pointer>: access through the ByteBuffer (or region) API or through MemoryUtils" +
+                " raw pointer accessors. Default is buffer.");
+        Log.info("  -allocInWorker: if you want every worker thread to allocate (first touch) its own buffer before" +
+                " timing starts, instead of the main thread allocating them all.");
+        Log.info("  -prefault: if you want to write every page of each buffer after allocating it, so page faults are" +
+                " paid and reported before the timed loop.");
+        Log.info("  -parallelInit: if you want off-heap regions zeroed and buffers prefaulted by a fork/join pool.");
+        Log.info("  -shared: if you want every thread to update one shared buffer with atomic operations instead of" +
+                " testing a buffer of its own.");
+        Log.info("  -atomic=<add|cas|write|read>: atomic operation of the shared test: getAndAdd, compare and set loop," +
+                " volatile write or volatile read. Default is add. Implies -shared.");
+        Log.info("  -layout=<contended|striped>: whether all threads update the same counter or one counter each." +
+                " Default is contended. Implies -shared.");
+        Log.info("  -padding: if you want striped counters " + SharedBufferTest.CACHE_LINE_PADDING + " bytes apart instead" +
+                " of packed, to compare false sharing against no sharing.");
+        Log.info("  -managed[=refcount|epoch]: if you want reference counted buffers that free their memory as soon as" +
+                " they are released and throw on use after release. epoch defers the free until readers leave their epoch.");
+        Log.info("  -sample=<file.csv|file.json>: if you want a time series of heap, direct and mapped buffer pools, RSS," +
+                " tracked native memory and NMT totals (with -XX:NativeMemoryTracking=summary) written to the file.");
+        Log.info("  -sampleInterval=<ms>: interval between memory samples. Default is 100 ms.");
+        Log.info("  -events=<file>: if you want per-iteration and buffer events recorded into per-thread off-heap rings and" +
+                " written to a binary file by a background thread, instead of printed by the workers. Decode it with" +
+                " java " + EventLogDecoder.class.getName() + " <file> [output].");
+        Log.info("  -snapshot=<file>: if you want the contents of every buffer saved to a snapshot file after the tests," +
+                " with parallel gathering writes and a CRC32C checksum per " + BufferSnapshot.DEFAULT_CHUNK_SIZE / 1024 / 1024 + " MB chunk.");
+        Log.info("  -incremental: if you want -snapshot to only rewrite the chunks that changed since the existing snapshot.");
+        Log.info("  -restore=<file>: if you want every buffer loaded from a snapshot before the tests. The file is mapped," +
+                " verified and copied chunk by chunk, and the time to ready is reported.");
+        Log.info("  -snapshotThreads=<n>: threads that write and restore snapshots. Default is the number of processors.");
+        Log.info("  -warmup=<iterations>: untimed iterations every test runs before the measured ones. Default is 0.");
+        Log.info("  -results=<file.json>: if you want throughput, latency percentiles and memory usage written as JSON," +
+                " as collected by " + MatrixRunner.class.getName() + ".");
+        Log.info("  -pages=<small|hugetlb|thp>: if you want every buffer to be an anonymous mmap with 4 KB pages only," +
+                " explicit 2 MB huge pages (falling back to thp when none are reserved) or transparent huge pages.");
+        Log.info("  -dontNeed: if you want -free to drop the pages of -pages buffers with MADV_DONTNEED instead of unmapping them.");
+        Log.info("  -cache: if you want every thread to run a zipfian read-through workload against an off-heap cache with" +
+                " one lock striped segment per buffer, so -buffers and -size set the striping and the byte budget." +
+                " Uses -reads, -zipf and -ops, and reports hit rate, evictions and latency with -latency.");
+        Log.info("  -keys=<count>: number of distinct keys of the cache test. Default is 1000000.");
+        Log.info("  -valueSize=<bytes>: largest value of the cache test, every key has a length between half and all of it." +
+                " At least 2. Default is 1024.");
         Log.info("  -free: if you want to explicitly invoke cleaner of DirectByteBuffer.");
         Log.info("  -gc: if you want to call System.gc on exit.");
         Log.info("  -crash: if you want to crash the execution with an illegal memory access after" +
                 " deleting a buffer in any thread.");
-        Log.info("  -checkMemAfterGc: if you want to check if native memory is still available after " +
-                "ByteBuffer references are garbage collected.");
+        Log.info("  -checkMemAfterGc: if you want to drop every buffer, run the garbage collector and report how long" +
+                " it took to find each buffer unreachable and to release its native memory.");
+        Log.info("  -churn=<buffers per second>: if you want to allocate and drop -size buffers at that rate for" +
+                " -iterations seconds after the tests, and report release latencies without explicit System.gc calls.");
+        Log.info("  -pool: if you want to take the buffers from a pooled, size-classed allocator instead of" +
+                " ByteBuffer.allocateDirect. -free returns them to the pool.");
+        Log.info("");
+        Log.info("System properties:");
+        Log.info("  -Dbytebuffertest.native.tracking=true: track every malloc/calloc/realloc pointer, reject bad frees," +
+                " report leaks on exit and publish counters through JMX (" + NativeMemoryTracker.OBJECT_NAME + ").");
+        Log.info("  -Dbytebuffertest.native.tracking.sampleRate=<n>: record the allocation site of 1 in n allocations." +
+                " Default is 64.");
+        Log.info("  -Dbytebuffertest.sanitizer=true: check every MemoryUtils access against the live malloc/calloc/realloc" +
+                " allocations, add " + MemorySanitizer.REDZONE + " byte redzones around them and poison freed memory, reporting" +
+                " overflows and use after free with the allocation and free sites. For staging, every access gets slower.");
+        Log.info("  -Dbytebuffertest.sanitizer.quarantine=<MB>: freed memory kept poisoned before it is really released." +
+                " Default is 64.");
+        Log.info("  -Dbytebuffertest.memory.backend=unsafe|foreign: backend of the MemoryUtils raw memory operations." +
+                " foreign uses the Foreign Function & Memory API (add --enable-native-access=ALL-UNNAMED). Default is unsafe.");
         Log.info("");
     }
 
@@ -0,0 +1,55 @@
+package naitsirc98.bytebuffertest;
+
+/**
+ * Raw memory operations behind {@link MemoryUtils}. The implementation is chosen once at startup with
+ * {@code -Dbytebuffertest.memory.backend=unsafe|foreign} and held in a static final field, so the JIT sees a single
+ * receiver type and inlines through the interface.
+ */
+public interface MemoryBackend {
+
+    String PROPERTY = "bytebuffertest.memory.backend";
+
+    String name();
+
+    long malloc(long bytes);
+
+    long realloc(long ptr, long bytes);
+
+    void free(long ptr);
+
+    void memset(long ptr, long bytes, byte value);
+
+    void memcpy(long src, long dest, long bytes);
+
+    void memcpy(long src, byte[] dest, int destOffset, int bytes);
+
+    void memcpy(byte[] src, int srcOffset, long dest, int bytes);
+
+    byte getByte(long ptr);
+
+    void setByte(long ptr, byte value);
+
+    short getShort(long ptr);
+
+    void setShort(long ptr, short value);
+
+    char getChar(long ptr);
+
+    void setChar(long ptr, char value);
+
+    int getInt(long ptr);
+
+    void setInt(long ptr, int value);
+
+    long getLong(long ptr);
+
+    void setLong(long ptr, long value);
+
+    float getFloat(long ptr);
+
+    void setFloat(long ptr, float value);
+
+    double getDouble(long ptr);
+
+    void setDouble(long ptr, double value);
+}
@@ -0,0 +1,234 @@
+package naitsirc98.bytebuffertest;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Background sampler of the memory footprint of the process, written as a CSV or JSON time series (chosen by the
+ * file extension). Every sample records the heap in use, the direct and mapped buffer pools, the resident set size
+ * and, when available, the {@link NativeMemoryTracker} live bytes and the JVM Native Memory Tracking totals.
+ * Direct buffers are reported by NMT in the "Other" category. Unavailable values are written as -1.
+ */
+public final class MemorySampler implements AutoCloseable {
+
+    private static final Path STATUS = Paths.get("/proc/self/status");
+    private static final Path SMAPS_ROLLUP = Paths.get("/proc/self/smaps_rollup");
+    private static final Path MEMINFO = Paths.get("/proc/meminfo");
+    private static final Pattern NMT_TOTAL = Pattern.compile("Total: reserved=(\\d+)KB, committed=(\\d+)KB");
+    private static final Pattern NMT_OTHER = Pattern.compile("Other \\(reserved=(\\d+)KB, committed=(\\d+)KB");
+    private static final String[] COLUMNS = {
+            "timeMillis", "heapUsed", "directCount", "directUsed", "directCapacity", "mappedCount", "mappedUsed",
+            "mappedCapacity", "rss", "trackedNative", "nmtCommitted", "nmtOtherCommitted"
+    };
+
+    public static BufferPoolMXBean bufferPool(String name) {
+        for(BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if(pool.getName().equals(name)) {
+                return pool;
+            }
+        }
+        return null;
+    }
+
+    public static long directMemoryUsed() {
+        final BufferPoolMXBean direct = bufferPool("direct");
+        return direct != null ? direct.getMemoryUsed() : -1;
+    }
+
+    public static long residentSetSize() {
+        return statusBytes("VmRSS:");
+    }
+
+    public static long peakResidentSetSize() {
+        return statusBytes("VmHWM:");
+    }
+
+    /**
+     * Bytes of this process backed by transparent huge pages, or -1 if unknown.
+     */
+    public static long anonHugePages() {
+        final long kilobytes = procValue(SMAPS_ROLLUP, "AnonHugePages:");
+        return kilobytes < 0 ? -1 : kilobytes * 1024L;
+    }
+
+    /**
+     * Free explicit huge pages of the system, or -1 if unknown.
+     */
+    public static long hugetlbPages() {
+        return procValue(MEMINFO, "HugePages_Free:");
+    }
+
+    private static long statusBytes(String field) {
+        final long kilobytes = procValue(STATUS, field);
+        return kilobytes < 0 ? -1 : kilobytes * 1024L;
+    }
+
+    // Value of a "field: value [kB]" line of a /proc file, or -1 if it is not there
+    static long procValue(Path file, String field) {
+        if(!Files.isReadable(file)) {
+            return -1;
+        }
+        try {
+            for(String line : Files.readAllLines(file)) {
+                if(line.startsWith(field)) {
+                    return Long.parseLong(line.substring(field.length()).replace("kB", "").trim());
+                }
+            }
+        } catch(IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    private final Path file;
+    private final boolean json;
+    private final BufferedWriter writer;
+    private final ScheduledExecutorService executor;
+    private final BufferPoolMXBean direct = bufferPool("direct");
+    private final BufferPoolMXBean mapped = bufferPool("mapped");
+    private final boolean nmtEnabled = isNativeMemoryTrackingEnabled();
+    private final long start = System.nanoTime();
+    private long samples;
+
+    public MemorySampler(String file, long intervalMillis) {
+        if(intervalMillis <= 0) {
+            throw new IllegalArgumentException("Sampling interval must be positive: " + intervalMillis);
+        }
+        this.file = Paths.get(file);
+        this.json = file.toLowerCase().endsWith(".json");
+        try {
+            writer = Files.newBufferedWriter(this.file);
+            writer.write(json ? "[" : String.join(",", COLUMNS));
+            writer.newLine();
+        } catch(IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MemorySampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::sample, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        Log.logVerbose("Sampling memory every " + intervalMillis + " ms to " + this.file.toAbsolutePath()
+                + (nmtEnabled ? " with Native Memory Tracking" : ""));
+    }
+
+    public synchronized void sample() {
+        if(samples < 0) {
+            return;
+        }
+        final long[] nmt = nmtEnabled ? nativeMemoryTracking() : new long[] {-1, -1};
+        final long[] values = {
+                (System.nanoTime() - start) / 1000000L,
+                heapUsed(),
+                direct != null ? direct.getCount() : -1,
+                direct != null ? direct.getMemoryUsed() : -1,
+                direct != null ? direct.getTotalCapacity() : -1,
+                mapped != null ? mapped.getCount() : -1,
+                mapped != null ? mapped.getMemoryUsed() : -1,
+                mapped != null ? mapped.getTotalCapacity() : -1,
+                residentSetSize(),
+                NativeMemoryTracker.ENABLED ? NativeMemoryTracker.get().getLiveBytes() : -1,
+                nmt[0],
+                nmt[1]
+        };
+        try {
+            writer.write(json ? toJson(values) : toCsv(values));
+            writer.newLine();
+            writer.flush();
+            ++samples;
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch(InterruptedException e) {
+            e.printStackTrace();
+        }
+        sample();
+        synchronized(this) {
+            try {
+                if(json) {
+                    writer.write("]");
+                    writer.newLine();
+                }
+                writer.close();
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+            Log.log("Wrote " + samples + " memory samples to " + file.toAbsolutePath());
+            samples = -1;
+        }
+    }
+
+    private String toCsv(long[] values) {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0;i < values.length;i++) {
+            builder.append(i == 0 ? "" : ",").append(values[i]);
+        }
+        return builder.toString();
+    }
+
+    private String toJson(long[] values) {
+        StringBuilder builder = new StringBuilder(samples == 0 ? "  {" : ", {");
+        for(int i = 0;i < values.length;i++) {
+            builder.append(i == 0 ? "" : ", ").append('"').append(COLUMNS[i]).append("\": ").append(values[i]);
+        }
+        return builder.append('}').toString();
+    }
+
+    private static long heapUsed() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static boolean isNativeMemoryTrackingEnabled() {
+        final List<String> jvmArguments = ManagementFactory.getRuntimeMXBean().getInputArguments();
+        for(String argument : jvmArguments) {
+            if(argument.startsWith("-XX:NativeMemoryTracking=") && !argument.endsWith("=off")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Runs the same command as jcmd <pid> VM.native_memory summary through the DiagnosticCommand MBean
+    private static long[] nativeMemoryTracking() {
+        final long[] result = {-1, -1};
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final String summary = (String) server.invoke(new ObjectName("com.sun.management:type=DiagnosticCommand"),
+                    "vmNativeMemory", new Object[] {new String[] {"summary", "scale=KB"}}, new String[] {String[].class.getName()});
+            Matcher total = NMT_TOTAL.matcher(summary);
+            if(total.find()) {
+                result[0] = Long.parseLong(total.group(2)) * 1024L;
+            }
+            Matcher other = NMT_OTHER.matcher(summary);
+            if(other.find()) {
+                result[1] = Long.parseLong(other.group(2)) * 1024L;
+            }
+        } catch(Exception e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+}
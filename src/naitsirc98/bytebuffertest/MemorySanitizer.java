@@ -0,0 +1,245 @@
+package naitsirc98.bytebuffertest;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Checked mode of the {@link MemoryUtils} raw memory operations, for staging runs.
+ *
+ * It is decided once at startup with {@code -Dbytebuffertest.sanitizer=true}. When it is off, {@link #ENABLED} is a
+ * constant false and the JIT removes every hook, so the unchecked path is the same code as before. When it is on:
+ * <ul>
+ *     <li>Every malloc/calloc/realloc is surrounded by {@link #REDZONE} byte redzones filled with
+ *     {@link #REDZONE_POISON}, and recorded with its allocation site.</li>
+ *     <li>Every access and bulk operation on a recorded allocation is checked against its bounds, so reading or writing
+ *     a redzone is reported as an overflow. Redzones are also verified on free, which catches overflows made by native
+ *     code or by accesses that bypass MemoryUtils.</li>
+ *     <li>Freed memory is filled with {@link #FREED_POISON} and kept in a quarantine of
+ *     {@code -Dbytebuffertest.sanitizer.quarantine} MB (default 64) before it is really released, so accesses to it
+ *     are reported as use after free along with the allocation and free sites.</li>
+ * </ul>
+ * Addresses outside any recorded allocation, such as direct ByteBuffers or mapped files, are not checked.
+ * {@link naitsirc98.bytebuffertest.alloc.MemoryArena} chunks are checked as a whole, not per arena allocation.
+ */
+public final class MemorySanitizer {
+
+    public static final boolean ENABLED = Boolean.getBoolean("bytebuffertest.sanitizer");
+    public static final long QUARANTINE_BYTES = Long.getLong("bytebuffertest.sanitizer.quarantine", 64) * 1024L * 1024L;
+
+    public static final int REDZONE = 32;
+    public static final byte REDZONE_POISON = (byte) 0xFA;
+    public static final byte FREED_POISON = (byte) 0xDD;
+
+    private static final int MAX_REPORTED_FRAMES = 8;
+
+    private static final ConcurrentSkipListMap<Long, Allocation> ALLOCATIONS = new ConcurrentSkipListMap<>();
+    private static final ArrayDeque<Allocation> QUARANTINE = new ArrayDeque<>();
+    private static long quarantinedBytes;
+
+    static long malloc(long bytes) {
+        final MemoryBackend backend = MemoryUtils.backend();
+        final long base = backend.malloc(bytes + 2 * REDZONE);
+        if(base == MemoryUtils.NULL) {
+            return MemoryUtils.NULL;
+        }
+        backend.memset(base, REDZONE, REDZONE_POISON);
+        backend.memset(base + REDZONE + bytes, REDZONE, REDZONE_POISON);
+        ALLOCATIONS.put(base, new Allocation(base, bytes, new Throwable()));
+        return base + REDZONE;
+    }
+
+    static long realloc(long ptr, long bytes) {
+        if(ptr == MemoryUtils.NULL) {
+            return malloc(bytes);
+        }
+        final Allocation old = live(ptr, "realloc");
+        old.claim("realloc");
+        try {
+            old.checkRedzones(MemoryUtils.backend());
+        } catch(MemorySanitizerException e) {
+            // Report the overflow before allocating the new block, the old one is released as if it was freed
+            release(old);
+            throw e;
+        }
+        final long newPtr;
+        try {
+            newPtr = malloc(bytes);
+        } catch(RuntimeException | Error e) {
+            old.freeSite = null;
+            throw e;
+        }
+        if(newPtr == MemoryUtils.NULL) {
+            // A failed realloc leaves the old block alive
+            old.freeSite = null;
+            return MemoryUtils.NULL;
+        }
+        MemoryUtils.backend().memcpy(ptr, newPtr, Math.min(bytes, old.size));
+        release(old);
+        return newPtr;
+    }
+
+    static void free(long ptr) {
+        if(ptr != MemoryUtils.NULL) {
+            final Allocation allocation = live(ptr, "free");
+            allocation.claim("free");
+            release(allocation);
+        }
+    }
+
+    /**
+     * Checks an access of bytes at address against the allocation it falls in, if any.
+     */
+    static void check(long address, long bytes) {
+        if(bytes <= 0) {
+            return;
+        }
+        final Map.Entry<Long, Allocation> below = ALLOCATIONS.floorEntry(address);
+        if(below != null) {
+            below.getValue().check(address, bytes);
+        }
+        // An access may start before an allocation and run into its left redzone
+        final Map.Entry<Long, Allocation> above = ALLOCATIONS.higherEntry(address);
+        if(above != null && above.getKey() < address + bytes) {
+            above.getValue().check(address, bytes);
+        }
+    }
+
+    private static Allocation live(long ptr, String operation) {
+        final Allocation allocation = ALLOCATIONS.get(ptr - REDZONE);
+        if(allocation == null) {
+            final Map.Entry<Long, Allocation> containing = ALLOCATIONS.floorEntry(ptr);
+            if(containing != null && containing.getValue().contains(ptr)) {
+                throw new MemorySanitizerException(operation + " of pointer 0x" + Long.toHexString(ptr) + " inside of "
+                        + containing.getValue().describe());
+            }
+            throw new MemorySanitizerException(operation + " of pointer 0x" + Long.toHexString(ptr) + " that was never allocated");
+        }
+        if(allocation.freeSite != null) {
+            throw new MemorySanitizerException("double " + operation + ": " + allocation.describe());
+        }
+        return allocation;
+    }
+
+    // Only called by the thread that claimed the allocation. An overwritten redzone is reported after the block is
+    // quarantined, so it is still freed and a later free of it is not mistaken for a double free
+    private static void release(Allocation allocation) {
+        final MemoryBackend backend = MemoryUtils.backend();
+        MemorySanitizerException overflow = null;
+        try {
+            allocation.checkRedzones(backend);
+        } catch(MemorySanitizerException e) {
+            overflow = e;
+        }
+        backend.memset(allocation.ptr(), allocation.size, FREED_POISON);
+        synchronized(QUARANTINE) {
+            QUARANTINE.addLast(allocation);
+            quarantinedBytes += allocation.size;
+            while(quarantinedBytes > QUARANTINE_BYTES && !QUARANTINE.isEmpty()) {
+                final Allocation evicted = QUARANTINE.pollFirst();
+                quarantinedBytes -= evicted.size;
+                ALLOCATIONS.remove(evicted.base);
+                backend.free(evicted.base);
+            }
+        }
+        if(overflow != null) {
+            throw overflow;
+        }
+    }
+
+    private static String site(String title, Throwable site) {
+        StringBuilder builder = new StringBuilder("\n  ").append(title).append(':');
+        int frames = 0;
+        for(StackTraceElement element : site.getStackTrace()) {
+            final String className = element.getClassName();
+            if(className.equals(MemorySanitizer.class.getName()) || className.equals(MemoryUtils.class.getName())) {
+                continue;
+            }
+            builder.append("\n      at ").append(element);
+            if(++frames == MAX_REPORTED_FRAMES) {
+                break;
+            }
+        }
+        return builder.toString();
+    }
+
+    private static final class Allocation {
+
+        private static final VarHandle FREE_SITE;
+
+        private final long base;
+        private final long size;
+        private final Throwable allocationSite;
+        private volatile Throwable freeSite;
+
+        private Allocation(long base, long size, Throwable allocationSite) {
+            this.base = base;
+            this.size = size;
+            this.allocationSite = allocationSite;
+        }
+
+        private long ptr() {
+            return base + REDZONE;
+        }
+
+        // Records the free site atomically, so of two threads freeing the same pointer exactly one releases it
+        private void claim(String operation) {
+            if(!FREE_SITE.compareAndSet(this, (Throwable) null, new Throwable())) {
+                throw new MemorySanitizerException("double " + operation + ": " + describe());
+            }
+        }
+
+        private boolean contains(long address) {
+            return address >= base && address < base + size + 2 * REDZONE;
+        }
+
+        private void check(long address, long bytes) {
+            if(address >= base + size + 2 * REDZONE || address + bytes <= base) {
+                return;
+            }
+            if(freeSite != null) {
+                throw new MemorySanitizerException("use after free: " + bytes + " byte access at 0x" + Long.toHexString(address)
+                        + " is " + (address - ptr()) + " bytes into " + describe());
+            }
+            if(address < ptr()) {
+                throw new MemorySanitizerException("buffer underflow: " + bytes + " byte access at 0x" + Long.toHexString(address)
+                        + " is " + (ptr() - address) + " bytes before " + describe());
+            }
+            if(address + bytes > ptr() + size) {
+                throw new MemorySanitizerException("buffer overflow: " + bytes + " byte access at 0x" + Long.toHexString(address)
+                        + " ends " + (address + bytes - ptr() - size) + " bytes after " + describe());
+            }
+        }
+
+        private void checkRedzones(MemoryBackend backend) {
+            for(int i = 0;i < REDZONE;i++) {
+                if(backend.getByte(base + i) != REDZONE_POISON) {
+                    throw new MemorySanitizerException("buffer underflow: redzone byte " + (REDZONE - i)
+                            + " before " + describe() + " was overwritten");
+                }
+                if(backend.getByte(ptr() + size + i) != REDZONE_POISON) {
+                    throw new MemorySanitizerException("buffer overflow: redzone byte " + i
+                            + " after " + describe() + " was overwritten");
+                }
+            }
+        }
+
+        private String describe() {
+            final Throwable freed = freeSite;
+            return "the " + (freed != null ? "freed " : "") + size + " byte allocation at 0x" + Long.toHexString(ptr()) + site("allocated", allocationSite)
+                    + (freed != null ? site("freed", freed) : "");
+        }
+
+        static {
+            try {
+                FREE_SITE = MethodHandles.lookup().findVarHandle(Allocation.class, "freeSite", Throwable.class);
+            } catch(ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    private MemorySanitizer() {}
+}
@@ -0,0 +1,14 @@
+package naitsirc98.bytebuffertest;
+
+/**
+ * Invalid native memory access detected by the {@link MemorySanitizer}: use after free, buffer overflow, double free
+ * or free of a pointer that was never allocated.
+ */
+public class MemorySanitizerException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MemorySanitizerException(String message) {
+        super(message);
+    }
+}
@@ -14,13 +14,21 @@ import static java.util.Objects.requireNonNull;
 public final class MemoryUtils {
 	public static final long NULL = 0L;
 
-	private static final Unsafe UNSAFE;
+	static final Unsafe UNSAFE;
+	private static final MemoryBackend BACKEND;
 	private static final Class<? extends ByteBuffer> DIRECT_BUFFER_CLASS;
 	private static final long BUFFER_ADDRESS_OFFSET;
 	private static final long BUFFER_POSITION_OFFSET;
 	private static final long BUFFER_MARK_OFFSET;
 	private static final long BUFFER_CAPACITY_OFFSET;
 	private static final long BUFFER_LIMIT_OFFSET;
+	private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+	private static final long XXH_PRIME_1 = 0x9E3779B185EBCA87L;
+	private static final long XXH_PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long XXH_PRIME_3 = 0x165667B19E3779F9L;
+	private static final long XXH_PRIME_4 = 0x85EBCA77C2B2AE63L;
+	private static final long XXH_PRIME_5 = 0x27D4EB2F165667C5L;
 
 	private static ByteOrder defaultByteOrder = ByteOrder.nativeOrder();
 
@@ -43,6 +51,10 @@ public final class MemoryUtils {
 		}
 	}
 
+	public static MemoryBackend backend() {
+		return BACKEND;
+	}
+
 	public static ByteBuffer allocBuffer(long size) {
 		return allocBuffer(size, defaultByteOrder());
 	}
@@ -59,6 +71,29 @@ public final class MemoryUtils {
 		return buffer;
 	}
 
+	public static ByteBuffer wrap(long address, int capacity) {
+		return wrap(address, capacity, defaultByteOrder());
+	}
+
+	public static ByteBuffer wrap(long address, int capacity, ByteOrder order) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity is negative");
+		}
+		final ByteBuffer buffer;
+		try {
+			buffer = (ByteBuffer) UNSAFE.allocateInstance(DIRECT_BUFFER_CLASS);
+		} catch (InstantiationException e) {
+			throw new RuntimeException(e);
+		}
+		UNSAFE.putLong(buffer, BUFFER_ADDRESS_OFFSET, address);
+		UNSAFE.putInt(buffer, BUFFER_MARK_OFFSET, -1);
+		UNSAFE.putInt(buffer, BUFFER_POSITION_OFFSET, 0);
+		UNSAFE.putInt(buffer, BUFFER_LIMIT_OFFSET, capacity);
+		UNSAFE.putInt(buffer, BUFFER_CAPACITY_OFFSET, capacity);
+		buffer.order(order);
+		return buffer;
+	}
+
 	public static long addressOf(Buffer buffer) {
 		if (!buffer.isDirect()) {
 			throw new IllegalArgumentException("Buffer is not direct");
@@ -67,7 +102,11 @@ public final class MemoryUtils {
 	}
 
 	public static long malloc(long bytes) {
-		return UNSAFE.allocateMemory(bytes);
+		final long ptr = MemorySanitizer.ENABLED ? MemorySanitizer.malloc(bytes) : BACKEND.malloc(bytes);
+		if (NativeMemoryTracker.ENABLED) {
+			NativeMemoryTracker.onMalloc(ptr, bytes);
+		}
+		return ptr;
 	}
 
 	public static long calloc(long bytes) {
@@ -77,15 +116,51 @@ public final class MemoryUtils {
 	}
 
 	public static long realloc(long ptr, long bytes) {
-		return UNSAFE.reallocateMemory(ptr, bytes);
+		if (!NativeMemoryTracker.ENABLED) {
+			return MemorySanitizer.ENABLED ? MemorySanitizer.realloc(ptr, bytes) : BACKEND.realloc(ptr, bytes);
+		}
+		final NativeMemoryTracker.Allocation old = NativeMemoryTracker.beforeRealloc(ptr);
+		final long newPtr;
+		try {
+			newPtr = MemorySanitizer.ENABLED ? MemorySanitizer.realloc(ptr, bytes) : BACKEND.realloc(ptr, bytes);
+		} catch (OutOfMemoryError e) {
+			NativeMemoryTracker.onReallocFailed(ptr, old);
+			throw e;
+		}
+		NativeMemoryTracker.onRealloc(ptr, old, newPtr, bytes);
+		return newPtr;
 	}
 
 	public static void memset(long ptr, long bytes, int value) {
-		UNSAFE.setMemory(ptr, bytes, (byte) (value & 0xFF));
+		checkAccess(ptr, bytes);
+		BACKEND.memset(ptr, bytes, (byte) (value & 0xFF));
+	}
+
+	/**
+	 * Writes one byte of every page of the range back with its own value, so the page faults are taken here and not on
+	 * the first store of whoever uses the memory. A read would not do: anonymous pages that were never written are
+	 * mapped to the shared zero page, and pages of shared file mappings stay write protected, until the first write.
+	 * Pages of file mappings become dirty, as they would on the first store anyway.
+	 */
+	public static void prefault(long ptr, long bytes) {
+		checkAccess(ptr, bytes);
+		final long pageSize = pageSize();
+		for (long offset = 0; offset < bytes; offset += pageSize) {
+			BACKEND.setByte(ptr + offset, BACKEND.getByte(ptr + offset));
+		}
+		if (bytes > 0) {
+			BACKEND.setByte(ptr + bytes - 1, BACKEND.getByte(ptr + bytes - 1));
+		}
+	}
+
+	public static int pageSize() {
+		return UNSAFE.pageSize();
 	}
 
 	public static void memcpy(long src, long dest, long bytes) {
-		UNSAFE.copyMemory(src, dest, bytes);
+		checkAccess(src, bytes);
+		checkAccess(dest, bytes);
+		BACKEND.memcpy(src, dest, bytes);
 	}
 
 	public static void memcpy(ByteBuffer src, long srcOffset, byte[] dest, long destOffset, long bytes) {
@@ -93,7 +168,8 @@ public final class MemoryUtils {
 	}
 
 	public static void memcpy(long srcAddress, long srcOffset, byte[] dest, long destOffset, long bytes) {
-		UNSAFE.copyMemory(null, srcAddress + srcOffset, dest, arrayBaseOffset(dest.getClass()) + destOffset, bytes);
+		checkAccess(srcAddress + srcOffset, bytes);
+		BACKEND.memcpy(srcAddress + srcOffset, dest, Math.toIntExact(destOffset), Math.toIntExact(bytes));
 	}
 
 	public static void memcpy(byte[] src, long srcOffset, ByteBuffer dest, long destOffset, long bytes) {
@@ -101,11 +177,189 @@ public final class MemoryUtils {
 	}
 
 	public static void memcpy(byte[] src, long srcOffset, long destAddress, long destOffset, long bytes) {
-		UNSAFE.copyMemory(src, arrayBaseOffset(src.getClass()) + srcOffset, null, destAddress + destOffset, bytes);
+		checkAccess(destAddress + destOffset, bytes);
+		BACKEND.memcpy(src, Math.toIntExact(srcOffset), destAddress + destOffset, Math.toIntExact(bytes));
+	}
+
+	public static void fill(long ptr, long bytes, long pattern) {
+		checkAccess(ptr, bytes);
+		long offset = 0;
+		for (; offset <= bytes - Long.BYTES; offset += Long.BYTES) {
+			BACKEND.setLong(ptr + offset, pattern);
+		}
+		for (int i = 0; offset < bytes; offset++, i++) {
+			BACKEND.setByte(ptr + offset, patternByte(pattern, i));
+		}
+	}
+
+	public static long mismatch(long a, long b, long bytes) {
+		checkAccess(a, bytes);
+		checkAccess(b, bytes);
+		long offset = 0;
+		for (; offset <= bytes - Long.BYTES; offset += Long.BYTES) {
+			final long diff = BACKEND.getLong(a + offset) ^ BACKEND.getLong(b + offset);
+			if (diff != 0) {
+				return offset + firstByteIndex(diff);
+			}
+		}
+		for (; offset < bytes; offset++) {
+			if (BACKEND.getByte(a + offset) != BACKEND.getByte(b + offset)) {
+				return offset;
+			}
+		}
+		return -1;
+	}
+
+	public static long mismatch(ByteBuffer a, ByteBuffer b) {
+		final int length = Math.min(a.remaining(), b.remaining());
+		final long index = mismatch(addressOf(a) + a.position(), addressOf(b) + b.position(), length);
+		if (index < 0 && a.remaining() != b.remaining()) {
+			return length;
+		}
+		return index;
+	}
+
+	public static int memcmp(long a, long b, long bytes) {
+		final long index = mismatch(a, b, bytes);
+		if (index < 0) {
+			return 0;
+		}
+		return Integer.compare(BACKEND.getByte(a + index) & 0xFF, BACKEND.getByte(b + index) & 0xFF);
+	}
+
+	public static int memcmp(ByteBuffer a, ByteBuffer b) {
+		final long aAddress = addressOf(a) + a.position();
+		final long bAddress = addressOf(b) + b.position();
+		final long index = mismatch(aAddress, bAddress, Math.min(a.remaining(), b.remaining()));
+		if (index < 0) {
+			return Integer.compare(a.remaining(), b.remaining());
+		}
+		return Integer.compare(BACKEND.getByte(aAddress + index) & 0xFF, BACKEND.getByte(bAddress + index) & 0xFF);
+	}
+
+	public static long memchr(long ptr, long bytes, int value) {
+		checkAccess(ptr, bytes);
+		final long pattern = (value & 0xFFL) * 0x0101010101010101L;
+		long offset = 0;
+		for (; offset <= bytes - Long.BYTES; offset += Long.BYTES) {
+			final long word = BACKEND.getLong(ptr + offset) ^ pattern;
+			// Exact zero byte detection: the high bit of every zero byte of word is set, and only those
+			final long zeros = ~(((word & 0x7F7F7F7F7F7F7F7FL) + 0x7F7F7F7F7F7F7F7FL) | word | 0x7F7F7F7F7F7F7F7FL);
+			if (zeros != 0) {
+				return offset + firstByteIndex(zeros);
+			}
+		}
+		for (; offset < bytes; offset++) {
+			if (BACKEND.getByte(ptr + offset) == (byte) value) {
+				return offset;
+			}
+		}
+		return -1;
+	}
+
+	public static long memchr(ByteBuffer buffer, int value) {
+		return memchr(addressOf(buffer) + buffer.position(), buffer.remaining(), value);
+	}
+
+	public static long indexOfLong(long ptr, long bytes, long value) {
+		checkAccess(ptr, bytes);
+		for (long offset = 0; offset <= bytes - Long.BYTES; offset += Long.BYTES) {
+			if (BACKEND.getLong(ptr + offset) == value) {
+				return offset;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * XXH64 of the given range. Words are read in little endian order, so the result matches the reference
+	 * implementation and does not depend on the platform.
+	 */
+	public static long hash64(long ptr, long bytes, long seed) {
+		checkAccess(ptr, bytes);
+		long offset = 0;
+		long hash;
+		if (bytes >= 32) {
+			long v1 = seed + XXH_PRIME_1 + XXH_PRIME_2;
+			long v2 = seed + XXH_PRIME_2;
+			long v3 = seed;
+			long v4 = seed - XXH_PRIME_1;
+			for (; offset <= bytes - 32; offset += 32) {
+				v1 = xxhRound(v1, getLongLE(ptr + offset));
+				v2 = xxhRound(v2, getLongLE(ptr + offset + 8));
+				v3 = xxhRound(v3, getLongLE(ptr + offset + 16));
+				v4 = xxhRound(v4, getLongLE(ptr + offset + 24));
+			}
+			hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			hash = xxhMergeRound(hash, v1);
+			hash = xxhMergeRound(hash, v2);
+			hash = xxhMergeRound(hash, v3);
+			hash = xxhMergeRound(hash, v4);
+		} else {
+			hash = seed + XXH_PRIME_5;
+		}
+		hash += bytes;
+		for (; offset <= bytes - Long.BYTES; offset += Long.BYTES) {
+			hash ^= xxhRound(0, getLongLE(ptr + offset));
+			hash = Long.rotateLeft(hash, 27) * XXH_PRIME_1 + XXH_PRIME_4;
+		}
+		if (offset <= bytes - Integer.BYTES) {
+			hash ^= (getIntLE(ptr + offset) & 0xFFFFFFFFL) * XXH_PRIME_1;
+			hash = Long.rotateLeft(hash, 23) * XXH_PRIME_2 + XXH_PRIME_3;
+			offset += Integer.BYTES;
+		}
+		for (; offset < bytes; offset++) {
+			hash ^= (BACKEND.getByte(ptr + offset) & 0xFFL) * XXH_PRIME_5;
+			hash = Long.rotateLeft(hash, 11) * XXH_PRIME_1;
+		}
+		hash ^= hash >>> 33;
+		hash *= XXH_PRIME_2;
+		hash ^= hash >>> 29;
+		hash *= XXH_PRIME_3;
+		hash ^= hash >>> 32;
+		return hash;
+	}
+
+	public static long hash64(ByteBuffer buffer, long seed) {
+		return hash64(addressOf(buffer) + buffer.position(), buffer.remaining(), seed);
+	}
+
+	private static long xxhRound(long acc, long input) {
+		return Long.rotateLeft(acc + input * XXH_PRIME_2, 31) * XXH_PRIME_1;
+	}
+
+	private static long xxhMergeRound(long hash, long v) {
+		return (hash ^ xxhRound(0, v)) * XXH_PRIME_1 + XXH_PRIME_4;
+	}
+
+	private static long getLongLE(long ptr) {
+		final long value = BACKEND.getLong(ptr);
+		return LITTLE_ENDIAN ? value : Long.reverseBytes(value);
+	}
+
+	private static int getIntLE(long ptr) {
+		final int value = BACKEND.getInt(ptr);
+		return LITTLE_ENDIAN ? value : Integer.reverseBytes(value);
+	}
+
+	// Index in memory order of the lowest addressed non zero byte of a word read with the native byte order
+	private static int firstByteIndex(long word) {
+		return (LITTLE_ENDIAN ? Long.numberOfTrailingZeros(word) : Long.numberOfLeadingZeros(word)) >>> 3;
+	}
+
+	private static byte patternByte(long pattern, int index) {
+		return (byte) (LITTLE_ENDIAN ? pattern >>> (index << 3) : pattern >>> (56 - (index << 3)));
 	}
 
 	public static void free(long ptr) {
-		UNSAFE.freeMemory(ptr);
+		if (NativeMemoryTracker.ENABLED) {
+			NativeMemoryTracker.beforeFree(ptr);
+		}
+		if (MemorySanitizer.ENABLED) {
+			MemorySanitizer.free(ptr);
+		} else {
+			BACKEND.free(ptr);
+		}
 	}
 
 	public static void free(ByteBuffer buffer) {
@@ -113,59 +367,126 @@ public final class MemoryUtils {
 	}
 
 	public static byte getByte(long ptr, long offset) {
-		return UNSAFE.getByte(ptr + offset);
+		checkAccess(ptr + offset, Byte.BYTES);
+		return BACKEND.getByte(ptr + offset);
 	}
 
 	public static void setByte(long ptr, long offset, int value) {
-		UNSAFE.putByte(ptr + offset, (byte) (value & 0xFF));
+		checkAccess(ptr + offset, Byte.BYTES);
+		BACKEND.setByte(ptr + offset, (byte) (value & 0xFF));
 	}
 
 	public static short getShort(long ptr, long offset) {
-		return UNSAFE.getShort(ptr + offset);
+		checkAccess(ptr + offset, Short.BYTES);
+		return BACKEND.getShort(ptr + offset);
 	}
 
 	public static void setShort(long ptr, long offset, int value) {
-		UNSAFE.putShort(ptr + offset, (short) (value & 0xFFFF));
+		checkAccess(ptr + offset, Short.BYTES);
+		BACKEND.setShort(ptr + offset, (short) (value & 0xFFFF));
 	}
 
 	public static char getChar(long ptr, long offset) {
-		return UNSAFE.getChar(ptr + offset);
+		checkAccess(ptr + offset, Character.BYTES);
+		return BACKEND.getChar(ptr + offset);
 	}
 
 	public static void setChar(long ptr, long offset, char value) {
-		UNSAFE.putChar(ptr + offset, value);
+		checkAccess(ptr + offset, Character.BYTES);
+		BACKEND.setChar(ptr + offset, value);
 	}
 
 	public static int getInt(long ptr, long offset) {
-		return UNSAFE.getInt(ptr + offset);
+		checkAccess(ptr + offset, Integer.BYTES);
+		return BACKEND.getInt(ptr + offset);
 	}
 
 	public static void setInt(long ptr, long offset, int value) {
-		UNSAFE.putInt(ptr + offset, value);
+		checkAccess(ptr + offset, Integer.BYTES);
+		BACKEND.setInt(ptr + offset, value);
 	}
 
 	public static long getLong(long ptr, long offset) {
-		return UNSAFE.getLong(ptr + offset);
+		checkAccess(ptr + offset, Long.BYTES);
+		return BACKEND.getLong(ptr + offset);
 	}
 
 	public static void setLong(long ptr, long offset, long value) {
-		UNSAFE.putLong(ptr + offset, value);
+		checkAccess(ptr + offset, Long.BYTES);
+		BACKEND.setLong(ptr + offset, value);
 	}
 
 	public static float getFloat(long ptr, long offset) {
-		return UNSAFE.getFloat(ptr + offset);
+		checkAccess(ptr + offset, Float.BYTES);
+		return BACKEND.getFloat(ptr + offset);
 	}
 
 	public static void setFloat(long ptr, long offset, float value) {
-		UNSAFE.putFloat(ptr + offset, value);
+		checkAccess(ptr + offset, Float.BYTES);
+		BACKEND.setFloat(ptr + offset, value);
 	}
 
 	public static double getDouble(long ptr, long offset) {
-		return UNSAFE.getDouble(ptr + offset);
+		checkAccess(ptr + offset, Double.BYTES);
+		return BACKEND.getDouble(ptr + offset);
 	}
 
 	public static void setDouble(long ptr, long offset, double value) {
-		UNSAFE.putDouble(ptr + offset, value);
+		checkAccess(ptr + offset, Double.BYTES);
+		BACKEND.setDouble(ptr + offset, value);
+	}
+
+	// Atomic accessors always go through Unsafe: they are not part of MemoryBackend and work with either backend
+
+	public static int getIntVolatile(long ptr, long offset) {
+		checkAccess(ptr + offset, Integer.BYTES);
+		return UNSAFE.getIntVolatile(null, ptr + offset);
+	}
+
+	public static void setIntOrdered(long ptr, long offset, int value) {
+		checkAccess(ptr + offset, Integer.BYTES);
+		UNSAFE.putOrderedInt(null, ptr + offset, value);
+	}
+
+	public static boolean compareAndSetInt(long ptr, long offset, int expected, int value) {
+		checkAccess(ptr + offset, Integer.BYTES);
+		return UNSAFE.compareAndSwapInt(null, ptr + offset, expected, value);
+	}
+
+	public static int getAndAddInt(long ptr, long offset, int delta) {
+		checkAccess(ptr + offset, Integer.BYTES);
+		return UNSAFE.getAndAddInt(null, ptr + offset, delta);
+	}
+
+	public static long getLongVolatile(long ptr, long offset) {
+		checkAccess(ptr + offset, Long.BYTES);
+		return UNSAFE.getLongVolatile(null, ptr + offset);
+	}
+
+	public static void setLongVolatile(long ptr, long offset, long value) {
+		checkAccess(ptr + offset, Long.BYTES);
+		UNSAFE.putLongVolatile(null, ptr + offset, value);
+	}
+
+	public static void setLongOrdered(long ptr, long offset, long value) {
+		checkAccess(ptr + offset, Long.BYTES);
+		UNSAFE.putOrderedLong(null, ptr + offset, value);
+	}
+
+	public static boolean compareAndSetLong(long ptr, long offset, long expected, long value) {
+		checkAccess(ptr + offset, Long.BYTES);
+		return UNSAFE.compareAndSwapLong(null, ptr + offset, expected, value);
+	}
+
+	public static long getAndAddLong(long ptr, long offset, long delta) {
+		checkAccess(ptr + offset, Long.BYTES);
+		return UNSAFE.getAndAddLong(null, ptr + offset, delta);
+	}
+
+	private static void checkAccess(long address, long bytes) {
+		if (MemorySanitizer.ENABLED) {
+			MemorySanitizer.check(address, bytes);
+		}
 	}
 
 	public static long arrayBaseOffset(Class<?> arrayClass) {
@@ -243,6 +564,17 @@ public final class MemoryUtils {
 		BUFFER_LIMIT_OFFSET = offset;
 	}
 
+	static {
+		final String backend = System.getProperty(MemoryBackend.PROPERTY, "unsafe");
+		if (backend.equalsIgnoreCase("foreign")) {
+			BACKEND = new ForeignMemoryBackend();
+		} else if (backend.equalsIgnoreCase("unsafe")) {
+			BACKEND = new UnsafeMemoryBackend();
+		} else {
+			throw new IllegalArgumentException("Unknown memory backend: " + backend + ". Use unsafe or foreign");
+		}
+	}
+
 	private MemoryUtils() {
 	}
 }
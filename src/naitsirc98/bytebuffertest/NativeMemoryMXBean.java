@@ -0,0 +1,22 @@
+package naitsirc98.bytebuffertest;
+
+public interface NativeMemoryMXBean {
+
+    boolean isTrackingEnabled();
+
+    long getLiveAllocations();
+
+    long getLiveBytes();
+
+    long getPeakBytes();
+
+    long getTotalAllocations();
+
+    long getTotalFrees();
+
+    long getTotalAllocatedBytes();
+
+    int getSampleRate();
+
+    String leakReport();
+}
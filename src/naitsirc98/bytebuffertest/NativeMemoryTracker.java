@@ -0,0 +1,255 @@
+package naitsirc98.bytebuffertest;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accounting of the raw pointers returned by {@link MemoryUtils#malloc}, {@link MemoryUtils#calloc} and
+ * {@link MemoryUtils#realloc}.
+ *
+ * Tracking is decided once at startup with {@code -Dbytebuffertest.native.tracking=true}. When it is off,
+ * {@link #ENABLED} is a constant false and the JIT removes every hook from the MemoryUtils hot path.
+ * When it is on, every live pointer is recorded, freeing an unknown pointer throws instead of corrupting the
+ * native heap, 1 out of {@code -Dbytebuffertest.native.tracking.sampleRate} allocations records its stack trace,
+ * leaks are reported on shutdown and the counters are published through JMX as
+ * {@value #OBJECT_NAME}.
+ */
+public final class NativeMemoryTracker implements NativeMemoryMXBean {
+
+    public static final boolean ENABLED = Boolean.getBoolean("bytebuffertest.native.tracking");
+    public static final int SAMPLE_RATE = Math.max(1, Integer.getInteger("bytebuffertest.native.tracking.sampleRate", 64));
+    public static final String OBJECT_NAME = "naitsirc98.bytebuffertest:type=NativeMemory";
+
+    private static final int MAX_REPORTED_SITES = 10;
+
+    private static final NativeMemoryTracker INSTANCE = new NativeMemoryTracker();
+
+    public static NativeMemoryTracker get() {
+        return INSTANCE;
+    }
+
+    static void onMalloc(long ptr, long bytes) {
+        if(ptr == MemoryUtils.NULL) {
+            return;
+        }
+        INSTANCE.add(ptr, bytes);
+    }
+
+    /**
+     * Claims the entry of the pointer before it is reallocated. It must be taken out of the live allocations before
+     * realloc frees the block, otherwise a malloc of another thread can get the same address and register it first.
+     * Returns null for a NULL pointer.
+     */
+    static Allocation beforeRealloc(long ptr) {
+        if(ptr == MemoryUtils.NULL) {
+            return null;
+        }
+        final Allocation allocation = INSTANCE.liveAllocations.remove(ptr);
+        if(allocation == null) {
+            throw new IllegalArgumentException("realloc of pointer 0x" + Long.toHexString(ptr)
+                    + " that is not a live malloc/calloc/realloc allocation");
+        }
+        return allocation;
+    }
+
+    static void onRealloc(long oldPtr, Allocation old, long newPtr, long bytes) {
+        // A failed realloc leaves the old block alive; a realloc to 0 bytes frees it and also returns NULL
+        if(newPtr == MemoryUtils.NULL && bytes != 0) {
+            onReallocFailed(oldPtr, old);
+            return;
+        }
+        if(old != null) {
+            INSTANCE.totalFrees.increment();
+            INSTANCE.liveBytes.addAndGet(-old.size);
+        }
+        onMalloc(newPtr, bytes);
+    }
+
+    static void onReallocFailed(long oldPtr, Allocation old) {
+        if(old != null) {
+            INSTANCE.liveAllocations.put(oldPtr, old);
+        }
+    }
+
+    static void beforeFree(long ptr) {
+        if(ptr == MemoryUtils.NULL) {
+            return;
+        }
+        if(INSTANCE.remove(ptr) == null) {
+            throw new IllegalArgumentException("free of pointer 0x" + Long.toHexString(ptr)
+                    + " that is not a live malloc/calloc/realloc allocation (double free or foreign pointer)");
+        }
+    }
+
+    private final Map<Long, Allocation> liveAllocations = new ConcurrentHashMap<>();
+    private final AtomicLong liveBytes = new AtomicLong();
+    private final AtomicLong peakBytes = new AtomicLong();
+    private final AtomicLong totalAllocations = new AtomicLong();
+    private final LongAdder totalFrees = new LongAdder();
+    private final LongAdder totalAllocatedBytes = new LongAdder();
+
+    private NativeMemoryTracker() {
+        if(ENABLED) {
+            register();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::reportLeaks, "NativeMemoryTracker-shutdown"));
+        }
+    }
+
+    @Override
+    public boolean isTrackingEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public long getLiveAllocations() {
+        return liveAllocations.size();
+    }
+
+    @Override
+    public long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    @Override
+    public long getPeakBytes() {
+        return peakBytes.get();
+    }
+
+    @Override
+    public long getTotalAllocations() {
+        return totalAllocations.get();
+    }
+
+    @Override
+    public long getTotalFrees() {
+        return totalFrees.sum();
+    }
+
+    @Override
+    public long getTotalAllocatedBytes() {
+        return totalAllocatedBytes.sum();
+    }
+
+    @Override
+    public int getSampleRate() {
+        return SAMPLE_RATE;
+    }
+
+    @Override
+    public String leakReport() {
+        long unsampledCount = 0;
+        long unsampledBytes = 0;
+        Map<Site, long[]> sites = new HashMap<>();
+        for(Allocation allocation : liveAllocations.values()) {
+            if(allocation.site == null) {
+                ++unsampledCount;
+                unsampledBytes += allocation.size;
+            } else {
+                long[] stats = sites.computeIfAbsent(new Site(allocation.site.getStackTrace()), k -> new long[2]);
+                ++stats[0];
+                stats[1] += allocation.size;
+            }
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append(getLiveAllocations()).append(" live native allocations, ").append(getLiveBytes()).append(" bytes");
+        if(!sites.isEmpty()) {
+            List<Map.Entry<Site, long[]>> sorted = new ArrayList<>(sites.entrySet());
+            sorted.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+            report.append("\nSampled allocation sites (1 in ").append(SAMPLE_RATE).append("):");
+            for(Map.Entry<Site, long[]> entry : sorted.subList(0, Math.min(MAX_REPORTED_SITES, sorted.size()))) {
+                report.append("\n  ").append(entry.getValue()[0]).append(" allocations, ")
+                        .append(entry.getValue()[1]).append(" bytes");
+                for(StackTraceElement element : entry.getKey().stackTrace) {
+                    report.append("\n      at ").append(element);
+                }
+            }
+        }
+        if(unsampledCount > 0) {
+            report.append("\n  ").append(unsampledCount).append(" unsampled allocations, ")
+                    .append(unsampledBytes).append(" bytes");
+        }
+        return report.toString();
+    }
+
+    private void add(long ptr, long bytes) {
+        final long count = totalAllocations.getAndIncrement();
+        totalAllocatedBytes.add(bytes);
+        final Throwable site = count % SAMPLE_RATE == 0 ? new Throwable() : null;
+        liveAllocations.put(ptr, new Allocation(bytes, site));
+        final long live = liveBytes.addAndGet(bytes);
+        peakBytes.accumulateAndGet(live, Math::max);
+    }
+
+    private Allocation remove(long ptr) {
+        Allocation allocation = liveAllocations.remove(ptr);
+        if(allocation != null) {
+            totalFrees.increment();
+            liveBytes.addAndGet(-allocation.size);
+        }
+        return allocation;
+    }
+
+    private void reportLeaks() {
+        if(!liveAllocations.isEmpty()) {
+            Log.log("[NativeMemoryTracker] Leaks at shutdown: " + leakReport());
+        }
+    }
+
+    private void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch(Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    static final class Allocation {
+
+        private final long size;
+        private final Throwable site;
+
+        private Allocation(long size, Throwable site) {
+            this.size = size;
+            this.site = site;
+        }
+    }
+
+    private static final class Site {
+
+        private final StackTraceElement[] stackTrace;
+        private final int hash;
+
+        private Site(StackTraceElement[] stackTrace) {
+            int first = 0;
+            while(first < stackTrace.length - 1 && isInternalFrame(stackTrace[first])) {
+                ++first;
+            }
+            this.stackTrace = Arrays.copyOfRange(stackTrace, first, stackTrace.length);
+            this.hash = Arrays.hashCode(this.stackTrace);
+        }
+
+        private static boolean isInternalFrame(StackTraceElement element) {
+            return element.getClassName().equals(NativeMemoryTracker.class.getName())
+                    || element.getClassName().equals(MemoryUtils.class.getName());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Site && Arrays.equals(stackTrace, ((Site) o).stackTrace);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package naitsirc98.bytebuffertest;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import static naitsirc98.bytebuffertest.MemoryUtils.*;
+
+/**
+ * Single native block addressed with long offsets, so it is not limited to the 2 GB of a ByteBuffer.
+ * Every accessor is bounds checked. Once freed, the region has size 0 and any access throws
+ * {@link IndexOutOfBoundsException} instead of touching released memory.
+ */
+public final class OffHeapRegion implements AutoCloseable {
+
+    public static OffHeapRegion allocate(long size) {
+        return new OffHeapRegion(malloc(size), size);
+    }
+
+    public static OffHeapRegion allocateZeroed(long size) {
+        return new OffHeapRegion(calloc(size), size);
+    }
+
+    public static OffHeapRegion allocateZeroedParallel(long size) {
+        return new OffHeapRegion(ParallelMemory.calloc(size), size);
+    }
+
+    public static void copy(OffHeapRegion src, long srcOffset, OffHeapRegion dest, long destOffset, long bytes) {
+        src.check(srcOffset, bytes);
+        dest.check(destOffset, bytes);
+        memcpy(src.address + srcOffset, dest.address + destOffset, bytes);
+    }
+
+    private long address;
+    private long size;
+
+    private OffHeapRegion(long address, long size) {
+        if(size < 0) {
+            throw new IllegalArgumentException("Size is negative: " + size);
+        }
+        this.address = address;
+        this.size = size;
+    }
+
+    public long address() {
+        return address;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isFreed() {
+        return address == NULL;
+    }
+
+    public ByteBuffer slice(long offset, int length) {
+        check(offset, length);
+        return wrap(address + offset, length);
+    }
+
+    public void fill(long offset, long bytes, int value) {
+        check(offset, bytes);
+        memset(address + offset, bytes, value);
+    }
+
+    public void copyTo(long offset, byte[] dest, int destOffset, int bytes) {
+        check(offset, bytes);
+        Objects.checkFromIndexSize(destOffset, bytes, dest.length);
+        memcpy(address, offset, dest, destOffset, bytes);
+    }
+
+    public void copyFrom(byte[] src, int srcOffset, long offset, int bytes) {
+        Objects.checkFromIndexSize(srcOffset, bytes, src.length);
+        check(offset, bytes);
+        memcpy(src, srcOffset, address, offset, bytes);
+    }
+
+    public byte getByte(long offset) {
+        check(offset, Byte.BYTES);
+        return MemoryUtils.getByte(address, offset);
+    }
+
+    public void setByte(long offset, int value) {
+        check(offset, Byte.BYTES);
+        MemoryUtils.setByte(address, offset, value);
+    }
+
+    public short getShort(long offset) {
+        check(offset, Short.BYTES);
+        return MemoryUtils.getShort(address, offset);
+    }
+
+    public void setShort(long offset, int value) {
+        check(offset, Short.BYTES);
+        MemoryUtils.setShort(address, offset, value);
+    }
+
+    public char getChar(long offset) {
+        check(offset, Character.BYTES);
+        return MemoryUtils.getChar(address, offset);
+    }
+
+    public void setChar(long offset, char value) {
+        check(offset, Character.BYTES);
+        MemoryUtils.setChar(address, offset, value);
+    }
+
+    public int getInt(long offset) {
+        check(offset, Integer.BYTES);
+        return MemoryUtils.getInt(address, offset);
+    }
+
+    public void setInt(long offset, int value) {
+        check(offset, Integer.BYTES);
+        MemoryUtils.setInt(address, offset, value);
+    }
+
+    public long getLong(long offset) {
+        check(offset, Long.BYTES);
+        return MemoryUtils.getLong(address, offset);
+    }
+
+    public void setLong(long offset, long value) {
+        check(offset, Long.BYTES);
+        MemoryUtils.setLong(address, offset, value);
+    }
+
+    public float getFloat(long offset) {
+        check(offset, Float.BYTES);
+        return MemoryUtils.getFloat(address, offset);
+    }
+
+    public void setFloat(long offset, float value) {
+        check(offset, Float.BYTES);
+        MemoryUtils.setFloat(address, offset, value);
+    }
+
+    public double getDouble(long offset) {
+        check(offset, Double.BYTES);
+        return MemoryUtils.getDouble(address, offset);
+    }
+
+    public void setDouble(long offset, double value) {
+        check(offset, Double.BYTES);
+        MemoryUtils.setDouble(address, offset, value);
+    }
+
+    public void free() {
+        final long ptr = address;
+        size = 0;
+        address = NULL;
+        if(ptr != NULL) {
+            MemoryUtils.free(ptr);
+        }
+    }
+
+    @Override
+    public void close() {
+        free();
+    }
+
+    private void check(long offset, long bytes) {
+        Objects.checkFromIndexSize(offset, bytes, size);
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapRegion{address=0x" + Long.toHexString(address) + ", size=" + size + '}';
+    }
+}
@@ -0,0 +1,74 @@
+package naitsirc98.bytebuffertest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Snapshot of the minor and major page fault counters of the calling thread or the whole process, read from
+ * {@code /proc}. On systems without procfs every snapshot is zero and {@link #isSupported()} returns false.
+ */
+public final class PageFaults {
+
+    private static final Path THREAD_STAT = Paths.get("/proc/thread-self/stat");
+    private static final Path PROCESS_STAT = Paths.get("/proc/self/stat");
+    private static final boolean SUPPORTED = Files.isReadable(PROCESS_STAT);
+
+    // Field positions counted from the process state, which follows the ')' closing the command name
+    private static final int MINOR_FAULTS_FIELD = 7;
+    private static final int MAJOR_FAULTS_FIELD = 9;
+
+    private static final PageFaults NONE = new PageFaults(0, 0);
+
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    public static PageFaults ofThread() {
+        return read(Files.isReadable(THREAD_STAT) ? THREAD_STAT : PROCESS_STAT);
+    }
+
+    public static PageFaults ofProcess() {
+        return read(PROCESS_STAT);
+    }
+
+    private static PageFaults read(Path stat) {
+        if(!SUPPORTED) {
+            return NONE;
+        }
+        try {
+            final String content = new String(Files.readAllBytes(stat));
+            final String[] fields = content.substring(content.lastIndexOf(')') + 2).split(" ");
+            return new PageFaults(Long.parseLong(fields[MINOR_FAULTS_FIELD]), Long.parseLong(fields[MAJOR_FAULTS_FIELD]));
+        } catch(IOException | RuntimeException e) {
+            e.printStackTrace();
+            return NONE;
+        }
+    }
+
+    private final long minor;
+    private final long major;
+
+    private PageFaults(long minor, long major) {
+        this.minor = minor;
+        this.major = major;
+    }
+
+    public long minor() {
+        return minor;
+    }
+
+    public long major() {
+        return major;
+    }
+
+    public PageFaults since(PageFaults before) {
+        return new PageFaults(minor - before.minor, major - before.major);
+    }
+
+    @Override
+    public String toString() {
+        return minor + " minor / " + major + " major page faults";
+    }
+}
@@ -0,0 +1,13 @@
+package naitsirc98.bytebuffertest;
+
+/**
+ * How buffers get their pages. NONE keeps ByteBuffer.allocateDirect, the others map anonymous memory with
+ * {@link HugePages}: SMALL with 4 KB pages only (transparent huge pages disabled for the mapping), HUGETLB with
+ * reserved 2 MB pages from hugetlbfs and THP with 2 MB transparent huge pages requested through madvise.
+ */
+public enum PageMode {
+    NONE,
+    SMALL,
+    HUGETLB,
+    THP
+}
@@ -0,0 +1,62 @@
+package naitsirc98.bytebuffertest;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join versions of the MemoryUtils bulk initialization operations, for multi GB blocks where a single thread
+ * spends seconds taking page faults. Pages are first touched by the pool threads, so on NUMA machines the block ends
+ * up spread across the nodes those threads run on.
+ */
+public final class ParallelMemory {
+
+    public static final long CHUNK_SIZE = 64L * 1024 * 1024;
+
+    public static long calloc(long bytes) {
+        final long ptr = MemoryUtils.malloc(bytes);
+        memset(ptr, bytes, 0);
+        return ptr;
+    }
+
+    public static void memset(long ptr, long bytes, int value) {
+        ForkJoinPool.commonPool().invoke(new InitTask(ptr, bytes, value, false));
+    }
+
+    public static void prefault(long ptr, long bytes) {
+        ForkJoinPool.commonPool().invoke(new InitTask(ptr, bytes, 0, true));
+    }
+
+    private static final class InitTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long ptr;
+        private final long bytes;
+        private final int value;
+        private final boolean prefault;
+
+        private InitTask(long ptr, long bytes, int value, boolean prefault) {
+            this.ptr = ptr;
+            this.bytes = bytes;
+            this.value = value;
+            this.prefault = prefault;
+        }
+
+        @Override
+        protected void compute() {
+            if(bytes <= CHUNK_SIZE) {
+                if(prefault) {
+                    MemoryUtils.prefault(ptr, bytes);
+                } else {
+                    MemoryUtils.memset(ptr, bytes, value);
+                }
+                return;
+            }
+            final long pageSize = MemoryUtils.pageSize();
+            final long half = (bytes / 2 + pageSize - 1) / pageSize * pageSize;
+            invokeAll(new InitTask(ptr, half, value, prefault), new InitTask(ptr + half, bytes - half, value, prefault));
+        }
+    }
+
+    private ParallelMemory() {}
+}
@@ -0,0 +1,162 @@
+package naitsirc98.bytebuffertest;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures how long the JVM takes to give back the native memory of buffers that are no longer referenced, without
+ * ever touching that memory. Every tracked buffer gets a phantom reference: the time it is enqueued is when the GC
+ * found the buffer unreachable. The time its native memory was returned comes from the drops of the buffer pool
+ * {@link BufferPoolMXBean}, handed out to the enqueued buffers in order. Allocations made while probing offset those
+ * drops, so a release may be attributed late but never early.
+ *
+ * Three latencies are recorded: drop to GC (from {@link Probe#dropped()} to the enqueue), GC to release, and the
+ * total from drop to release.
+ */
+public final class ReclamationProbe implements AutoCloseable {
+
+    private final BufferPoolMXBean pool;
+    private final ReferenceQueue<ByteBuffer> queue = new ReferenceQueue<>();
+    private final Set<Probe> live = ConcurrentHashMap.newKeySet();
+    private final ArrayDeque<Probe> awaitingRelease = new ArrayDeque<>();
+    private final LatencyHistogram dropToGc = new LatencyHistogram();
+    private final LatencyHistogram gcToRelease = new LatencyHistogram();
+    private final LatencyHistogram dropToRelease = new LatencyHistogram();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long lastPoolUsed;
+    private long releasedCredit;
+    private int released;
+    private int tracked;
+
+    public ReclamationProbe(String poolName) {
+        pool = MemorySampler.bufferPool(poolName);
+        if(pool == null) {
+            throw new IllegalArgumentException("No buffer pool named " + poolName);
+        }
+        lastPoolUsed = pool.getMemoryUsed();
+        thread = new Thread(this::poll, "ReclamationProbe");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public Probe track(ByteBuffer buffer) {
+        final Probe probe = new Probe(buffer, queue);
+        live.add(probe);
+        synchronized(this) {
+            ++tracked;
+        }
+        return probe;
+    }
+
+    /**
+     * Waits until every tracked buffer has been released or the timeout expires, and returns whether all were.
+     */
+    public boolean awaitReleased(long timeoutMillis) {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized(this) {
+            while(released < tracked) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if(remaining <= 0) {
+                    return false;
+                }
+                try {
+                    wait(remaining);
+                } catch(InterruptedException e) {
+                    e.printStackTrace();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public synchronized String report() {
+        return String.format("%d of %d %s buffers released under %s%n   drop to GC:        %s%n   GC to release:     %s%n   drop to release:   %s",
+                released, tracked, pool.getName(), collectors(), dropToGc.summary(), gcToRelease.summary(), dropToRelease.summary());
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch(InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void poll() {
+        while(running) {
+            try {
+                Probe probe = (Probe) queue.remove(1);
+                final long now = System.nanoTime();
+                synchronized(this) {
+                    while(probe != null) {
+                        probe.enqueuedNanos = now;
+                        live.remove(probe);
+                        awaitingRelease.addLast(probe);
+                        probe = (Probe) queue.poll();
+                    }
+                    attributeReleases(now);
+                }
+            } catch(InterruptedException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void attributeReleases(long now) {
+        final long used = pool.getMemoryUsed();
+        if(used < lastPoolUsed) {
+            releasedCredit += lastPoolUsed - used;
+        }
+        lastPoolUsed = used;
+        while(!awaitingRelease.isEmpty() && releasedCredit >= awaitingRelease.peekFirst().capacity) {
+            final Probe probe = awaitingRelease.pollFirst();
+            releasedCredit -= probe.capacity;
+            final long dropped = probe.droppedNanos != 0 ? probe.droppedNanos : probe.trackedNanos;
+            dropToGc.record(probe.enqueuedNanos - dropped);
+            gcToRelease.record(now - probe.enqueuedNanos);
+            dropToRelease.record(now - dropped);
+            ++released;
+            notifyAll();
+        }
+    }
+
+    static String collectors() {
+        StringBuilder names = new StringBuilder();
+        for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            names.append(names.length() == 0 ? "" : " + ").append(collector.getName());
+        }
+        return names.toString();
+    }
+
+    public static final class Probe extends PhantomReference<ByteBuffer> {
+
+        private final long capacity;
+        private final long trackedNanos = System.nanoTime();
+        private volatile long droppedNanos;
+        private long enqueuedNanos;
+
+        private Probe(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue) {
+            super(buffer, queue);
+            this.capacity = buffer.capacity();
+        }
+
+        /**
+         * Marks the moment the caller dropped its last strong reference to the buffer.
+         */
+        public void dropped() {
+            droppedNanos = System.nanoTime();
+        }
+    }
+}
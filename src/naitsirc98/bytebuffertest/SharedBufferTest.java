@@ -0,0 +1,194 @@
+package naitsirc98.bytebuffertest;
+
+import naitsirc98.bytebuffertest.event.EventLog;
+import naitsirc98.bytebuffertest.event.EventType;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Test where every thread updates the same buffer (buffer 0 of the group) with atomic operations on 8 byte
+ * counters. Buffers are accessed through a byte buffer view {@link VarHandle} and regions or {@code -access=pointer}
+ * through the {@link MemoryUtils} atomics. All threads wait on a barrier before every iteration so they really run
+ * at the same time.
+ */
+public class SharedBufferTest implements BufferTest {
+
+    public static final int CACHE_LINE_PADDING = 128;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    public static long requiredBytes(Arguments args) {
+        return args.sharedLayout() == SharedLayout.CONTENDED ? Long.BYTES : (long) args.numThreads() * slotStride(args);
+    }
+
+    private static int slotStride(Arguments args) {
+        return args.padding() ? CACHE_LINE_PADDING : Long.BYTES;
+    }
+
+    private final BufferGroup bufferGroup;
+    private final int index;
+    private final Arguments args;
+    private final CyclicBarrier barrier;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long operations;
+    private long accessNanos;
+    private long casFailures;
+    private long checksum;
+
+    public SharedBufferTest(BufferGroup bufferGroup, int index, Arguments args, CyclicBarrier barrier) {
+        this.bufferGroup = bufferGroup;
+        this.index = index;
+        this.args = args;
+        this.barrier = barrier;
+    }
+
+    private String thread() {
+        final Thread thread = Thread.currentThread();
+        return thread.isVirtual() ? "virtual-" + index : thread.getName();
+    }
+
+    @Override
+    public void run() {
+        Log.logVerbose(thread() + ": Executing shared buffer test " + args);
+
+        final long offset = args.sharedLayout() == SharedLayout.CONTENDED ? 0 : (long) index * slotStride(args);
+        final ByteBuffer buffer = args.pointerAccess() || bufferGroup.isRegion() ? null : bufferGroup.get(0);
+        final long address = bufferGroup.getAddress(0);
+        final AtomicOperation operation = args.atomicOperation();
+        final int operationsPerIteration = args.operations();
+        final boolean recordLatency = args.latency();
+        final LatencyHistogram iterationHistogram = new LatencyHistogram();
+
+        for(int j = 0;j < args.warmupIterations();j++) {
+            for(int i = 0;i < operationsPerIteration;i++) {
+                execute(operation, buffer, address, offset, i);
+            }
+        }
+
+        final boolean events = EventLog.isEnabled();
+        if(events) {
+            EventLog.record(EventType.TEST_STARTED, index);
+        }
+
+        for(int j = 0;j < args.iterations();j++) {
+            if(!args.noSleep()) {
+                sleep(1000);
+            }
+            await();
+            if(events) {
+                EventLog.record(EventType.ITERATION_STARTED, index, j);
+            }
+            final long iterationStart = System.nanoTime();
+            for(int i = 0;i < operationsPerIteration;i++) {
+                if(recordLatency) {
+                    final long start = System.nanoTime();
+                    execute(operation, buffer, address, offset, i);
+                    iterationHistogram.record(System.nanoTime() - start);
+                } else {
+                    execute(operation, buffer, address, offset, i);
+                }
+            }
+            final long iterationNanos = System.nanoTime() - iterationStart;
+            accessNanos += iterationNanos;
+            operations += operationsPerIteration;
+            if(args.exception()) {
+                // Release the other threads waiting for this one on the barrier
+                barrier.reset();
+                throw new UserRequestedException(thread() + ": User requested exception: offset = " + offset);
+            }
+            if(events) {
+                EventLog.record(EventType.ITERATION_FINISHED, index, j, operationsPerIteration, iterationNanos);
+            }
+            if(recordLatency) {
+                Log.log(thread() + ": Iteration " + j + ": " + DirectByteBufferTest.throughput(operationsPerIteration, iterationNanos)
+                        + ", " + iterationHistogram.summary());
+                histogram.add(iterationHistogram);
+                iterationHistogram.reset();
+            } else if(!events && Log.isVerbose()) {
+                Log.log(thread() + ": Iteration " + j + ": " + DirectByteBufferTest.throughput(operationsPerIteration, iterationNanos));
+            }
+        }
+
+        if(events) {
+            EventLog.record(EventType.TEST_FINISHED, index, operations, accessNanos);
+        }
+
+        Log.log(thread() + ": " + operation + " at offset " + offset + ": " + DirectByteBufferTest.throughput(operations, accessNanos)
+                + (operation == AtomicOperation.CAS ? ", " + casFailures + " failed CAS" : "")
+                + (recordLatency ? ", " + histogram.summary() : ""));
+        Log.logVerbose(thread() + ": checksum " + checksum);
+    }
+
+    private void execute(AtomicOperation operation, ByteBuffer buffer, long address, long offset, long i) {
+        switch(operation) {
+            case ADD:
+                checksum += buffer != null ? (long) LONG_VIEW.getAndAdd(buffer, (int) offset, 1L)
+                        : MemoryUtils.getAndAddLong(address, offset, 1L);
+                break;
+            case CAS:
+                while(true) {
+                    final long value = buffer != null ? (long) LONG_VIEW.getVolatile(buffer, (int) offset)
+                            : MemoryUtils.getLongVolatile(address, offset);
+                    if(buffer != null ? LONG_VIEW.compareAndSet(buffer, (int) offset, value, value + 1)
+                            : MemoryUtils.compareAndSetLong(address, offset, value, value + 1)) {
+                        break;
+                    }
+                    ++casFailures;
+                }
+                break;
+            case WRITE:
+                if(buffer != null) {
+                    LONG_VIEW.setVolatile(buffer, (int) offset, i);
+                } else {
+                    MemoryUtils.setLongVolatile(address, offset, i);
+                }
+                break;
+            case READ:
+                checksum += buffer != null ? (long) LONG_VIEW.getVolatile(buffer, (int) offset)
+                        : MemoryUtils.getLongVolatile(address, offset);
+                break;
+        }
+    }
+
+    private void await() {
+        try {
+            barrier.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public LatencyHistogram histogram() {
+        return histogram;
+    }
+
+    @Override
+    public long operations() {
+        return operations;
+    }
+
+    @Override
+    public long accessNanos() {
+        return accessNanos;
+    }
+
+    @Override
+    public long initNanos() {
+        return 0;
+    }
+}
@@ -0,0 +1,10 @@
+package naitsirc98.bytebuffertest;
+
+/**
+ * Where the threads of a shared buffer test put their counters: all on the same 8 byte word, or one word per
+ * thread, either packed next to each other or each on its own cache line pair.
+ */
+public enum SharedLayout {
+    CONTENDED,
+    STRIPED
+}
@@ -0,0 +1,7 @@
+package naitsirc98.bytebuffertest;
+
+public enum SyncPolicy {
+    NONE,
+    ITERATION,
+    UNMAP
+}
@@ -0,0 +1,119 @@
+package naitsirc98.bytebuffertest;
+
+import sun.misc.Unsafe;
+
+final class UnsafeMemoryBackend implements MemoryBackend {
+
+    private static final Unsafe UNSAFE = MemoryUtils.UNSAFE;
+    private static final long BYTE_ARRAY_BASE_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+
+    @Override
+    public String name() {
+        return "unsafe";
+    }
+
+    @Override
+    public long malloc(long bytes) {
+        return UNSAFE.allocateMemory(bytes);
+    }
+
+    @Override
+    public long realloc(long ptr, long bytes) {
+        return UNSAFE.reallocateMemory(ptr, bytes);
+    }
+
+    @Override
+    public void free(long ptr) {
+        UNSAFE.freeMemory(ptr);
+    }
+
+    @Override
+    public void memset(long ptr, long bytes, byte value) {
+        UNSAFE.setMemory(ptr, bytes, value);
+    }
+
+    @Override
+    public void memcpy(long src, long dest, long bytes) {
+        UNSAFE.copyMemory(src, dest, bytes);
+    }
+
+    @Override
+    public void memcpy(long src, byte[] dest, int destOffset, int bytes) {
+        UNSAFE.copyMemory(null, src, dest, BYTE_ARRAY_BASE_OFFSET + destOffset, bytes);
+    }
+
+    @Override
+    public void memcpy(byte[] src, int srcOffset, long dest, int bytes) {
+        UNSAFE.copyMemory(src, BYTE_ARRAY_BASE_OFFSET + srcOffset, null, dest, bytes);
+    }
+
+    @Override
+    public byte getByte(long ptr) {
+        return UNSAFE.getByte(ptr);
+    }
+
+    @Override
+    public void setByte(long ptr, byte value) {
+        UNSAFE.putByte(ptr, value);
+    }
+
+    @Override
+    public short getShort(long ptr) {
+        return UNSAFE.getShort(ptr);
+    }
+
+    @Override
+    public void setShort(long ptr, short value) {
+        UNSAFE.putShort(ptr, value);
+    }
+
+    @Override
+    public char getChar(long ptr) {
+        return UNSAFE.getChar(ptr);
+    }
+
+    @Override
+    public void setChar(long ptr, char value) {
+        UNSAFE.putChar(ptr, value);
+    }
+
+    @Override
+    public int getInt(long ptr) {
+        return UNSAFE.getInt(ptr);
+    }
+
+    @Override
+    public void setInt(long ptr, int value) {
+        UNSAFE.putInt(ptr, value);
+    }
+
+    @Override
+    public long getLong(long ptr) {
+        return UNSAFE.getLong(ptr);
+    }
+
+    @Override
+    public void setLong(long ptr, long value) {
+        UNSAFE.putLong(ptr, value);
+    }
+
+    @Override
+    public float getFloat(long ptr) {
+        return UNSAFE.getFloat(ptr);
+    }
+
+    @Override
+    public void setFloat(long ptr, float value) {
+        UNSAFE.putFloat(ptr, value);
+    }
+
+    @Override
+    public double getDouble(long ptr) {
+        return UNSAFE.getDouble(ptr);
+    }
+
+    @Override
+    public void setDouble(long ptr, double value) {
+        UNSAFE.putDouble(ptr, value);
+    }
+}
@@ -0,0 +1,13 @@
+package naitsirc98.bytebuffertest.alloc;
+
+/**
+ * Thrown when a {@link ManagedBuffer} is used after its native memory has been released.
+ */
+public class BufferReleasedException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BufferReleasedException(String message) {
+        super(message);
+    }
+}
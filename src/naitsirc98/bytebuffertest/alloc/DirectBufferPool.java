@@ -0,0 +1,389 @@
+package naitsirc98.bytebuffertest.alloc;
+
+import naitsirc98.bytebuffertest.Log;
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of direct buffers with power of two size classes and a small per thread cache in front of a shared free list.
+ * Virtual threads skip the thread cache and go straight to the shared free lists, since there can be millions of
+ * them. The caches of terminated threads are flushed back to the shared free lists on the next shared miss.
+ *
+ * Blocks are obtained with {@code malloc} and handed out as {@link MemoryUtils#wrap wrapped} views, so pooled buffers
+ * never go through {@code ByteBuffer.allocateDirect}: no zeroing, no {@code Bits.reserveMemory} accounting and no
+ * Cleaner. They are not counted against {@code -XX:MaxDirectMemorySize} either. A buffer must be given back with
+ * {@link #release(ByteBuffer)} exactly once and must not be used afterwards. Closing the pool reports the buffers
+ * that were still acquired, since their memory is never returned to the pool.
+ */
+public final class DirectBufferPool implements AutoCloseable {
+
+    public static final int MIN_SIZE_CLASS = 64;
+    public static final int MAX_SIZE_CLASS = 1 << 30;
+    public static final int DEFAULT_THREAD_CACHE_SIZE = 16;
+    public static final long DEFAULT_THREAD_CACHE_BYTES = 32L * 1024 * 1024;
+    public static final long DEFAULT_MAX_RETAINED_BYTES = Long.MAX_VALUE;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE_CLASS);
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE_CLASS) - MIN_SHIFT + 1;
+
+    private final int threadCacheSize;
+    private final long threadCacheBytes;
+    private final long maxRetainedBytes;
+    private final FreeList[] sharedFreeLists;
+    private final ThreadLocal<ThreadCache> threadCache;
+    private final List<ThreadCache> threadCaches;
+    private final AtomicLong allocatedBytes;
+    private final AtomicLong retainedBytes;
+    private final LongAdder threadCacheHits;
+    private final LongAdder sharedHits;
+    private final LongAdder misses;
+    private final LongAdder releases;
+    private final LongAdder discarded;
+    private volatile boolean closed;
+
+    public DirectBufferPool() {
+        this(DEFAULT_THREAD_CACHE_SIZE, DEFAULT_THREAD_CACHE_BYTES, DEFAULT_MAX_RETAINED_BYTES);
+    }
+
+    public DirectBufferPool(int threadCacheSize, long threadCacheBytes, long maxRetainedBytes) {
+        this.threadCacheSize = threadCacheSize;
+        this.threadCacheBytes = threadCacheBytes;
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.sharedFreeLists = new FreeList[SIZE_CLASSES];
+        for(int i = 0;i < SIZE_CLASSES;i++) {
+            sharedFreeLists[i] = new FreeList(4);
+        }
+        this.threadCaches = new ArrayList<>();
+        this.threadCache = ThreadLocal.withInitial(this::newThreadCache);
+        this.allocatedBytes = new AtomicLong();
+        this.retainedBytes = new AtomicLong();
+        this.threadCacheHits = new LongAdder();
+        this.sharedHits = new LongAdder();
+        this.misses = new LongAdder();
+        this.releases = new LongAdder();
+        this.discarded = new LongAdder();
+    }
+
+    public ByteBuffer acquire(int size) {
+        if(closed) {
+            throw new IllegalStateException("Pool is closed");
+        }
+        if(size < 0) {
+            throw new IllegalArgumentException("Size is negative: " + size);
+        }
+        final int sizeClass = sizeClassOf(size);
+        if(sizeClass < 0) {
+            misses.increment();
+            return MemoryUtils.wrap(MemoryUtils.malloc(size), size);
+        }
+        final long classBytes = classSize(sizeClass);
+
+        long ptr = usesThreadCache(classBytes) ? threadCache.get().pop(sizeClass) : MemoryUtils.NULL;
+        if(ptr != MemoryUtils.NULL) {
+            threadCacheHits.increment();
+        } else {
+            ptr = sharedFreeLists[sizeClass].pop();
+            if(ptr == MemoryUtils.NULL && sweepTerminatedCaches()) {
+                ptr = sharedFreeLists[sizeClass].pop();
+            }
+            if(ptr != MemoryUtils.NULL) {
+                sharedHits.increment();
+            } else {
+                misses.increment();
+                allocatedBytes.addAndGet(classBytes);
+                return MemoryUtils.wrap(MemoryUtils.malloc(classBytes), size);
+            }
+        }
+        retainedBytes.addAndGet(-classBytes);
+        return MemoryUtils.wrap(ptr, size);
+    }
+
+    public void release(ByteBuffer buffer) {
+        final long ptr = MemoryUtils.addressOf(buffer);
+        final int sizeClass = sizeClassOf(buffer.capacity());
+        releases.increment();
+        if(sizeClass < 0) {
+            MemoryUtils.free(ptr);
+            return;
+        }
+        final long classBytes = classSize(sizeClass);
+        if(!closed) {
+            if(usesThreadCache(classBytes) && threadCache.get().push(sizeClass, ptr)) {
+                retainedBytes.addAndGet(classBytes);
+                return;
+            }
+            if(retainedBytes.get() + classBytes <= maxRetainedBytes) {
+                retainedBytes.addAndGet(classBytes);
+                sharedFreeLists[sizeClass].push(ptr);
+                return;
+            }
+        }
+        discarded.increment();
+        allocatedBytes.addAndGet(-classBytes);
+        MemoryUtils.free(ptr);
+    }
+
+    public void flushThreadCache() {
+        threadCache.get().flush();
+    }
+
+    public void trim() {
+        for(int i = 0;i < SIZE_CLASSES;i++) {
+            final long classBytes = classSize(i);
+            long ptr;
+            while((ptr = sharedFreeLists[i].pop()) != MemoryUtils.NULL) {
+                retainedBytes.addAndGet(-classBytes);
+                allocatedBytes.addAndGet(-classBytes);
+                MemoryUtils.free(ptr);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        synchronized(threadCaches) {
+            for(ThreadCache cache : threadCaches) {
+                cache.flush();
+            }
+        }
+        trim();
+        final Stats stats = stats();
+        if(stats.outstanding() > 0) {
+            // After the trim every pooled block still allocated is held by a caller
+            Log.log("Buffer pool closed with " + stats.outstanding() + " buffers not released, holding "
+                    + stats.allocatedBytes() + " bytes of pooled size classes: " + stats);
+        }
+        resetStats();
+    }
+
+    /**
+     * Resets the hit, miss, release and discard counters. The allocated and retained bytes are accounting, not
+     * statistics, and are kept.
+     */
+    public void resetStats() {
+        threadCacheHits.reset();
+        sharedHits.reset();
+        misses.reset();
+        releases.reset();
+        discarded.reset();
+    }
+
+    public Stats stats() {
+        return new Stats(threadCacheHits.sum(), sharedHits.sum(), misses.sum(),
+                releases.sum(), discarded.sum(), allocatedBytes.get(), retainedBytes.get());
+    }
+
+    private boolean usesThreadCache(long classBytes) {
+        return classBytes <= threadCacheBytes && !Thread.currentThread().isVirtual();
+    }
+
+    private ThreadCache newThreadCache() {
+        ThreadCache cache = new ThreadCache(Thread.currentThread());
+        synchronized(threadCaches) {
+            threadCaches.add(cache);
+        }
+        return cache;
+    }
+
+    // Flushes the caches of terminated threads to the shared free lists and forgets them
+    private boolean sweepTerminatedCaches() {
+        boolean flushed = false;
+        synchronized(threadCaches) {
+            for(Iterator<ThreadCache> iterator = threadCaches.iterator();iterator.hasNext();) {
+                final ThreadCache cache = iterator.next();
+                if(cache.ownerTerminated()) {
+                    flushed |= cache.flush();
+                    iterator.remove();
+                }
+            }
+        }
+        return flushed;
+    }
+
+    private static int sizeClassOf(int size) {
+        if(size > MAX_SIZE_CLASS) {
+            return -1;
+        }
+        if(size <= MIN_SIZE_CLASS) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    private static long classSize(int sizeClass) {
+        return 1L << (sizeClass + MIN_SHIFT);
+    }
+
+    private static final class FreeList {
+
+        private long[] pointers;
+        private int count;
+
+        FreeList(int initialCapacity) {
+            pointers = new long[initialCapacity];
+        }
+
+        synchronized long pop() {
+            return count == 0 ? MemoryUtils.NULL : pointers[--count];
+        }
+
+        synchronized void push(long ptr) {
+            if(count == pointers.length) {
+                pointers = Arrays.copyOf(pointers, count * 2);
+            }
+            pointers[count++] = ptr;
+        }
+    }
+
+    // Only contended when close() flushes it from another thread
+    private final class ThreadCache {
+
+        private final long[][] pointers = new long[SIZE_CLASSES][];
+        private final int[] counts = new int[SIZE_CLASSES];
+        private final WeakReference<Thread> owner;
+
+        ThreadCache(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        boolean ownerTerminated() {
+            final Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+
+        synchronized long pop(int sizeClass) {
+            final int count = counts[sizeClass];
+            if(count == 0) {
+                return MemoryUtils.NULL;
+            }
+            counts[sizeClass] = count - 1;
+            return pointers[sizeClass][count - 1];
+        }
+
+        synchronized boolean push(int sizeClass, long ptr) {
+            long[] stack = pointers[sizeClass];
+            if(stack == null) {
+                stack = pointers[sizeClass] = new long[threadCacheSize];
+            }
+            final int count = counts[sizeClass];
+            if(count == stack.length || (count + 1) * classSize(sizeClass) > threadCacheBytes) {
+                return false;
+            }
+            stack[count] = ptr;
+            counts[sizeClass] = count + 1;
+            return true;
+        }
+
+        synchronized boolean flush() {
+            boolean flushed = false;
+            for(int i = 0;i < SIZE_CLASSES;i++) {
+                for(int j = 0;j < counts[i];j++) {
+                    sharedFreeLists[i].push(pointers[i][j]);
+                    flushed = true;
+                }
+                counts[i] = 0;
+            }
+            return flushed;
+        }
+    }
+
+    public static final class Stats {
+
+        private final long threadCacheHits;
+        private final long sharedHits;
+        private final long misses;
+        private final long releases;
+        private final long discarded;
+        private final long allocatedBytes;
+        private final long retainedBytes;
+
+        private Stats(long threadCacheHits, long sharedHits, long misses, long releases, long discarded,
+                      long allocatedBytes, long retainedBytes) {
+            this.threadCacheHits = threadCacheHits;
+            this.sharedHits = sharedHits;
+            this.misses = misses;
+            this.releases = releases;
+            this.discarded = discarded;
+            this.allocatedBytes = allocatedBytes;
+            this.retainedBytes = retainedBytes;
+        }
+
+        public long threadCacheHits() {
+            return threadCacheHits;
+        }
+
+        public long sharedHits() {
+            return sharedHits;
+        }
+
+        public long misses() {
+            return misses;
+        }
+
+        public long releases() {
+            return releases;
+        }
+
+        public long discarded() {
+            return discarded;
+        }
+
+        /**
+         * Bytes of pooled size classes obtained from malloc and not freed yet, whether held by callers or idle.
+         */
+        public long allocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * Bytes idle in the thread caches and shared free lists, ready to be handed out again.
+         */
+        public long retainedBytes() {
+            return retainedBytes;
+        }
+
+        public long acquires() {
+            return threadCacheHits + sharedHits + misses;
+        }
+
+        /**
+         * Buffers acquired and not released yet.
+         */
+        public long outstanding() {
+            return acquires() - releases;
+        }
+
+        public double hitRate() {
+            final long acquires = acquires();
+            return acquires == 0 ? 0.0 : (threadCacheHits + sharedHits) / (double) acquires;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "acquires=" + acquires() +
+                    ", threadCacheHits=" + threadCacheHits +
+                    ", sharedHits=" + sharedHits +
+                    ", misses=" + misses +
+                    ", hitRate=" + String.format("%.2f%%", hitRate() * 100) +
+                    ", releases=" + releases +
+                    ", outstanding=" + outstanding() +
+                    ", discarded=" + discarded +
+                    ", allocatedBytes=" + allocatedBytes +
+                    ", retainedBytes=" + retainedBytes +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package naitsirc98.bytebuffertest.alloc;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Epoch based reclamation of native memory. Readers wrap their accesses in {@link #enter()} / {@link Guard#close()},
+ * which publishes the global epoch they started in. A retired block is tagged with the epoch of its retirement and
+ * is only freed once every reader inside an epoch has moved past it, so a reader that obtained the block before it
+ * was retired can keep using it until it exits.
+ *
+ * Entering and exiting costs two stores to a thread local, padded slot and no shared writes, which is what makes
+ * it cheaper than reference counting on hot read paths. A thread that never exits blocks reclamation.
+ *
+ * The slot of a thread that has terminated is handed to the next thread that registers, so short lived (virtual)
+ * threads do not grow the set of slots every reclaim has to scan.
+ */
+public final class EpochReclaimer implements AutoCloseable {
+
+    private static final long QUIESCENT = 0;
+
+    private final AtomicLong globalEpoch = new AtomicLong(1);
+    private final List<Guard> guards = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Guard> threadGuard = ThreadLocal.withInitial(this::register);
+    private final ArrayDeque<long[]> retired = new ArrayDeque<>();
+    private long retiredBytes;
+    private long reclaimedCount;
+
+    public Guard enter() {
+        return threadGuard.get().enter();
+    }
+
+    /**
+     * Epoch slot of the calling thread. Hot read paths can keep it and call {@link Guard#enter()} directly,
+     * which skips the thread local lookup. The guard must only be used by the thread that obtained it.
+     */
+    public Guard guard() {
+        return threadGuard.get();
+    }
+
+    /**
+     * Schedules the block for release. The caller must have made it unreachable to new readers beforehand.
+     */
+    public void retire(long address) {
+        synchronized(retired) {
+            retired.addLast(new long[] {address, globalEpoch.getAndIncrement()});
+        }
+        reclaim();
+    }
+
+    /**
+     * Frees every retired block no reader can still see and returns how many were freed.
+     */
+    public int reclaim() {
+        final long safeEpoch = minActiveEpoch();
+        int freed = 0;
+        synchronized(retired) {
+            while(!retired.isEmpty() && retired.peekFirst()[1] < safeEpoch) {
+                MemoryUtils.free(retired.pollFirst()[0]);
+                ++freed;
+            }
+            reclaimedCount += freed;
+        }
+        return freed;
+    }
+
+    public int pending() {
+        synchronized(retired) {
+            return retired.size();
+        }
+    }
+
+    public long reclaimedCount() {
+        synchronized(retired) {
+            return reclaimedCount;
+        }
+    }
+
+    public long epoch() {
+        return globalEpoch.get();
+    }
+
+    /**
+     * Frees every retired block regardless of readers. Only call it once no thread can be inside an epoch.
+     */
+    @Override
+    public void close() {
+        synchronized(retired) {
+            while(!retired.isEmpty()) {
+                MemoryUtils.free(retired.pollFirst()[0]);
+                ++reclaimedCount;
+            }
+        }
+    }
+
+    private long minActiveEpoch() {
+        long min = Long.MAX_VALUE;
+        for(Guard guard : guards) {
+            final long epoch = guard.epoch;
+            if(epoch != QUIESCENT && epoch < min) {
+                min = epoch;
+            }
+        }
+        return min;
+    }
+
+    private Guard register() {
+        final Thread thread = Thread.currentThread();
+        synchronized(guards) {
+            for(Guard guard : guards) {
+                if(guard.ownerTerminated()) {
+                    guard.reset(thread);
+                    return guard;
+                }
+            }
+            final Guard guard = new Guard(globalEpoch, thread);
+            guards.add(guard);
+            return guard;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    abstract static class PaddedEpoch {
+        long p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15;
+    }
+
+    /**
+     * Per thread epoch slot, padded so readers of different threads never share a cache line. Closing the guard
+     * exits the epoch; nested enters of the same thread only exit on the outermost close.
+     */
+    public static final class Guard extends PaddedEpoch implements AutoCloseable {
+
+        volatile long epoch = QUIESCENT;
+        private final AtomicLong globalEpoch;
+        private WeakReference<Thread> owner;
+        private int depth;
+        @SuppressWarnings("unused")
+        private long q01, q02, q03, q04, q05, q06, q07, q08, q09, q10, q11, q12, q13, q14, q15;
+
+        private Guard(AtomicLong globalEpoch, Thread owner) {
+            this.globalEpoch = globalEpoch;
+            this.owner = new WeakReference<>(owner);
+        }
+
+        public Guard enter() {
+            if(depth++ == 0) {
+                epoch = globalEpoch.get();
+            }
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if(depth == 0) {
+                throw new IllegalStateException("Not inside an epoch");
+            }
+            if(--depth == 0) {
+                epoch = QUIESCENT;
+            }
+        }
+
+        private boolean ownerTerminated() {
+            final Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+
+        // A thread that terminated inside an epoch can no longer read, so its epoch is dropped as well
+        private void reset(Thread newOwner) {
+            owner = new WeakReference<>(newOwner);
+            depth = 0;
+            epoch = QUIESCENT;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package naitsirc98.bytebuffertest.alloc;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+
+import static naitsirc98.bytebuffertest.MemoryUtils.NULL;
+
+/**
+ * Native block with deterministic, reference counted release. The buffer starts with one reference owned by its
+ * creator; every other thread that uses it {@link #retain() retains} it first and {@link #release() releases} it
+ * when done. The last release frees the memory immediately, or retires it to an {@link EpochReclaimer} that frees
+ * it once no reader can still be inside it.
+ *
+ * Every accessor checks the buffer has not been released, so a use after release throws
+ * {@link BufferReleasedException} instead of touching freed memory. With an epoch reclaimer, readers may skip
+ * retain/release altogether and access the buffer inside an {@link EpochReclaimer#enter() epoch}: the memory
+ * stays valid until they exit, and accesses that start after the release throw.
+ */
+public final class ManagedBuffer implements AutoCloseable {
+
+    private static final VarHandle REF_COUNT;
+
+    public static ManagedBuffer allocate(long size) {
+        return new ManagedBuffer(MemoryUtils.calloc(size), size, null);
+    }
+
+    public static ManagedBuffer allocate(long size, EpochReclaimer reclaimer) {
+        return new ManagedBuffer(MemoryUtils.calloc(size), size, Objects.requireNonNull(reclaimer));
+    }
+
+    private final long size;
+    private final EpochReclaimer reclaimer;
+    private volatile long address;
+    @SuppressWarnings("unused") // Accessed through REF_COUNT
+    private volatile int refCount;
+
+    private ManagedBuffer(long address, long size, EpochReclaimer reclaimer) {
+        if(size < 0) {
+            throw new IllegalArgumentException("Size is negative: " + size);
+        }
+        this.address = address;
+        this.size = size;
+        this.reclaimer = reclaimer;
+        this.refCount = 1;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isReleased() {
+        return address == NULL;
+    }
+
+    public int refCount() {
+        return refCount;
+    }
+
+    /**
+     * Raw address for code that manages the lifetime itself, e.g. inside an epoch. Throws if released.
+     */
+    public long address() {
+        final long ptr = address;
+        if(ptr == NULL) {
+            throw released();
+        }
+        return ptr;
+    }
+
+    public ManagedBuffer retain() {
+        int count;
+        do {
+            count = refCount;
+            if(count <= 0) {
+                throw released();
+            }
+        } while(!REF_COUNT.compareAndSet(this, count, count + 1));
+        return this;
+    }
+
+    /**
+     * Drops one reference and returns true if it was the last one, in which case the native memory has been freed
+     * or retired to the reclaimer.
+     */
+    public boolean release() {
+        final int count = (int) REF_COUNT.getAndAdd(this, -1);
+        if(count > 1) {
+            return false;
+        }
+        if(count < 1) {
+            REF_COUNT.getAndAdd(this, 1);
+            throw released();
+        }
+        final long ptr = address;
+        address = NULL;
+        if(reclaimer != null) {
+            reclaimer.retire(ptr);
+        } else {
+            MemoryUtils.free(ptr);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    public byte getByte(long offset) {
+        return MemoryUtils.getByte(check(offset, Byte.BYTES), offset);
+    }
+
+    public void setByte(long offset, int value) {
+        MemoryUtils.setByte(check(offset, Byte.BYTES), offset, value);
+    }
+
+    public int getInt(long offset) {
+        return MemoryUtils.getInt(check(offset, Integer.BYTES), offset);
+    }
+
+    public void setInt(long offset, int value) {
+        MemoryUtils.setInt(check(offset, Integer.BYTES), offset, value);
+    }
+
+    public long getLong(long offset) {
+        return MemoryUtils.getLong(check(offset, Long.BYTES), offset);
+    }
+
+    public void setLong(long offset, long value) {
+        MemoryUtils.setLong(check(offset, Long.BYTES), offset, value);
+    }
+
+    public double getDouble(long offset) {
+        return MemoryUtils.getDouble(check(offset, Double.BYTES), offset);
+    }
+
+    public void setDouble(long offset, double value) {
+        MemoryUtils.setDouble(check(offset, Double.BYTES), offset, value);
+    }
+
+    public void copyTo(long offset, byte[] dest, int destOffset, int bytes) {
+        Objects.checkFromIndexSize(destOffset, bytes, dest.length);
+        MemoryUtils.memcpy(check(offset, bytes), offset, dest, destOffset, bytes);
+    }
+
+    public void copyFrom(byte[] src, int srcOffset, long offset, int bytes) {
+        Objects.checkFromIndexSize(srcOffset, bytes, src.length);
+        MemoryUtils.memcpy(src, srcOffset, check(offset, bytes), offset, bytes);
+    }
+
+    // Reads the address once, so the check and the access always see the same value
+    private long check(long offset, long bytes) {
+        final long ptr = address;
+        if(ptr == NULL) {
+            throw released();
+        }
+        Objects.checkFromIndexSize(offset, bytes, size);
+        return ptr;
+    }
+
+    private BufferReleasedException released() {
+        return new BufferReleasedException("Buffer of " + size + " bytes has been released");
+    }
+
+    @Override
+    public String toString() {
+        return "ManagedBuffer{address=0x" + Long.toHexString(address) + ", size=" + size + ", refCount=" + refCount + '}';
+    }
+
+    static {
+        try {
+            REF_COUNT = MethodHandles.lookup().findVarHandle(ManagedBuffer.class, "refCount", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package naitsirc98.bytebuffertest.alloc;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import java.util.Arrays;
+
+import static naitsirc98.bytebuffertest.MemoryUtils.NULL;
+import static naitsirc98.bytebuffertest.MemoryUtils.memset;
+
+/**
+ * Bump pointer allocator over large native chunks obtained with {@code malloc}.
+ * Slices are never freed individually: the whole arena is rewound with {@link #reset()},
+ * partially rewound by closing a {@link Scope}, or released with {@link #close()}.
+ *
+ * An arena is confined to the thread that created it.
+ */
+public final class MemoryArena implements AutoCloseable {
+
+    public static final long DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    public static final long DEFAULT_ALIGNMENT = 8;
+
+    private static final ThreadLocal<MemoryArena> THREAD_ARENA = ThreadLocal.withInitial(MemoryArena::new);
+
+    /**
+     * Arena of the calling thread. Its chunks are not released when the thread ends, close it before that;
+     * the next call on the same thread then starts a new arena.
+     */
+    public static MemoryArena ofThread() {
+        MemoryArena arena = THREAD_ARENA.get();
+        if(arena.closed) {
+            arena = new MemoryArena();
+            THREAD_ARENA.set(arena);
+        }
+        return arena;
+    }
+
+    private final Thread owner;
+    private final long chunkSize;
+    private long[] chunks;
+    private long[] chunkSizes;
+    private int chunkCount;
+    private int currentChunk;
+    private long cursor;
+    private long end;
+    private int scopeDepth;
+    private long allocatedBytes;
+    private boolean closed;
+
+    public MemoryArena() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public MemoryArena(long chunkSize) {
+        if(chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.owner = Thread.currentThread();
+        this.chunkSize = chunkSize;
+        this.chunks = new long[4];
+        this.chunkSizes = new long[4];
+        this.currentChunk = -1;
+        this.cursor = NULL;
+        this.end = NULL;
+    }
+
+    public long malloc(long bytes) {
+        return malloc(bytes, DEFAULT_ALIGNMENT);
+    }
+
+    public long malloc(long bytes, long alignment) {
+        checkState();
+        if(bytes < 0) {
+            throw new IllegalArgumentException("Size is negative: " + bytes);
+        }
+        if(alignment <= 0 || Long.bitCount(alignment) != 1) {
+            throw new IllegalArgumentException("Alignment must be a power of two: " + alignment);
+        }
+        long ptr = align(cursor, alignment);
+        if(cursor == NULL || ptr + bytes > end) {
+            nextChunk(bytes + alignment - 1);
+            ptr = align(cursor, alignment);
+        }
+        cursor = ptr + bytes;
+        allocatedBytes += bytes;
+        return ptr;
+    }
+
+    public long calloc(long bytes) {
+        return calloc(bytes, DEFAULT_ALIGNMENT);
+    }
+
+    public long calloc(long bytes, long alignment) {
+        final long ptr = malloc(bytes, alignment);
+        memset(ptr, bytes, 0);
+        return ptr;
+    }
+
+    public Scope push() {
+        checkState();
+        return new Scope(currentChunk, cursor, end, allocatedBytes, ++scopeDepth);
+    }
+
+    public void reset() {
+        checkState();
+        if(scopeDepth != 0) {
+            throw new IllegalStateException("Cannot reset arena with " + scopeDepth + " open scopes");
+        }
+        currentChunk = -1;
+        cursor = NULL;
+        end = NULL;
+        allocatedBytes = 0;
+    }
+
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long reservedBytes() {
+        long reserved = 0;
+        for(int i = 0;i < chunkCount;i++) {
+            reserved += chunkSizes[i];
+        }
+        return reserved;
+    }
+
+    public int chunkCount() {
+        return chunkCount;
+    }
+
+    @Override
+    public void close() {
+        checkState();
+        for(int i = 0;i < chunkCount;i++) {
+            MemoryUtils.free(chunks[i]);
+        }
+        chunkCount = 0;
+        currentChunk = -1;
+        cursor = end = NULL;
+        closed = true;
+    }
+
+    private void nextChunk(long minBytes) {
+        // Reuse chunks kept from before the last reset/scope close when they are big enough
+        while(++currentChunk < chunkCount) {
+            if(chunkSizes[currentChunk] >= minBytes) {
+                cursor = chunks[currentChunk];
+                end = cursor + chunkSizes[currentChunk];
+                return;
+            }
+        }
+        final long size = Math.max(chunkSize, minBytes);
+        if(chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            chunkSizes = Arrays.copyOf(chunkSizes, chunkCount * 2);
+        }
+        currentChunk = chunkCount++;
+        chunks[currentChunk] = MemoryUtils.malloc(size);
+        chunkSizes[currentChunk] = size;
+        cursor = chunks[currentChunk];
+        end = cursor + size;
+    }
+
+    private void checkState() {
+        if(closed) {
+            throw new IllegalStateException("Arena is closed");
+        }
+        if(Thread.currentThread() != owner) {
+            throw new IllegalStateException("Arena owned by " + owner.getName()
+                    + " accessed from " + Thread.currentThread().getName());
+        }
+    }
+
+    private static long align(long ptr, long alignment) {
+        return (ptr + alignment - 1) & -alignment;
+    }
+
+    /**
+     * Saved arena position. Closing it releases every slice allocated since it was pushed.
+     * Scopes must be closed in reverse order.
+     */
+    public final class Scope implements AutoCloseable {
+
+        private final int chunk;
+        private final long cursor;
+        private final long end;
+        private final long allocatedBytes;
+        private final int depth;
+
+        private Scope(int chunk, long cursor, long end, long allocatedBytes, int depth) {
+            this.chunk = chunk;
+            this.cursor = cursor;
+            this.end = end;
+            this.allocatedBytes = allocatedBytes;
+            this.depth = depth;
+        }
+
+        @Override
+        public void close() {
+            checkState();
+            if(scopeDepth != depth) {
+                throw new IllegalStateException("Scopes must be closed in LIFO order: closing "
+                        + depth + " but current is " + scopeDepth);
+            }
+            --scopeDepth;
+            currentChunk = chunk;
+            MemoryArena.this.cursor = cursor;
+            MemoryArena.this.end = end;
+            MemoryArena.this.allocatedBytes = allocatedBytes;
+        }
+    }
+}
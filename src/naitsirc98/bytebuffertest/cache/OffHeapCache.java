@@ -0,0 +1,557 @@
+package naitsirc98.bytebuffertest.cache;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import naitsirc98.bytebuffertest.collections.LongArray;
+import naitsirc98.bytebuffertest.collections.LongLongMap;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import static naitsirc98.bytebuffertest.MemoryUtils.NULL;
+
+/**
+ * Off-heap cache of long keys to byte values, stored in pre-allocated native segments that are never grown: the
+ * segments are the byte budget, and a full cache evicts instead of allocating.
+ *
+ * Keys are striped over the segments by hash and every segment has its own lock, index and storage. A segment is
+ * carved into slabs on demand and every slab into blocks of one power of two size class, from
+ * {@link #MIN_BLOCK_SIZE} to the slab size. An entry takes the smallest block that fits its 16 byte header and its
+ * value. When a class runs out of blocks and there are no slabs left, the victim is chosen by CLOCK among the blocks
+ * of that class: reads set a reference bit in the header and the hand clears it, so an entry is only evicted if it
+ * was not read since the hand last passed. A class left without blocks once every slab is in use takes a slab from
+ * the class with the most slabs, evicting all of its entries. Only classes with more than one slab give slabs away,
+ * so puts are rejected (see {@link Stats#rejected()}) when every class holds a single slab and the one needed has none.
+ *
+ * The index and block lists live in native memory too, outside of the budget, at about 32 bytes per block.
+ * Values are read in place through a {@link ValueReader}, holding the segment lock for the duration of the call.
+ */
+public final class OffHeapCache implements AutoCloseable {
+
+    public static final int MIN_BLOCK_SIZE = 64;
+    public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+    private static final int HEADER_BYTES = 16;
+    private static final int KEY_OFFSET = 0;
+    private static final int LENGTH_OFFSET = 8;
+    private static final int REFERENCED_OFFSET = 12;
+    private static final int SIZE_CLASS_OFFSET = 13;
+    private static final int FREE = -1;
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BLOCK_SIZE);
+
+    /**
+     * Allocates a cache of the given budget split into equally sized segments. The segments are released by
+     * {@link #close()}.
+     */
+    public static OffHeapCache allocate(long budgetBytes, int segments) {
+        if(segments <= 0) {
+            throw new IllegalArgumentException("Segment count must be positive: " + segments);
+        }
+        final long segmentBytes = budgetBytes / segments;
+        final long[] addresses = new long[segments];
+        for(int i = 0;i < segments;i++) {
+            addresses[i] = MemoryUtils.malloc(segmentBytes);
+        }
+        return new OffHeapCache(addresses, segmentBytes, true);
+    }
+
+    private final Segment[] segments;
+    private final long segmentBytes;
+    private final int slabSize;
+    private final boolean ownsMemory;
+    private volatile boolean closed;
+
+    /**
+     * Creates a cache over memory owned by the caller, such as the buffers of a BufferGroup. Every address must point
+     * to at least segmentBytes, and stay valid until the cache is closed.
+     */
+    public OffHeapCache(long[] segmentAddresses, long segmentBytes) {
+        this(segmentAddresses, segmentBytes, false);
+    }
+
+    private OffHeapCache(long[] segmentAddresses, long segmentBytes, boolean ownsMemory) {
+        if(segmentAddresses.length == 0) {
+            throw new IllegalArgumentException("No segments");
+        }
+        if(segmentBytes < MIN_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Segments of " + segmentBytes + " bytes cannot hold a single block");
+        }
+        this.segmentBytes = segmentBytes;
+        this.slabSize = (int) Math.min(DEFAULT_SLAB_SIZE, Long.highestOneBit(segmentBytes));
+        this.ownsMemory = ownsMemory;
+        this.segments = new Segment[segmentAddresses.length];
+        for(int i = 0;i < segments.length;i++) {
+            segments[i] = new Segment(segmentAddresses[i]);
+        }
+    }
+
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    public long budgetBytes() {
+        return segmentBytes * segments.length;
+    }
+
+    /**
+     * Largest value that fits in a block.
+     */
+    public int maxValueBytes() {
+        return slabSize - HEADER_BYTES;
+    }
+
+    /**
+     * Passes an in place view of the value to the reader and returns its result, or the missing value if the key is
+     * not cached.
+     */
+    public long read(long key, ValueReader reader, long missing) {
+        return segment(key).read(key, reader, missing);
+    }
+
+    /**
+     * Copies the value into dest and returns its length, or -1 if the key is not cached or the value does not fit.
+     */
+    public int get(long key, byte[] dest, int destOffset) {
+        Objects.checkIndex(destOffset, dest.length + 1);
+        return segment(key).get(key, dest, destOffset);
+    }
+
+    public boolean contains(long key) {
+        return segment(key).contains(key);
+    }
+
+    /**
+     * Stores a copy of the value, evicting other entries of its size class if needed. Returns false if the value is
+     * too large or its size class has no blocks in the segment of the key.
+     */
+    public boolean put(long key, byte[] value, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, value.length);
+        return segment(key).put(key, value, offset, NULL, length);
+    }
+
+    /**
+     * Stores a copy of the remaining bytes of the value, direct or not. The position of the value is not changed.
+     */
+    public boolean put(long key, ByteBuffer value) {
+        if(value.isDirect()) {
+            return segment(key).put(key, null, 0, MemoryUtils.addressOf(value) + value.position(), value.remaining());
+        }
+        if(!value.hasArray()) {
+            throw new IllegalArgumentException("Read only heap buffers are not supported");
+        }
+        return segment(key).put(key, value.array(), value.arrayOffset() + value.position(), NULL, value.remaining());
+    }
+
+    public boolean remove(long key) {
+        return segment(key).remove(key);
+    }
+
+    public void clear() {
+        for(Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public Stats stats() {
+        long hits = 0;
+        long misses = 0;
+        long puts = 0;
+        long evictions = 0;
+        long rejected = 0;
+        long entries = 0;
+        long usedBytes = 0;
+        long valueBytes = 0;
+        long indexBytes = 0;
+        for(Segment segment : segments) {
+            synchronized(segment) {
+                hits += segment.hits;
+                misses += segment.misses;
+                puts += segment.puts;
+                evictions += segment.evictions;
+                rejected += segment.rejected;
+                entries += segment.index.size();
+                usedBytes += segment.usedBytes;
+                valueBytes += segment.valueBytes;
+                indexBytes += segment.indexBytes();
+            }
+        }
+        return new Stats(hits, misses, puts, evictions, rejected, entries, usedBytes, valueBytes, budgetBytes(), indexBytes);
+    }
+
+    @Override
+    public void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        for(Segment segment : segments) {
+            segment.close();
+        }
+    }
+
+    // Not the fmix64 of LongLongMap: the segment must not be picked by the same bits that pick the index slot
+    private Segment segment(long key) {
+        if(closed) {
+            throw new IllegalStateException("Cache is closed");
+        }
+        key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+        key ^= key >>> 31;
+        return segments[(int) (((key >>> 32) * segments.length) >>> 32)];
+    }
+
+    private int sizeClassOf(long entryBytes) {
+        if(entryBytes > slabSize) {
+            return -1;
+        }
+        if(entryBytes <= MIN_BLOCK_SIZE) {
+            return 0;
+        }
+        return 64 - Long.numberOfLeadingZeros(entryBytes - 1) - MIN_SHIFT;
+    }
+
+    private static long classSize(int sizeClass) {
+        return 1L << (sizeClass + MIN_SHIFT);
+    }
+
+    private final class Segment {
+
+        private final long base;
+        private final int slabCount;
+        private final LongLongMap index = new LongLongMap();
+        private final LongArray[] blocks;
+        private final LongArray[] free;
+        private final long[] hands;
+        private int usedSlabs;
+        private long usedBytes;
+        private long valueBytes;
+        private long hits;
+        private long misses;
+        private long puts;
+        private long evictions;
+        private long rejected;
+
+        Segment(long base) {
+            this.base = base;
+            this.slabCount = (int) (segmentBytes / slabSize);
+            final int sizeClasses = sizeClassOf(slabSize) + 1;
+            this.blocks = new LongArray[sizeClasses];
+            this.free = new LongArray[sizeClasses];
+            this.hands = new long[sizeClasses];
+        }
+
+        synchronized long read(long key, ValueReader reader, long missing) {
+            final long block = index.get(key);
+            if(block == NULL) {
+                ++misses;
+                return missing;
+            }
+            ++hits;
+            MemoryUtils.setByte(block, REFERENCED_OFFSET, 1);
+            final int length = MemoryUtils.getInt(block, LENGTH_OFFSET);
+            return reader.read(MemoryUtils.wrap(block + HEADER_BYTES, length));
+        }
+
+        synchronized int get(long key, byte[] dest, int destOffset) {
+            final long block = index.get(key);
+            if(block == NULL) {
+                ++misses;
+                return -1;
+            }
+            ++hits;
+            MemoryUtils.setByte(block, REFERENCED_OFFSET, 1);
+            final int length = MemoryUtils.getInt(block, LENGTH_OFFSET);
+            if(length > dest.length - destOffset) {
+                return -1;
+            }
+            MemoryUtils.memcpy(block, HEADER_BYTES, dest, destOffset, length);
+            return length;
+        }
+
+        synchronized boolean contains(long key) {
+            return index.containsKey(key);
+        }
+
+        synchronized boolean put(long key, byte[] array, int offset, long address, int length) {
+            final int sizeClass = sizeClassOf((long) HEADER_BYTES + length);
+            if(sizeClass < 0) {
+                ++rejected;
+                return false;
+            }
+            long block = index.get(key);
+            // An update counts as an access, a new entry has to be read before the hand comes by to stay
+            final boolean referenced = block != NULL;
+            if(block != NULL && MemoryUtils.getByte(block, SIZE_CLASS_OFFSET) != sizeClass) {
+                index.remove(key);
+                release(block);
+                block = NULL;
+            }
+            if(block == NULL) {
+                block = takeBlock(sizeClass);
+                if(block == NULL) {
+                    ++rejected;
+                    return false;
+                }
+                MemoryUtils.setLong(block, KEY_OFFSET, key);
+                MemoryUtils.setByte(block, SIZE_CLASS_OFFSET, sizeClass);
+                index.put(key, block);
+                usedBytes += classSize(sizeClass);
+            } else {
+                valueBytes -= MemoryUtils.getInt(block, LENGTH_OFFSET);
+            }
+            MemoryUtils.setInt(block, LENGTH_OFFSET, length);
+            MemoryUtils.setByte(block, REFERENCED_OFFSET, referenced ? 1 : 0);
+            if(array != null) {
+                MemoryUtils.memcpy(array, offset, block, HEADER_BYTES, length);
+            } else {
+                MemoryUtils.memcpy(address, block + HEADER_BYTES, length);
+            }
+            valueBytes += length;
+            ++puts;
+            return true;
+        }
+
+        synchronized boolean remove(long key) {
+            final long block = index.remove(key);
+            if(block == NULL) {
+                return false;
+            }
+            release(block);
+            return true;
+        }
+
+        synchronized void clear() {
+            index.forEach((key, block) -> release(block));
+            index.clear();
+        }
+
+        synchronized long indexBytes() {
+            long bytes = index.memoryUsage();
+            for(int i = 0;i < blocks.length;i++) {
+                if(blocks[i] != null) {
+                    bytes += blocks[i].memoryUsage() + free[i].memoryUsage();
+                }
+            }
+            return bytes;
+        }
+
+        synchronized void close() {
+            index.close();
+            for(int i = 0;i < blocks.length;i++) {
+                if(blocks[i] != null) {
+                    blocks[i].close();
+                    free[i].close();
+                }
+            }
+            if(ownsMemory) {
+                MemoryUtils.free(base);
+            }
+        }
+
+        private void release(long block) {
+            final int sizeClass = MemoryUtils.getByte(block, SIZE_CLASS_OFFSET);
+            usedBytes -= classSize(sizeClass);
+            valueBytes -= MemoryUtils.getInt(block, LENGTH_OFFSET);
+            MemoryUtils.setInt(block, LENGTH_OFFSET, FREE);
+            free[sizeClass].add(block);
+        }
+
+        private long takeBlock(int sizeClass) {
+            if(free[sizeClass] != null && !free[sizeClass].isEmpty()) {
+                return free[sizeClass].removeLast();
+            }
+            if(usedSlabs < slabCount) {
+                return carveSlab(sizeClass, base + (long) usedSlabs++ * slabSize);
+            }
+            if(blocks[sizeClass] == null || blocks[sizeClass].isEmpty()) {
+                final long slab = reclaimSlab(sizeClass);
+                return slab != NULL ? carveSlab(sizeClass, slab) : NULL;
+            }
+            return evict(sizeClass);
+        }
+
+        // Splits a slab into blocks of the class. The first one is returned, the rest go to the free list
+        private long carveSlab(int sizeClass, long slab) {
+            if(blocks[sizeClass] == null) {
+                blocks[sizeClass] = new LongArray();
+                free[sizeClass] = new LongArray();
+            }
+            final long blockSize = classSize(sizeClass);
+            for(long block = slab + slabSize - blockSize;block >= slab;block -= blockSize) {
+                MemoryUtils.setInt(block, LENGTH_OFFSET, FREE);
+                blocks[sizeClass].add(block);
+                if(block != slab) {
+                    free[sizeClass].add(block);
+                }
+            }
+            return slab;
+        }
+
+        // Takes the slab under the hand of the class with the most slabs, evicting its entries
+        private long reclaimSlab(int sizeClass) {
+            int victim = -1;
+            long victimSlabs = 1;
+            for(int i = 0;i < blocks.length;i++) {
+                final long slabs = blocks[i] == null || i == sizeClass ? 0 : blocks[i].size() * classSize(i) / slabSize;
+                if(slabs > victimSlabs) {
+                    victim = i;
+                    victimSlabs = slabs;
+                }
+            }
+            if(victim < 0) {
+                return NULL;
+            }
+            final long slab = base + (blocks[victim].get(hands[victim]) - base) / slabSize * slabSize;
+            for(long block = slab;block < slab + slabSize;block += classSize(victim)) {
+                final int length = MemoryUtils.getInt(block, LENGTH_OFFSET);
+                if(length != FREE) {
+                    index.remove(MemoryUtils.getLong(block, KEY_OFFSET));
+                    usedBytes -= classSize(victim);
+                    valueBytes -= length;
+                    ++evictions;
+                }
+            }
+            removeSlab(blocks[victim], slab);
+            removeSlab(free[victim], slab);
+            if(hands[victim] >= blocks[victim].size()) {
+                hands[victim] = 0;
+            }
+            return slab;
+        }
+
+        private void removeSlab(LongArray classBlocks, long slab) {
+            long kept = 0;
+            for(long i = 0;i < classBlocks.size();i++) {
+                final long block = classBlocks.get(i);
+                if(block < slab || block >= slab + slabSize) {
+                    classBlocks.set(kept++, block);
+                }
+            }
+            while(classBlocks.size() > kept) {
+                classBlocks.removeLast();
+            }
+        }
+
+        // Every block of the class is in use when this is called, so the hand finds a victim within one turn
+        private long evict(int sizeClass) {
+            final LongArray classBlocks = blocks[sizeClass];
+            if(classBlocks == null) {
+                return NULL;
+            }
+            final long count = classBlocks.size();
+            while(true) {
+                final long block = classBlocks.get(hands[sizeClass]);
+                hands[sizeClass] = hands[sizeClass] + 1 == count ? 0 : hands[sizeClass] + 1;
+                if(MemoryUtils.getByte(block, REFERENCED_OFFSET) != 0) {
+                    MemoryUtils.setByte(block, REFERENCED_OFFSET, 0);
+                    continue;
+                }
+                index.remove(MemoryUtils.getLong(block, KEY_OFFSET));
+                usedBytes -= classSize(sizeClass);
+                valueBytes -= MemoryUtils.getInt(block, LENGTH_OFFSET);
+                ++evictions;
+                return block;
+            }
+        }
+    }
+
+    public static final class Stats {
+
+        private final long hits;
+        private final long misses;
+        private final long puts;
+        private final long evictions;
+        private final long rejected;
+        private final long entries;
+        private final long usedBytes;
+        private final long valueBytes;
+        private final long budgetBytes;
+        private final long indexBytes;
+
+        private Stats(long hits, long misses, long puts, long evictions, long rejected, long entries, long usedBytes,
+                      long valueBytes, long budgetBytes, long indexBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.puts = puts;
+            this.evictions = evictions;
+            this.rejected = rejected;
+            this.entries = entries;
+            this.usedBytes = usedBytes;
+            this.valueBytes = valueBytes;
+            this.budgetBytes = budgetBytes;
+            this.indexBytes = indexBytes;
+        }
+
+        public long hits() {
+            return hits;
+        }
+
+        public long misses() {
+            return misses;
+        }
+
+        public long puts() {
+            return puts;
+        }
+
+        public long evictions() {
+            return evictions;
+        }
+
+        public long rejected() {
+            return rejected;
+        }
+
+        public long entries() {
+            return entries;
+        }
+
+        /**
+         * Bytes of the blocks holding entries, headers and size class rounding included.
+         */
+        public long usedBytes() {
+            return usedBytes;
+        }
+
+        public long valueBytes() {
+            return valueBytes;
+        }
+
+        public long budgetBytes() {
+            return budgetBytes;
+        }
+
+        public long indexBytes() {
+            return indexBytes;
+        }
+
+        public double hitRate() {
+            final long reads = hits + misses;
+            return reads == 0 ? 0.0 : hits / (double) reads;
+        }
+
+        /**
+         * Evictions per successful put.
+         */
+        public double evictionRate() {
+            return puts == 0 ? 0.0 : evictions / (double) puts;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", hitRate=" + String.format("%.2f%%", hitRate() * 100) +
+                    ", puts=" + puts +
+                    ", evictions=" + evictions +
+                    ", evictionRate=" + String.format("%.2f%%", evictionRate() * 100) +
+                    ", rejected=" + rejected +
+                    ", entries=" + entries +
+                    ", usedBytes=" + usedBytes +
+                    ", valueBytes=" + valueBytes +
+                    ", budgetBytes=" + budgetBytes +
+                    ", indexBytes=" + indexBytes +
+                    '}';
+        }
+    }
+}
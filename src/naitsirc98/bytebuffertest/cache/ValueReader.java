@@ -0,0 +1,13 @@
+package naitsirc98.bytebuffertest.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a cached value in place. The view is only valid during the call: its memory may hold another entry as soon
+ * as the call returns, so it must not be written, kept or handed to another thread.
+ */
+@FunctionalInterface
+public interface ValueReader {
+
+    long read(ByteBuffer value);
+}
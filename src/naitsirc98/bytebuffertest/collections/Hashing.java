@@ -0,0 +1,30 @@
+package naitsirc98.bytebuffertest.collections;
+
+final class Hashing {
+
+    static final long DEFAULT_EXPECTED_SIZE = 16;
+    static final double LOAD_FACTOR = 0.75;
+
+    // Murmur3 fmix64 finalizer. Keys are often sequential ids, which would cluster without mixing
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    static long tableSize(long expectedSize) {
+        if(expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size is negative: " + expectedSize);
+        }
+        final long minSize = Math.max((long) Math.ceil(expectedSize / LOAD_FACTOR), 2);
+        if(minSize > 1L << 62) {
+            throw new IllegalArgumentException("Expected size too large: " + expectedSize);
+        }
+        return Long.highestOneBit(minSize - 1) << 1;
+    }
+
+    private Hashing() {}
+}
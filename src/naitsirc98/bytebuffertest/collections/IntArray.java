@@ -0,0 +1,146 @@
+package naitsirc98.bytebuffertest.collections;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+import static naitsirc98.bytebuffertest.MemoryUtils.NULL;
+
+/**
+ * Growable array of ints in a single native block, grown with {@code realloc}. Indices are longs, so the
+ * array is not limited to {@link Integer#MAX_VALUE} elements.
+ *
+ * Not thread safe. The native block is only released by {@link #close()}.
+ */
+public final class IntArray implements AutoCloseable {
+
+    private static final long DEFAULT_CAPACITY = 16;
+
+    private long address;
+    private long capacity;
+    private long size;
+
+    public IntArray() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntArray(long initialCapacity) {
+        if(initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity is negative: " + initialCapacity);
+        }
+        capacity = Math.max(initialCapacity, 1);
+        address = MemoryUtils.malloc(capacity * Integer.BYTES);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public long address() {
+        return address;
+    }
+
+    public long memoryUsage() {
+        return capacity * Integer.BYTES;
+    }
+
+    public int get(long index) {
+        checkState();
+        Objects.checkIndex(index, size);
+        return MemoryUtils.getInt(address, index * Integer.BYTES);
+    }
+
+    public void set(long index, int value) {
+        checkState();
+        Objects.checkIndex(index, size);
+        MemoryUtils.setInt(address, index * Integer.BYTES, value);
+    }
+
+    public void add(int value) {
+        if(size == capacity) {
+            grow(size + 1);
+        }
+        MemoryUtils.setInt(address, size++ * Integer.BYTES, value);
+    }
+
+    public int removeLast() {
+        checkState();
+        if(size == 0) {
+            throw new IllegalStateException("Array is empty");
+        }
+        return MemoryUtils.getInt(address, --size * Integer.BYTES);
+    }
+
+    public long indexOf(int value) {
+        checkState();
+        for(long i = 0;i < size;i++) {
+            if(MemoryUtils.getInt(address, i * Integer.BYTES) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public void forEach(IntConsumer consumer) {
+        checkState();
+        for(long i = 0;i < size;i++) {
+            consumer.accept(MemoryUtils.getInt(address, i * Integer.BYTES));
+        }
+    }
+
+    public void ensureCapacity(long minCapacity) {
+        if(minCapacity > capacity) {
+            grow(minCapacity);
+        }
+    }
+
+    public void clear() {
+        checkState();
+        size = 0;
+    }
+
+    public void trimToSize() {
+        checkState();
+        if(size != capacity) {
+            capacity = Math.max(size, 1);
+            address = MemoryUtils.realloc(address, capacity * Integer.BYTES);
+        }
+    }
+
+    @Override
+    public void close() {
+        final long ptr = address;
+        address = NULL;
+        size = capacity = 0;
+        if(ptr != NULL) {
+            MemoryUtils.free(ptr);
+        }
+    }
+
+    private void grow(long minCapacity) {
+        checkState();
+        final long newCapacity = Math.max(minCapacity, capacity + (capacity >> 1));
+        address = MemoryUtils.realloc(address, Math.multiplyExact(newCapacity, (long) Integer.BYTES));
+        capacity = newCapacity;
+    }
+
+    private void checkState() {
+        if(address == NULL) {
+            throw new IllegalStateException("Array is closed");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IntArray{size=" + size + ", capacity=" + capacity + '}';
+    }
+}
@@ -0,0 +1,142 @@
+package naitsirc98.bytebuffertest.collections;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import java.util.Objects;
+import java.util.function.LongConsumer;
+
+import static naitsirc98.bytebuffertest.MemoryUtils.NULL;
+
+/**
+ * Growable array of longs in a single native block, grown with {@code realloc}. Indices are longs, so the
+ * array is not limited to {@link Integer#MAX_VALUE} elements.
+ *
+ * Not thread safe. The native block is only released by {@link #close()}.
+ */
+public final class LongArray implements AutoCloseable {
+
+    private static final long DEFAULT_CAPACITY = 16;
+
+    private long address;
+    private long capacity;
+    private long size;
+
+    public LongArray() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongArray(long initialCapacity) {
+        if(initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity is negative: " + initialCapacity);
+        }
+        capacity = Math.max(initialCapacity, 1);
+        address = MemoryUtils.malloc(capacity * Long.BYTES);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public long address() {
+        return address;
+    }
+
+    public long memoryUsage() {
+        return capacity * Long.BYTES;
+    }
+
+    public long get(long index) {
+        checkState();
+        Objects.checkIndex(index, size);
+        return MemoryUtils.getLong(address, index * Long.BYTES);
+    }
+
+    public void set(long index, long value) {
+        checkState();
+        Objects.checkIndex(index, size);
+        MemoryUtils.setLong(address, index * Long.BYTES, value);
+    }
+
+    public void add(long value) {
+        if(size == capacity) {
+            grow(size + 1);
+        }
+        MemoryUtils.setLong(address, size++ * Long.BYTES, value);
+    }
+
+    public long removeLast() {
+        checkState();
+        if(size == 0) {
+            throw new IllegalStateException("Array is empty");
+        }
+        return MemoryUtils.getLong(address, --size * Long.BYTES);
+    }
+
+    public long indexOf(long value) {
+        checkState();
+        final long offset = MemoryUtils.indexOfLong(address, size * Long.BYTES, value);
+        return offset < 0 ? -1 : offset / Long.BYTES;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        checkState();
+        for(long i = 0;i < size;i++) {
+            consumer.accept(MemoryUtils.getLong(address, i * Long.BYTES));
+        }
+    }
+
+    public void ensureCapacity(long minCapacity) {
+        if(minCapacity > capacity) {
+            grow(minCapacity);
+        }
+    }
+
+    public void clear() {
+        checkState();
+        size = 0;
+    }
+
+    public void trimToSize() {
+        checkState();
+        if(size != capacity) {
+            capacity = Math.max(size, 1);
+            address = MemoryUtils.realloc(address, capacity * Long.BYTES);
+        }
+    }
+
+    @Override
+    public void close() {
+        final long ptr = address;
+        address = NULL;
+        size = capacity = 0;
+        if(ptr != NULL) {
+            MemoryUtils.free(ptr);
+        }
+    }
+
+    private void grow(long minCapacity) {
+        checkState();
+        final long newCapacity = Math.max(minCapacity, capacity + (capacity >> 1));
+        address = MemoryUtils.realloc(address, Math.multiplyExact(newCapacity, (long) Long.BYTES));
+        capacity = newCapacity;
+    }
+
+    private void checkState() {
+        if(address == NULL) {
+            throw new IllegalStateException("Array is closed");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LongArray{size=" + size + ", capacity=" + capacity + '}';
+    }
+}
@@ -0,0 +1,7 @@
+package naitsirc98.bytebuffertest.collections;
+
+@FunctionalInterface
+public interface LongIntConsumer {
+
+    void accept(long key, int value);
+}
@@ -0,0 +1,276 @@
+package naitsirc98.bytebuffertest.collections;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import static naitsirc98.bytebuffertest.MemoryUtils.NULL;
+
+/**
+ * Open addressing long to int hash map. Keys and values live in the same native block, keys first and values
+ * after them, which keeps 12 bytes per slot without unaligned entries. Probing, removal and the handling of key 0
+ * work as in {@link LongLongMap}.
+ *
+ * Lookups of absent keys return the missing value given at construction (0 by default).
+ * Not thread safe. The native table is only released by {@link #close()}.
+ */
+public final class LongIntMap implements AutoCloseable {
+
+    private static final long EMPTY = 0;
+    private static final int SLOT_BYTES = Long.BYTES + Integer.BYTES;
+
+    private final int missingValue;
+    private long keys;
+    private long values;
+    private long capacity;
+    private long mask;
+    private long size;
+    private long resizeThreshold;
+    private boolean hasEmptyKey;
+    private int emptyKeyValue;
+
+    public LongIntMap() {
+        this(Hashing.DEFAULT_EXPECTED_SIZE, 0);
+    }
+
+    public LongIntMap(long expectedSize) {
+        this(expectedSize, 0);
+    }
+
+    public LongIntMap(long expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        allocateTable(Hashing.tableSize(expectedSize));
+    }
+
+    public long size() {
+        return size + (hasEmptyKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public int missingValue() {
+        return missingValue;
+    }
+
+    public long memoryUsage() {
+        return capacity * SLOT_BYTES;
+    }
+
+    public int get(long key) {
+        checkState();
+        if(key == EMPTY) {
+            return hasEmptyKey ? emptyKeyValue : missingValue;
+        }
+        for(long slot = Hashing.mix(key) & mask;;slot = (slot + 1) & mask) {
+            final long current = keyAt(slot);
+            if(current == key) {
+                return valueAt(slot);
+            }
+            if(current == EMPTY) {
+                return missingValue;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        checkState();
+        if(key == EMPTY) {
+            return hasEmptyKey;
+        }
+        return findSlot(key) >= 0;
+    }
+
+    public int put(long key, int value) {
+        checkState();
+        if(key == EMPTY) {
+            final int previous = hasEmptyKey ? emptyKeyValue : missingValue;
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return previous;
+        }
+        for(long slot = Hashing.mix(key) & mask;;slot = (slot + 1) & mask) {
+            final long current = keyAt(slot);
+            if(current == key) {
+                final int previous = valueAt(slot);
+                setValue(slot, value);
+                return previous;
+            }
+            if(current == EMPTY) {
+                setKey(slot, key);
+                setValue(slot, value);
+                if(++size > resizeThreshold) {
+                    rehash(capacity << 1);
+                }
+                return missingValue;
+            }
+        }
+    }
+
+    /**
+     * Adds delta to the value of the key, starting from the missing value if absent, and returns the new value.
+     */
+    public int addTo(long key, int delta) {
+        checkState();
+        if(key == EMPTY) {
+            emptyKeyValue = (hasEmptyKey ? emptyKeyValue : missingValue) + delta;
+            hasEmptyKey = true;
+            return emptyKeyValue;
+        }
+        for(long slot = Hashing.mix(key) & mask;;slot = (slot + 1) & mask) {
+            final long current = keyAt(slot);
+            if(current == key) {
+                final int value = valueAt(slot) + delta;
+                setValue(slot, value);
+                return value;
+            }
+            if(current == EMPTY) {
+                final int value = missingValue + delta;
+                setKey(slot, key);
+                setValue(slot, value);
+                if(++size > resizeThreshold) {
+                    rehash(capacity << 1);
+                }
+                return value;
+            }
+        }
+    }
+
+    public int remove(long key) {
+        checkState();
+        if(key == EMPTY) {
+            final int previous = hasEmptyKey ? emptyKeyValue : missingValue;
+            hasEmptyKey = false;
+            return previous;
+        }
+        final long slot = findSlot(key);
+        if(slot < 0) {
+            return missingValue;
+        }
+        final int previous = valueAt(slot);
+        shiftBack(slot);
+        --size;
+        return previous;
+    }
+
+    public void forEach(LongIntConsumer consumer) {
+        checkState();
+        if(hasEmptyKey) {
+            consumer.accept(EMPTY, emptyKeyValue);
+        }
+        for(long slot = 0;slot < capacity;slot++) {
+            final long key = keyAt(slot);
+            if(key != EMPTY) {
+                consumer.accept(key, valueAt(slot));
+            }
+        }
+    }
+
+    public void clear() {
+        checkState();
+        MemoryUtils.memset(keys, capacity * Long.BYTES, 0);
+        size = 0;
+        hasEmptyKey = false;
+    }
+
+    @Override
+    public void close() {
+        final long ptr = keys;
+        keys = values = NULL;
+        size = capacity = mask = resizeThreshold = 0;
+        hasEmptyKey = false;
+        if(ptr != NULL) {
+            MemoryUtils.free(ptr);
+        }
+    }
+
+    private long keyAt(long slot) {
+        return MemoryUtils.getLong(keys, slot * Long.BYTES);
+    }
+
+    private void setKey(long slot, long key) {
+        MemoryUtils.setLong(keys, slot * Long.BYTES, key);
+    }
+
+    private int valueAt(long slot) {
+        return MemoryUtils.getInt(values, slot * Integer.BYTES);
+    }
+
+    private void setValue(long slot, int value) {
+        MemoryUtils.setInt(values, slot * Integer.BYTES, value);
+    }
+
+    private long findSlot(long key) {
+        for(long slot = Hashing.mix(key) & mask;;slot = (slot + 1) & mask) {
+            final long current = keyAt(slot);
+            if(current == key) {
+                return slot;
+            }
+            if(current == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    // Moves back every following entry of the probe run that would no longer be reachable from its home slot
+    private void shiftBack(long hole) {
+        for(long slot = (hole + 1) & mask;;slot = (slot + 1) & mask) {
+            final long key = keyAt(slot);
+            if(key == EMPTY) {
+                break;
+            }
+            final long home = Hashing.mix(key) & mask;
+            if(((slot - home) & mask) >= ((slot - hole) & mask)) {
+                setKey(hole, key);
+                setValue(hole, valueAt(slot));
+                hole = slot;
+            }
+        }
+        setKey(hole, EMPTY);
+    }
+
+    private void rehash(long newCapacity) {
+        final long oldKeys = keys;
+        final long oldValues = values;
+        final long oldCapacity = capacity;
+        allocateTable(newCapacity);
+        for(long oldSlot = 0;oldSlot < oldCapacity;oldSlot++) {
+            final long key = MemoryUtils.getLong(oldKeys, oldSlot * Long.BYTES);
+            if(key == EMPTY) {
+                continue;
+            }
+            long slot = Hashing.mix(key) & mask;
+            while(keyAt(slot) != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            setKey(slot, key);
+            setValue(slot, MemoryUtils.getInt(oldValues, oldSlot * Integer.BYTES));
+        }
+        MemoryUtils.free(oldKeys);
+    }
+
+    private void allocateTable(long newCapacity) {
+        final long block = MemoryUtils.malloc(Math.multiplyExact(newCapacity, (long) SLOT_BYTES));
+        // Only the keys need zeroing: a value is never read before its key is written
+        MemoryUtils.memset(block, newCapacity * Long.BYTES, 0);
+        keys = block;
+        values = block + newCapacity * Long.BYTES;
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        resizeThreshold = (long) (newCapacity * Hashing.LOAD_FACTOR);
+    }
+
+    private void checkState() {
+        if(keys == NULL) {
+            throw new IllegalStateException("Map is closed");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LongIntMap{size=" + size() + ", capacity=" + capacity + '}';
+    }
+}
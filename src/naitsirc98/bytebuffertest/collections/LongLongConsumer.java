@@ -0,0 +1,7 @@
+package naitsirc98.bytebuffertest.collections;
+
+@FunctionalInterface
+public interface LongLongConsumer {
+
+    void accept(long key, long value);
+}
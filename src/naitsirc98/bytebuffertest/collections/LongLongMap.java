@@ -0,0 +1,262 @@
+package naitsirc98.bytebuffertest.collections;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import static naitsirc98.bytebuffertest.MemoryUtils.NULL;
+
+/**
+ * Open addressing long to long hash map in a single native table of interleaved key/value pairs, so a lookup
+ * usually touches one cache line. Collisions are resolved with linear probing and removals shift the following
+ * entries back, so there are no tombstones. Key 0 marks empty slots and is kept outside of the table.
+ *
+ * Lookups of absent keys return the missing value given at construction (0 by default).
+ * Not thread safe. The native table is only released by {@link #close()}.
+ */
+public final class LongLongMap implements AutoCloseable {
+
+    private static final long EMPTY = 0;
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    private final long missingValue;
+    private long table;
+    private long capacity;
+    private long mask;
+    private long size;
+    private long resizeThreshold;
+    private boolean hasEmptyKey;
+    private long emptyKeyValue;
+
+    public LongLongMap() {
+        this(Hashing.DEFAULT_EXPECTED_SIZE, 0);
+    }
+
+    public LongLongMap(long expectedSize) {
+        this(expectedSize, 0);
+    }
+
+    public LongLongMap(long expectedSize, long missingValue) {
+        this.missingValue = missingValue;
+        allocateTable(Hashing.tableSize(expectedSize));
+    }
+
+    public long size() {
+        return size + (hasEmptyKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public long missingValue() {
+        return missingValue;
+    }
+
+    public long memoryUsage() {
+        return capacity * ENTRY_BYTES;
+    }
+
+    public long get(long key) {
+        checkState();
+        if(key == EMPTY) {
+            return hasEmptyKey ? emptyKeyValue : missingValue;
+        }
+        for(long slot = Hashing.mix(key) & mask;;slot = (slot + 1) & mask) {
+            final long entry = table + slot * ENTRY_BYTES;
+            final long current = MemoryUtils.getLong(entry, 0);
+            if(current == key) {
+                return MemoryUtils.getLong(entry, Long.BYTES);
+            }
+            if(current == EMPTY) {
+                return missingValue;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        checkState();
+        if(key == EMPTY) {
+            return hasEmptyKey;
+        }
+        return findSlot(key) >= 0;
+    }
+
+    public long put(long key, long value) {
+        checkState();
+        if(key == EMPTY) {
+            final long previous = hasEmptyKey ? emptyKeyValue : missingValue;
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return previous;
+        }
+        for(long slot = Hashing.mix(key) & mask;;slot = (slot + 1) & mask) {
+            final long entry = table + slot * ENTRY_BYTES;
+            final long current = MemoryUtils.getLong(entry, 0);
+            if(current == key) {
+                final long previous = MemoryUtils.getLong(entry, Long.BYTES);
+                MemoryUtils.setLong(entry, Long.BYTES, value);
+                return previous;
+            }
+            if(current == EMPTY) {
+                MemoryUtils.setLong(entry, 0, key);
+                MemoryUtils.setLong(entry, Long.BYTES, value);
+                if(++size > resizeThreshold) {
+                    rehash(capacity << 1);
+                }
+                return missingValue;
+            }
+        }
+    }
+
+    /**
+     * Adds delta to the value of the key, starting from the missing value if absent, and returns the new value.
+     */
+    public long addTo(long key, long delta) {
+        checkState();
+        if(key == EMPTY) {
+            emptyKeyValue = (hasEmptyKey ? emptyKeyValue : missingValue) + delta;
+            hasEmptyKey = true;
+            return emptyKeyValue;
+        }
+        for(long slot = Hashing.mix(key) & mask;;slot = (slot + 1) & mask) {
+            final long entry = table + slot * ENTRY_BYTES;
+            final long current = MemoryUtils.getLong(entry, 0);
+            if(current == key) {
+                final long value = MemoryUtils.getLong(entry, Long.BYTES) + delta;
+                MemoryUtils.setLong(entry, Long.BYTES, value);
+                return value;
+            }
+            if(current == EMPTY) {
+                final long value = missingValue + delta;
+                MemoryUtils.setLong(entry, 0, key);
+                MemoryUtils.setLong(entry, Long.BYTES, value);
+                if(++size > resizeThreshold) {
+                    rehash(capacity << 1);
+                }
+                return value;
+            }
+        }
+    }
+
+    public long remove(long key) {
+        checkState();
+        if(key == EMPTY) {
+            final long previous = hasEmptyKey ? emptyKeyValue : missingValue;
+            hasEmptyKey = false;
+            return previous;
+        }
+        final long slot = findSlot(key);
+        if(slot < 0) {
+            return missingValue;
+        }
+        final long previous = MemoryUtils.getLong(table + slot * ENTRY_BYTES, Long.BYTES);
+        shiftBack(slot);
+        --size;
+        return previous;
+    }
+
+    public void forEach(LongLongConsumer consumer) {
+        checkState();
+        if(hasEmptyKey) {
+            consumer.accept(EMPTY, emptyKeyValue);
+        }
+        for(long slot = 0;slot < capacity;slot++) {
+            final long entry = table + slot * ENTRY_BYTES;
+            final long key = MemoryUtils.getLong(entry, 0);
+            if(key != EMPTY) {
+                consumer.accept(key, MemoryUtils.getLong(entry, Long.BYTES));
+            }
+        }
+    }
+
+    public void clear() {
+        checkState();
+        MemoryUtils.memset(table, capacity * ENTRY_BYTES, 0);
+        size = 0;
+        hasEmptyKey = false;
+    }
+
+    @Override
+    public void close() {
+        final long ptr = table;
+        table = NULL;
+        size = capacity = mask = resizeThreshold = 0;
+        hasEmptyKey = false;
+        if(ptr != NULL) {
+            MemoryUtils.free(ptr);
+        }
+    }
+
+    private long findSlot(long key) {
+        for(long slot = Hashing.mix(key) & mask;;slot = (slot + 1) & mask) {
+            final long current = MemoryUtils.getLong(table + slot * ENTRY_BYTES, 0);
+            if(current == key) {
+                return slot;
+            }
+            if(current == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    // Moves back every following entry of the probe run that would no longer be reachable from its home slot
+    private void shiftBack(long hole) {
+        for(long slot = (hole + 1) & mask;;slot = (slot + 1) & mask) {
+            final long entry = table + slot * ENTRY_BYTES;
+            final long key = MemoryUtils.getLong(entry, 0);
+            if(key == EMPTY) {
+                break;
+            }
+            final long home = Hashing.mix(key) & mask;
+            if(((slot - home) & mask) >= ((slot - hole) & mask)) {
+                final long holeEntry = table + hole * ENTRY_BYTES;
+                MemoryUtils.setLong(holeEntry, 0, key);
+                MemoryUtils.setLong(holeEntry, Long.BYTES, MemoryUtils.getLong(entry, Long.BYTES));
+                hole = slot;
+            }
+        }
+        MemoryUtils.setLong(table + hole * ENTRY_BYTES, 0, EMPTY);
+    }
+
+    private void rehash(long newCapacity) {
+        final long oldTable = table;
+        final long oldCapacity = capacity;
+        allocateTable(newCapacity);
+        for(long slot = 0;slot < oldCapacity;slot++) {
+            final long oldEntry = oldTable + slot * ENTRY_BYTES;
+            final long key = MemoryUtils.getLong(oldEntry, 0);
+            if(key == EMPTY) {
+                continue;
+            }
+            long newSlot = Hashing.mix(key) & mask;
+            while(MemoryUtils.getLong(table + newSlot * ENTRY_BYTES, 0) != EMPTY) {
+                newSlot = (newSlot + 1) & mask;
+            }
+            final long entry = table + newSlot * ENTRY_BYTES;
+            MemoryUtils.setLong(entry, 0, key);
+            MemoryUtils.setLong(entry, Long.BYTES, MemoryUtils.getLong(oldEntry, Long.BYTES));
+        }
+        MemoryUtils.free(oldTable);
+    }
+
+    private void allocateTable(long newCapacity) {
+        table = MemoryUtils.calloc(Math.multiplyExact(newCapacity, (long) ENTRY_BYTES));
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        resizeThreshold = (long) (newCapacity * Hashing.LOAD_FACTOR);
+    }
+
+    private void checkState() {
+        if(table == NULL) {
+            throw new IllegalStateException("Map is closed");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LongLongMap{size=" + size() + ", capacity=" + capacity + '}';
+    }
+}
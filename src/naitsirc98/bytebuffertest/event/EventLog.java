@@ -0,0 +1,250 @@
+package naitsirc98.bytebuffertest.event;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import naitsirc98.bytebuffertest.queue.MessageHandler;
+import naitsirc98.bytebuffertest.queue.SpscRingBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous binary event recorder. Every thread writes fixed format events (timestamp and four long arguments)
+ * into its own off-heap {@link SpscRingBuffer}, without allocating or taking any lock. A background thread drains
+ * the rings into a binary file, decoded into text after the run by {@link EventLogDecoder}. When a ring is full the
+ * event is dropped and counted, the recording thread never waits for the drainer.
+ *
+ * The file starts with {@link #MAGIC} and the nanoTime and wall clock of the start. Then come records of an int type
+ * and an int thread index: events are followed by their timestamp and arguments, {@link #THREAD_NAME} by the length
+ * and UTF-8 bytes of the thread name, and {@link #DROPPED} by the total number of events the thread has dropped.
+ */
+public final class EventLog implements AutoCloseable {
+
+    public static final long MAGIC = 0x4242544556454E54L;
+    public static final int THREAD_NAME = -1;
+    public static final int DROPPED = -2;
+    public static final int ARGUMENTS = 4;
+    public static final int DEFAULT_RING_CAPACITY = 64 * 1024;
+
+    static final int PAYLOAD_LENGTH = (1 + ARGUMENTS) * Long.BYTES;
+    private static final int RECORD_LENGTH = 2 * Integer.BYTES + PAYLOAD_LENGTH;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static volatile EventLog current;
+
+    public static synchronized EventLog start(String file) {
+        if(current != null) {
+            throw new IllegalStateException("Event log already started: " + current.file);
+        }
+        current = new EventLog(Paths.get(file), DEFAULT_RING_CAPACITY);
+        return current;
+    }
+
+    public static synchronized void stop() {
+        if(current != null) {
+            final EventLog log = current;
+            current = null;
+            log.close();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return current != null;
+    }
+
+    public static void record(EventType type, long a) {
+        record(type, a, 0, 0, 0);
+    }
+
+    public static void record(EventType type, long a, long b) {
+        record(type, a, b, 0, 0);
+    }
+
+    public static void record(EventType type, long a, long b, long c) {
+        record(type, a, b, c, 0);
+    }
+
+    public static void record(EventType type, long a, long b, long c, long d) {
+        final EventLog log = current;
+        if(log != null) {
+            log.producers.get().record(type.id(), a, b, c, d);
+        }
+    }
+
+    private final Path file;
+    private final int ringCapacity;
+    private final FileChannel channel;
+    private final ByteBuffer staging = ByteBuffer.allocateDirect(64 * 1024);
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final List<Producer> registered = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Producer> producers = ThreadLocal.withInitial(this::register);
+    private final MessageHandler writer = this::write;
+    private final Thread drainer;
+    private volatile boolean running = true;
+    private Producer draining;
+    private long events;
+    private long dropped;
+
+    private EventLog(Path file, int ringCapacity) {
+        this.file = file;
+        this.ringCapacity = ringCapacity;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch(IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+        staging.putLong(MAGIC).putLong(System.nanoTime()).putLong(System.currentTimeMillis());
+        drainer = new Thread(this::drain, "EventLog");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public long events() {
+        return events;
+    }
+
+    public long dropped() {
+        return dropped;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            drainer.join();
+        } catch(InterruptedException e) {
+            e.printStackTrace();
+        }
+        try {
+            channel.close();
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Producer register() {
+        final Producer producer = new Producer(nextIndex.getAndIncrement(), Thread.currentThread(), SpscRingBuffer.allocate(ringCapacity));
+        registered.add(producer);
+        return producer;
+    }
+
+    private void drain() {
+        boolean stopping = false;
+        while(true) {
+            int read = 0;
+            for(Producer producer : registered) {
+                read += drain(producer);
+                if(!producer.thread.isAlive() && producer.ring.size() == 0) {
+                    registered.remove(producer);
+                }
+            }
+            flush();
+            if(stopping) {
+                return;
+            }
+            if(!running) {
+                // One last pass for the events recorded while stopping
+                stopping = true;
+            } else if(read == 0) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    private int drain(Producer producer) {
+        if(!producer.announced) {
+            final Thread thread = producer.thread;
+            final String name = thread.isVirtual() ? "virtual-" + thread.threadId() : thread.getName();
+            final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            reserve(3 * Integer.BYTES + bytes.length);
+            staging.putInt(THREAD_NAME).putInt(producer.index).putInt(bytes.length).put(bytes);
+            producer.announced = true;
+        }
+        draining = producer;
+        final int read = producer.ring.read(writer);
+        events += read;
+        final long producerDropped = producer.dropped;
+        if(producerDropped != producer.reportedDropped) {
+            reserve(2 * Integer.BYTES + Long.BYTES);
+            staging.putInt(DROPPED).putInt(producer.index).putLong(producerDropped);
+            dropped += producerDropped - producer.reportedDropped;
+            producer.reportedDropped = producerDropped;
+        }
+        return read;
+    }
+
+    private void write(int typeId, long address, int length) {
+        reserve(RECORD_LENGTH);
+        staging.putInt(typeId).putInt(draining.index);
+        for(int i = 0;i < PAYLOAD_LENGTH;i += Long.BYTES) {
+            staging.putLong(MemoryUtils.getLong(address, i));
+        }
+    }
+
+    private void reserve(int bytes) {
+        if(staging.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        staging.flip();
+        try {
+            while(staging.hasRemaining()) {
+                channel.write(staging);
+            }
+        } catch(IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        } finally {
+            staging.clear();
+        }
+    }
+
+    private static final class Producer {
+
+        private final int index;
+        private final Thread thread;
+        private final SpscRingBuffer ring;
+        private volatile long dropped;
+        private long reportedDropped;
+        private boolean announced;
+
+        private Producer(int index, Thread thread, SpscRingBuffer ring) {
+            this.index = index;
+            this.thread = thread;
+            this.ring = ring;
+        }
+
+        private void record(int typeId, long a, long b, long c, long d) {
+            final long offset = ring.tryClaim(typeId, PAYLOAD_LENGTH);
+            if(offset < 0) {
+                // Single writer, so a plain increment is enough
+                dropped = dropped + 1;
+                return;
+            }
+            final long address = ring.address() + offset;
+            MemoryUtils.setLong(address, 0, System.nanoTime());
+            MemoryUtils.setLong(address, Long.BYTES, a);
+            MemoryUtils.setLong(address, 2 * Long.BYTES, b);
+            MemoryUtils.setLong(address, 3 * Long.BYTES, c);
+            MemoryUtils.setLong(address, 4 * Long.BYTES, d);
+            ring.commit(offset);
+        }
+    }
+}
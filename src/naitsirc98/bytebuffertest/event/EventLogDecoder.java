@@ -0,0 +1,108 @@
+package naitsirc98.bytebuffertest.event;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns an {@link EventLog} file into text, one line per event in timestamp order:
+ * milliseconds since the log started, thread name and formatted event.
+ *
+ * Usage: EventLogDecoder <events file> [output file]
+ */
+public final class EventLogDecoder {
+
+    public static void main(String[] args) {
+        if(args.length < 1) {
+            System.out.println("Usage: EventLogDecoder <events file> [output file]");
+            return;
+        }
+        try {
+            if(args.length > 1) {
+                try(PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(args[1])), false, StandardCharsets.UTF_8)) {
+                    decode(Paths.get(args[0]), out);
+                }
+            } else {
+                decode(Paths.get(args[0]), System.out);
+            }
+        } catch(IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void decode(Path file, PrintStream out) throws IOException {
+        final Map<Integer, String> threads = new HashMap<>();
+        final Map<Integer, Long> dropped = new HashMap<>();
+        final List<Event> events = new ArrayList<>();
+        final long startNanos;
+        final long startMillis;
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readLong() != EventLog.MAGIC) {
+                throw new IOException(file + " is not an event log");
+            }
+            startNanos = in.readLong();
+            startMillis = in.readLong();
+            while(true) {
+                final int type;
+                try {
+                    type = in.readInt();
+                } catch(EOFException e) {
+                    break;
+                }
+                final int thread = in.readInt();
+                if(type == EventLog.THREAD_NAME) {
+                    final byte[] name = new byte[in.readInt()];
+                    in.readFully(name);
+                    threads.put(thread, new String(name, StandardCharsets.UTF_8));
+                } else if(type == EventLog.DROPPED) {
+                    dropped.put(thread, in.readLong());
+                } else {
+                    final long timestamp = in.readLong();
+                    final long[] arguments = new long[EventLog.ARGUMENTS];
+                    for(int i = 0;i < arguments.length;i++) {
+                        arguments[i] = in.readLong();
+                    }
+                    events.add(new Event(EventType.of(type), thread, timestamp, arguments));
+                }
+            }
+        }
+        events.sort(Comparator.comparingLong(event -> event.timestamp));
+        out.println("Event log started at " + Instant.ofEpochMilli(startMillis) + ", " + events.size() + " events");
+        for(Event event : events) {
+            out.printf("%12.3f ms %-24s %s%n", (event.timestamp - startNanos) / 1e6,
+                    threads.getOrDefault(event.thread, "thread-" + event.thread), event.type.format(event.arguments));
+        }
+        dropped.forEach((thread, count) -> out.println(threads.getOrDefault(thread, "thread-" + thread)
+                + " dropped " + count + " events because its ring was full"));
+    }
+
+    private static final class Event {
+
+        private final EventType type;
+        private final int thread;
+        private final long timestamp;
+        private final long[] arguments;
+
+        private Event(EventType type, int thread, long timestamp, long[] arguments) {
+            this.type = type;
+            this.thread = thread;
+            this.timestamp = timestamp;
+            this.arguments = arguments;
+        }
+    }
+
+    private EventLogDecoder() {}
+}
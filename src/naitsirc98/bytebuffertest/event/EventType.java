@@ -0,0 +1,53 @@
+package naitsirc98.bytebuffertest.event;
+
+/**
+ * Fixed format events of the {@link EventLog}. Every event carries up to four long arguments, formatted by the
+ * {@link EventLogDecoder} with the event's format string.
+ */
+public enum EventType {
+
+    TEST_STARTED("Test %d started"),
+    ITERATION_STARTED("Test %d: starting iteration %d"),
+    ITERATION_FINISHED("Test %d: iteration %d: %d ops in %d ns"),
+    PAGE_FAULTS("Test %d: iteration %d caused %d minor and %d major page faults"),
+    MSYNC("Test %d: iteration %d msync took %d ns"),
+    TEST_FINISHED("Test %d: %d ops in %d ns"),
+    BUFFER_ALLOCATED("Buffer %d: %d bytes allocated in %d ns"),
+    BUFFER_RELEASED("Buffer %d released");
+
+    private static final EventType[] VALUES = values();
+
+    public static EventType of(int id) {
+        if(id < 1 || id > VALUES.length) {
+            throw new IllegalArgumentException("Unknown event id " + id);
+        }
+        return VALUES[id - 1];
+    }
+
+    private final String format;
+    private final int arguments;
+
+    EventType(String format) {
+        this.format = format;
+        this.arguments = format.split("%d", -1).length - 1;
+    }
+
+    /**
+     * Positive id of the event, as ring buffer type ids must be.
+     */
+    public int id() {
+        return ordinal() + 1;
+    }
+
+    public int arguments() {
+        return arguments;
+    }
+
+    public String format(long[] args) {
+        final Object[] values = new Object[arguments];
+        for(int i = 0;i < arguments;i++) {
+            values[i] = args[i];
+        }
+        return String.format(format, values);
+    }
+}
@@ -0,0 +1,193 @@
+package naitsirc98.bytebuffertest.matrix;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reader and writer of the JSON used by the matrix results: objects of string, number and boolean values, alone or in
+ * an array. Nested objects and arrays are not supported.
+ */
+public final class FlatJson {
+
+    public static String write(Map<String, ?> object) {
+        StringBuilder builder = new StringBuilder("{");
+        for(Map.Entry<String, ?> entry : object.entrySet()) {
+            builder.append(builder.length() == 1 ? "" : ", ").append(quote(entry.getKey())).append(": ");
+            final Object value = entry.getValue();
+            if(value == null) {
+                builder.append("null");
+            } else if(value instanceof Number || value instanceof Boolean) {
+                builder.append(value);
+            } else {
+                builder.append(quote(value.toString()));
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    public static String writeArray(List<? extends Map<String, ?>> objects) {
+        StringBuilder builder = new StringBuilder("[");
+        for(int i = 0;i < objects.size();i++) {
+            builder.append(i == 0 ? "\n  " : ",\n  ").append(write(objects.get(i)));
+        }
+        return builder.append("\n]\n").toString();
+    }
+
+    public static Map<String, Object> parse(String json) {
+        Parser parser = new Parser(json);
+        final Map<String, Object> object = parser.object();
+        parser.end();
+        return object;
+    }
+
+    public static List<Map<String, Object>> parseArray(String json) {
+        Parser parser = new Parser(json);
+        List<Map<String, Object>> objects = new ArrayList<>();
+        parser.expect('[');
+        if(!parser.consume(']')) {
+            do {
+                objects.add(parser.object());
+            } while(parser.consume(','));
+            parser.expect(']');
+        }
+        parser.end();
+        return objects;
+    }
+
+    private static String quote(String value) {
+        StringBuilder builder = new StringBuilder("\"");
+        for(int i = 0;i < value.length();i++) {
+            final char c = value.charAt(i);
+            if(c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if(c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static final class Parser {
+
+        private final String json;
+        private int position;
+
+        private Parser(String json) {
+            this.json = json;
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            expect('{');
+            if(consume('}')) {
+                return object;
+            }
+            do {
+                final String key = string();
+                expect(':');
+                object.put(key, value());
+            } while(consume(','));
+            expect('}');
+            return object;
+        }
+
+        private Object value() {
+            skipWhitespace();
+            if(position < json.length() && json.charAt(position) == '"') {
+                return string();
+            }
+            final int start = position;
+            while(position < json.length() && ",}] \t\r\n".indexOf(json.charAt(position)) < 0) {
+                ++position;
+            }
+            final String token = json.substring(start, position);
+            switch(token) {
+                case "true":
+                    return true;
+                case "false":
+                    return false;
+                case "null":
+                    return null;
+                default:
+                    try {
+                        return token.contains(".") || token.contains("e") || token.contains("E")
+                                ? (Object) Double.parseDouble(token) : (Object) Long.parseLong(token);
+                    } catch(NumberFormatException e) {
+                        throw error("Invalid value " + token);
+                    }
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder builder = new StringBuilder();
+            while(position < json.length()) {
+                final char c = json.charAt(position++);
+                if(c == '"') {
+                    return builder.toString();
+                }
+                if(c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+                final char escaped = json.charAt(position++);
+                switch(escaped) {
+                    case 'u':
+                        builder.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    default:
+                        builder.append(escaped);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private void expect(char c) {
+            if(!consume(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private boolean consume(char c) {
+            skipWhitespace();
+            if(position < json.length() && json.charAt(position) == c) {
+                ++position;
+                return true;
+            }
+            return false;
+        }
+
+        private void end() {
+            skipWhitespace();
+            if(position != json.length()) {
+                throw error("Unexpected content");
+            }
+        }
+
+        private void skipWhitespace() {
+            while(position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                ++position;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + " of JSON");
+        }
+    }
+
+    private FlatJson() {}
+}
@@ -0,0 +1,132 @@
+package naitsirc98.bytebuffertest.matrix;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parameter matrix read from a text file with one dimension per line, {@code name = value | value | ...}, and
+ * {@code #} comments. Every combination of values is a {@link Cell}. Dimensions become Main arguments:
+ * <ul>
+ *     <li>{@code jvm}: JVM flags of the forked JVM, for instance {@code -XX:+UseZGC -Xmx2g}.</li>
+ *     <li>{@code mode} and {@code args}: Main arguments used as they are, for instance {@code -mapped -free}.
+ *     {@code none} means no arguments.</li>
+ *     <li>Anything else: {@code -name=value}, for instance {@code size = 16m | 1g} gives {@code -size=16m}.</li>
+ * </ul>
+ */
+public final class Matrix {
+
+    public static Matrix read(Path file) {
+        Map<String, List<String>> dimensions = new LinkedHashMap<>();
+        try {
+            int lineNumber = 0;
+            for(String line : Files.readAllLines(file)) {
+                ++lineNumber;
+                final String content = line.contains("#") ? line.substring(0, line.indexOf('#')).trim() : line.trim();
+                if(content.isEmpty()) {
+                    continue;
+                }
+                final int equals = content.indexOf('=');
+                if(equals <= 0) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + ": expected name = value | value...");
+                }
+                List<String> values = new ArrayList<>();
+                for(String value : content.substring(equals + 1).split("\\|")) {
+                    values.add(value.trim());
+                }
+                dimensions.put(content.substring(0, equals).trim(), values);
+            }
+        } catch(IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+        return new Matrix(dimensions);
+    }
+
+    private final Map<String, List<String>> dimensions;
+
+    public Matrix(Map<String, List<String>> dimensions) {
+        this.dimensions = Collections.unmodifiableMap(new LinkedHashMap<>(dimensions));
+    }
+
+    public List<Cell> cells() {
+        List<Cell> cells = new ArrayList<>();
+        expand(new ArrayList<>(dimensions.keySet()), 0, new LinkedHashMap<>(), cells);
+        return cells;
+    }
+
+    private void expand(List<String> names, int index, Map<String, String> values, List<Cell> cells) {
+        if(index == names.size()) {
+            cells.add(new Cell(new LinkedHashMap<>(values)));
+            return;
+        }
+        final String name = names.get(index);
+        for(String value : dimensions.get(name)) {
+            values.put(name, value);
+            expand(names, index + 1, values, cells);
+        }
+        values.remove(name);
+    }
+
+    /**
+     * One combination of the matrix values.
+     */
+    public static final class Cell {
+
+        private final Map<String, String> values;
+
+        private Cell(Map<String, String> values) {
+            this.values = values;
+        }
+
+        /**
+         * Stable name of the cell, the key used to find it in a baseline.
+         */
+        public String name() {
+            StringBuilder name = new StringBuilder();
+            for(Map.Entry<String, String> entry : values.entrySet()) {
+                name.append(name.length() == 0 ? "" : " ").append(entry.getKey()).append('=').append(entry.getValue());
+            }
+            return name.toString();
+        }
+
+        public List<String> jvmArguments() {
+            return split(values.getOrDefault("jvm", "none"));
+        }
+
+        public List<String> mainArguments() {
+            List<String> arguments = new ArrayList<>();
+            for(Map.Entry<String, String> entry : values.entrySet()) {
+                switch(entry.getKey()) {
+                    case "jvm":
+                        break;
+                    case "mode":
+                    case "args":
+                        arguments.addAll(split(entry.getValue()));
+                        break;
+                    default:
+                        arguments.add("-" + entry.getKey() + "=" + entry.getValue());
+                }
+            }
+            return arguments;
+        }
+
+        private static List<String> split(String value) {
+            if(value.isEmpty() || value.equals("none")) {
+                return new ArrayList<>();
+            }
+            return new ArrayList<>(Arrays.asList(value.trim().split("\\s+")));
+        }
+
+        @Override
+        public String toString() {
+            return name();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package naitsirc98.bytebuffertest.matrix;
+
+import naitsirc98.bytebuffertest.Log;
+import naitsirc98.bytebuffertest.Main;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link Main} once per cell of a {@link Matrix}, each time in a forked JVM, and collects the JSON written by
+ * its {@code -results} option into a JSON array and a CSV table. With a baseline (a results file of a previous run)
+ * every cell is compared against it, and the runner exits with status 1 when a cell fails or regresses by more than
+ * the threshold: lower throughput or higher p99 latency.
+ *
+ * Usage: {@code MatrixRunner -matrix=<file> [options]}, see {@code -help}.
+ */
+public final class MatrixRunner {
+
+    private static final String[] REGRESSION_COLUMNS = {"status", "baselineOpsPerSecond", "opsChangePercent", "p99ChangePercent", "regression"};
+
+    public static void main(String[] args) {
+        String matrixFile = null;
+        String out = "matrix-results.json";
+        String csv = null;
+        String baseline = null;
+        String logs = "matrix-logs";
+        double threshold = 10;
+        int forks = 1;
+        int warmup = 1;
+        long timeoutSeconds = 600;
+        boolean dryRun = false;
+        for(String rawArgument : args) {
+            final String argument = rawArgument.toLowerCase();
+            final String value = rawArgument.substring(rawArgument.indexOf('=') + 1).trim();
+            if(argument.equals("-help")) {
+                help();
+                return;
+            } else if(argument.startsWith("-matrix=")) {
+                matrixFile = value;
+            } else if(argument.startsWith("-out=")) {
+                out = value;
+            } else if(argument.startsWith("-csv=")) {
+                csv = value;
+            } else if(argument.startsWith("-baseline=")) {
+                baseline = value;
+            } else if(argument.startsWith("-logs=")) {
+                logs = value;
+            } else if(argument.startsWith("-threshold=")) {
+                threshold = Double.parseDouble(value);
+            } else if(argument.startsWith("-forks=")) {
+                forks = Math.max(1, Integer.parseInt(value));
+            } else if(argument.startsWith("-warmup=")) {
+                warmup = Math.max(0, Integer.parseInt(value));
+            } else if(argument.startsWith("-timeout=")) {
+                timeoutSeconds = Long.parseLong(value);
+            } else if(argument.equals("-dryrun")) {
+                dryRun = true;
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + rawArgument + ", see -help");
+            }
+        }
+        if(matrixFile == null) {
+            help();
+            throw new IllegalArgumentException("No -matrix file");
+        }
+
+        final List<Matrix.Cell> cells = Matrix.read(Paths.get(matrixFile)).cells();
+        final Map<String, Map<String, Object>> baselineCells = baseline != null ? readBaseline(Paths.get(baseline)) : null;
+        Log.log("Running " + cells.size() + " cells" + (forks > 1 ? " x " + forks + " forks" : "") + "...");
+        List<Map<String, Object>> results = new ArrayList<>();
+        int failures = 0;
+        int regressions = 0;
+        for(int i = 0;i < cells.size();i++) {
+            final Matrix.Cell cell = cells.get(i);
+            List<Map<String, Object>> runs = new ArrayList<>();
+            for(int fork = 0;fork < forks;fork++) {
+                final Path log = Paths.get(logs, "cell-" + i + (forks > 1 ? "-fork-" + fork : "") + ".log");
+                final List<String> command = command(cell, warmup);
+                if(dryRun) {
+                    Log.log(String.join(" ", command));
+                    continue;
+                }
+                runs.add(run(cell, command, log, timeoutSeconds));
+            }
+            if(dryRun) {
+                continue;
+            }
+            Map<String, Object> result = median(runs);
+            if(baselineCells != null) {
+                compare(result, baselineCells.get(cell.name()), threshold);
+                if(Boolean.TRUE.equals(result.get("regression"))) {
+                    ++regressions;
+                }
+            }
+            if(!"ok".equals(result.get("status"))) {
+                ++failures;
+            }
+            Log.log(String.format("[%d/%d] %s: %s", i + 1, cells.size(), cell, summary(result)));
+            results.add(result);
+        }
+        if(dryRun) {
+            return;
+        }
+
+        write(Paths.get(out), FlatJson.writeArray(results));
+        Log.log("Results written to " + out);
+        if(csv != null) {
+            write(Paths.get(csv), toCsv(results));
+            Log.log("CSV written to " + csv);
+        }
+        if(failures > 0 || regressions > 0) {
+            Log.log(failures + " failed cells, " + regressions + " regressions past " + threshold + "%");
+            System.exit(1);
+        }
+        Log.log("No failures" + (baselineCells != null ? " or regressions past " + threshold + "%" : ""));
+    }
+
+    private static List<String> command(Matrix.Cell cell, int warmup) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if(ManagementFactory.getRuntimeMXBean().getInputArguments().contains("--enable-preview")) {
+            command.add("--enable-preview");
+        }
+        command.addAll(cell.jvmArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        if(warmup > 0) {
+            command.add("-warmup=" + warmup);
+        }
+        command.addAll(cell.mainArguments());
+        return command;
+    }
+
+    private static Map<String, Object> run(Matrix.Cell cell, List<String> command, Path log, long timeoutSeconds) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("cell", cell.name());
+        final long start = System.nanoTime();
+        Path resultsFile = null;
+        try {
+            Files.createDirectories(log.toAbsolutePath().getParent());
+            resultsFile = Files.createTempFile("matrix-cell", ".json");
+            List<String> fullCommand = new ArrayList<>(command);
+            fullCommand.add("-results=" + resultsFile);
+            Process process = new ProcessBuilder(fullCommand).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+            if(!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+                result.put("status", "timeout");
+            } else if(process.exitValue() != 0) {
+                result.put("status", "failed");
+                result.put("exitCode", process.exitValue());
+            } else if(Files.size(resultsFile) == 0) {
+                result.put("status", "failed");
+            } else {
+                result.put("status", "ok");
+                result.putAll(FlatJson.parse(new String(Files.readAllBytes(resultsFile), StandardCharsets.UTF_8)));
+            }
+        } catch(IOException e) {
+            e.printStackTrace();
+            result.put("status", "failed");
+        } catch(InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+            result.put("status", "failed");
+        } finally {
+            if(resultsFile != null) {
+                try {
+                    Files.deleteIfExists(resultsFile);
+                } catch(IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        result.put("seconds", (System.nanoTime() - start) / 1e9);
+        result.put("log", log.toString());
+        return result;
+    }
+
+    // Run with the median throughput, or the first failure
+    private static Map<String, Object> median(List<Map<String, Object>> runs) {
+        for(Map<String, Object> run : runs) {
+            if(!"ok".equals(run.get("status"))) {
+                return run;
+            }
+        }
+        List<Map<String, Object>> sorted = new ArrayList<>(runs);
+        sorted.sort(Comparator.comparingDouble(run -> number(run, "opsPerSecond")));
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static void compare(Map<String, Object> result, Map<String, Object> baseline, double threshold) {
+        if(baseline == null) {
+            result.put("regression", false);
+            return;
+        }
+        if(!"ok".equals(result.get("status"))) {
+            result.put("regression", "ok".equals(baseline.get("status")));
+            return;
+        }
+        final double baselineOps = number(baseline, "opsPerSecond");
+        final double opsChange = baselineOps > 0 ? (number(result, "opsPerSecond") - baselineOps) * 100 / baselineOps : 0;
+        final double baselineP99 = number(baseline, "latencyP99Nanos");
+        final double p99 = number(result, "latencyP99Nanos");
+        // Cells run without -latency report a p99 of -1, so there is no latency to gate on
+        final boolean p99Gate = baselineP99 > 0 && p99 > 0;
+        final double p99Change = p99Gate ? (p99 - baselineP99) * 100 / baselineP99 : 0;
+        if(!p99Gate) {
+            Log.log(result.get("cell") + ": p99 gate skipped, add -latency to the cell to compare latency against the baseline");
+        }
+        result.put("baselineOpsPerSecond", baselineOps);
+        result.put("opsChangePercent", Math.round(opsChange * 10) / 10.0);
+        result.put("p99ChangePercent", p99Gate ? Math.round(p99Change * 10) / 10.0 : "skipped");
+        result.put("regression", opsChange < -threshold || p99Change > threshold);
+    }
+
+    private static Map<String, Map<String, Object>> readBaseline(Path file) {
+        try {
+            Map<String, Map<String, Object>> cells = new HashMap<>();
+            for(Map<String, Object> cell : FlatJson.parseArray(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))) {
+                cells.put(String.valueOf(cell.get("cell")), cell);
+            }
+            return cells;
+        } catch(IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static double number(Map<String, Object> result, String key) {
+        final Object value = result.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : -1;
+    }
+
+    private static String summary(Map<String, Object> result) {
+        if(!"ok".equals(result.get("status"))) {
+            return result.get("status") + ", see " + result.get("log")
+                    + (Boolean.TRUE.equals(result.get("regression")) ? " (REGRESSION)" : "");
+        }
+        return String.format("%.0f ops/s, p99 %s ns, peak RSS %.1f MB", number(result, "opsPerSecond"),
+                result.get("latencyP99Nanos"), number(result, "peakRss") / 1024 / 1024)
+                + (result.containsKey("opsChangePercent") ? ", " + result.get("opsChangePercent") + "% ops/s, "
+                + (result.get("p99ChangePercent") instanceof Number ? result.get("p99ChangePercent") + "% p99" : "p99 skipped")
+                + " vs baseline" : "")
+                + (Boolean.TRUE.equals(result.get("regression")) ? " (REGRESSION)" : "");
+    }
+
+    private static String toCsv(List<Map<String, Object>> results) {
+        Set<String> columns = new LinkedHashSet<>();
+        for(Map<String, Object> result : results) {
+            columns.addAll(result.keySet());
+        }
+        for(String column : REGRESSION_COLUMNS) {
+            columns.remove(column);
+        }
+        List<String> header = new ArrayList<>(columns);
+        for(String column : REGRESSION_COLUMNS) {
+            header.add(column);
+        }
+        StringBuilder builder = new StringBuilder(String.join(",", header)).append('\n');
+        for(Map<String, Object> result : results) {
+            for(int i = 0;i < header.size();i++) {
+                final Object value = result.get(header.get(i));
+                final String text = value == null ? "" : value.toString();
+                builder.append(i == 0 ? "" : ",")
+                        .append(text.contains(",") || text.contains("\"") ? '"' + text.replace("\"", "\"\"") + '"' : text);
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void write(Path file, String content) {
+        try {
+            Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        } catch(IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void help() {
+        Log.info("==> Benchmark matrix runner <==");
+        Log.info("Params:");
+        Log.info("  -matrix=<file>: matrix of dimensions, one per line: name = value | value... jvm holds JVM flags," +
+                " mode and args hold Main arguments as they are and any other name becomes -name=value.");
+        Log.info("  -out=<file.json>: results of every cell. Default is matrix-results.json.");
+        Log.info("  -csv=<file.csv>: if you also want the results as a CSV table.");
+        Log.info("  -baseline=<file.json>: results of a previous run to compare against. Exits with 1 on regressions.");
+        Log.info("  -threshold=<percent>: throughput drop or p99 increase that counts as a regression. The p99" +
+                " gate only applies to cells run with -latency. Default is 10.");
+        Log.info("  -forks=<n>: JVMs per cell, the one with the median throughput is kept. Default is 1.");
+        Log.info("  -warmup=<iterations>: untimed iterations run by every test before measuring. Default is 1.");
+        Log.info("  -timeout=<seconds>: time after which a cell is killed and failed. Default is 600.");
+        Log.info("  -logs=<dir>: directory of the output of every forked JVM. Default is matrix-logs.");
+        Log.info("  -dryRun: if you only want to print the command of every cell.");
+        Log.info("");
+    }
+
+    private MatrixRunner() {}
+}
@@ -0,0 +1,11 @@
+package naitsirc98.bytebuffertest.queue;
+
+/**
+ * Receives the records read from a {@link RingBuffer}. The payload is only valid during the call: its memory is
+ * released to the producers as soon as the read batch finishes.
+ */
+@FunctionalInterface
+public interface MessageHandler {
+
+    void onMessage(int typeId, long address, int length);
+}
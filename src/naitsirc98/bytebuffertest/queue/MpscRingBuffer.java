@@ -0,0 +1,63 @@
+package naitsirc98.bytebuffertest.queue;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link RingBuffer} for any number of producer threads and one consumer thread. Producers race for space with a
+ * compare and set of the tail, then write and commit their records independently.
+ */
+public final class MpscRingBuffer extends RingBuffer {
+
+    public static MpscRingBuffer allocate(int capacity) {
+        return new MpscRingBuffer(MemoryUtils.allocBuffer(bufferLength(capacity)));
+    }
+
+    public MpscRingBuffer(ByteBuffer buffer) {
+        super(buffer);
+    }
+
+    public MpscRingBuffer(long address, int length) {
+        super(address, length);
+    }
+
+    @Override
+    long claimCapacity(int required) {
+        long head;
+        long tail;
+        int padding;
+        do {
+            head = MemoryUtils.getLongVolatile(trailer, HEAD_CACHE_OFFSET);
+            tail = MemoryUtils.getLongVolatile(trailer, TAIL_OFFSET);
+            if(required > capacity - (tail - head)) {
+                head = MemoryUtils.getLongVolatile(trailer, HEAD_OFFSET);
+                if(required > capacity - (tail - head)) {
+                    return -1;
+                }
+                MemoryUtils.setLongOrdered(trailer, HEAD_CACHE_OFFSET, head);
+            }
+            padding = 0;
+            final int toBufferEnd = (int) (capacity - (tail & mask));
+            if(required > toBufferEnd) {
+                long headIndex = head & mask;
+                if(required > headIndex) {
+                    head = MemoryUtils.getLongVolatile(trailer, HEAD_OFFSET);
+                    headIndex = head & mask;
+                    if(required > headIndex) {
+                        return -1;
+                    }
+                    MemoryUtils.setLongOrdered(trailer, HEAD_CACHE_OFFSET, head);
+                }
+                padding = toBufferEnd;
+            }
+        } while(!MemoryUtils.compareAndSetLong(trailer, TAIL_OFFSET, tail, tail + required + padding));
+
+        final long recordIndex = tail & mask;
+        if(padding != 0) {
+            writePaddingRecord(recordIndex, padding);
+            return 0;
+        }
+        return recordIndex;
+    }
+}
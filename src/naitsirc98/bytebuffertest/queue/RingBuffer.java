@@ -0,0 +1,211 @@
+package naitsirc98.bytebuffertest.queue;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ring buffer of variable length records stored directly in a direct {@link ByteBuffer} or any native block,
+ * for instance one of the buffers of a {@code BufferGroup}. The block holds a power of two data area followed by
+ * a trailer with the head and tail counters, each one on its own 128 byte line so producers and consumer do not
+ * false share.
+ *
+ * Every record starts with an 8 byte header: its length (header included) and a type id. Producers claim space,
+ * write the payload and publish it with an ordered store of the length, so the single consumer stops at the first
+ * record that is still being written. Records are aligned to 8 bytes, and a padding record fills the end of the
+ * data area when a record does not fit before wrapping around.
+ */
+public abstract class RingBuffer {
+
+    public static final int HEADER_LENGTH = 8;
+    public static final int ALIGNMENT = 8;
+    public static final int PADDING_TYPE_ID = -1;
+
+    // Two cache lines per counter, so adjacent line prefetching does not pull in a neighbour either
+    static final int COUNTER_PADDING = 128;
+    static final int TAIL_OFFSET = COUNTER_PADDING;
+    static final int HEAD_CACHE_OFFSET = 2 * COUNTER_PADDING;
+    static final int HEAD_OFFSET = 3 * COUNTER_PADDING;
+    public static final int TRAILER_LENGTH = 4 * COUNTER_PADDING;
+
+    public static int bufferLength(int capacity) {
+        return capacity + TRAILER_LENGTH;
+    }
+
+    private final ByteBuffer buffer;
+    final long address;
+    final int capacity;
+    final long mask;
+    final long trailer;
+    private final int maxMessageLength;
+
+    RingBuffer(ByteBuffer buffer) {
+        this(buffer, MemoryUtils.addressOf(buffer), buffer.capacity());
+    }
+
+    RingBuffer(long address, int length) {
+        this(null, address, length);
+    }
+
+    private RingBuffer(ByteBuffer buffer, long address, int length) {
+        final int capacity = length - TRAILER_LENGTH;
+        if(capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Length must be a power of two plus " + TRAILER_LENGTH + ": " + length);
+        }
+        if((address & (ALIGNMENT - 1)) != 0) {
+            throw new IllegalArgumentException("Address must be aligned to " + ALIGNMENT + " bytes: 0x" + Long.toHexString(address));
+        }
+        this.buffer = buffer;
+        this.address = address;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.trailer = address + capacity;
+        this.maxMessageLength = capacity / 8;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int maxMessageLength() {
+        return maxMessageLength;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Bytes currently claimed by producers and not yet consumed, records headers and padding included.
+     */
+    public long size() {
+        long head;
+        long tail;
+        do {
+            head = MemoryUtils.getLongVolatile(trailer, HEAD_OFFSET);
+            tail = MemoryUtils.getLongVolatile(trailer, TAIL_OFFSET);
+        } while(head != MemoryUtils.getLongVolatile(trailer, HEAD_OFFSET));
+        return tail - head;
+    }
+
+    public boolean write(int typeId, long src, int length) {
+        final long index = tryClaim(typeId, length);
+        if(index < 0) {
+            return false;
+        }
+        MemoryUtils.memcpy(src, address + index, length);
+        commit(index);
+        return true;
+    }
+
+    public boolean write(int typeId, ByteBuffer src, int offset, int length) {
+        return write(typeId, MemoryUtils.addressOf(src) + offset, length);
+    }
+
+    /**
+     * Claims space for a record of the given payload length and returns the offset of its payload from
+     * {@link #address()}, or -1 when the ring is full. The record is invisible to the consumer until
+     * {@link #commit committed} or {@link #abort aborted}. A producer may hold several claims and commit
+     * them as a batch, in any order.
+     */
+    public long tryClaim(int typeId, int length) {
+        checkTypeId(typeId);
+        checkMessageLength(length);
+        final int recordLength = length + HEADER_LENGTH;
+        final long recordIndex = claimCapacity(align(recordLength));
+        if(recordIndex < 0) {
+            return -1;
+        }
+        MemoryUtils.setIntOrdered(address, recordIndex, -recordLength);
+        MemoryUtils.setInt(address, recordIndex + Integer.BYTES, typeId);
+        return recordIndex + HEADER_LENGTH;
+    }
+
+    public void commit(long index) {
+        final long recordIndex = index - HEADER_LENGTH;
+        final int recordLength = MemoryUtils.getInt(address, recordIndex);
+        if(recordLength >= 0) {
+            throw new IllegalStateException("Record at " + index + " is not claimed");
+        }
+        MemoryUtils.setIntOrdered(address, recordIndex, -recordLength);
+    }
+
+    public void abort(long index) {
+        final long recordIndex = index - HEADER_LENGTH;
+        final int recordLength = MemoryUtils.getInt(address, recordIndex);
+        if(recordLength >= 0) {
+            throw new IllegalStateException("Record at " + index + " is not claimed");
+        }
+        MemoryUtils.setInt(address, recordIndex + Integer.BYTES, PADDING_TYPE_ID);
+        MemoryUtils.setIntOrdered(address, recordIndex, -recordLength);
+    }
+
+    public int read(MessageHandler handler) {
+        return read(handler, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads up to limit records from the single consumer thread. The consumed bytes are zeroed and released to the
+     * producers with one ordered store of the head once the whole batch has been handled.
+     */
+    public int read(MessageHandler handler, int limit) {
+        final long head = MemoryUtils.getLong(trailer, HEAD_OFFSET);
+        final long headIndex = head & mask;
+        final long contiguous = capacity - headIndex;
+        int messages = 0;
+        long bytesRead = 0;
+        try {
+            while(bytesRead < contiguous && messages < limit) {
+                final long recordIndex = headIndex + bytesRead;
+                final int recordLength = MemoryUtils.getIntVolatile(address, recordIndex);
+                if(recordLength <= 0) {
+                    break;
+                }
+                bytesRead += align(recordLength);
+                final int typeId = MemoryUtils.getInt(address, recordIndex + Integer.BYTES);
+                if(typeId == PADDING_TYPE_ID) {
+                    continue;
+                }
+                ++messages;
+                handler.onMessage(typeId, address + recordIndex + HEADER_LENGTH, recordLength - HEADER_LENGTH);
+            }
+        } finally {
+            if(bytesRead > 0) {
+                MemoryUtils.memset(address + headIndex, bytesRead, 0);
+                MemoryUtils.setLongOrdered(trailer, HEAD_OFFSET, head + bytesRead);
+            }
+        }
+        return messages;
+    }
+
+    public long address() {
+        return address;
+    }
+
+    /**
+     * Reserves required bytes, plus a padding record when they do not fit before the end of the data area,
+     * and returns the index of the reserved record or -1 when there is not enough free space.
+     */
+    abstract long claimCapacity(int required);
+
+    void writePaddingRecord(long recordIndex, int length) {
+        MemoryUtils.setInt(address, recordIndex + Integer.BYTES, PADDING_TYPE_ID);
+        MemoryUtils.setIntOrdered(address, recordIndex, length);
+    }
+
+    static int align(int length) {
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private void checkTypeId(int typeId) {
+        if(typeId < 1) {
+            throw new IllegalArgumentException("Type id must be positive: " + typeId);
+        }
+    }
+
+    private void checkMessageLength(int length) {
+        if(length < 0 || length > maxMessageLength) {
+            throw new IllegalArgumentException("Message length " + length + " out of range [0, " + maxMessageLength + "]");
+        }
+    }
+}
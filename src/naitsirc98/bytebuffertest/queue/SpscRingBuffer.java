@@ -0,0 +1,58 @@
+package naitsirc98.bytebuffertest.queue;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link RingBuffer} for exactly one producer thread and one consumer thread. The producer owns the tail, so
+ * claiming space is a plain read and an ordered store, without any compare and set.
+ */
+public final class SpscRingBuffer extends RingBuffer {
+
+    public static SpscRingBuffer allocate(int capacity) {
+        return new SpscRingBuffer(MemoryUtils.allocBuffer(bufferLength(capacity)));
+    }
+
+    public SpscRingBuffer(ByteBuffer buffer) {
+        super(buffer);
+    }
+
+    public SpscRingBuffer(long address, int length) {
+        super(address, length);
+    }
+
+    @Override
+    long claimCapacity(int required) {
+        long head = MemoryUtils.getLong(trailer, HEAD_CACHE_OFFSET);
+        final long tail = MemoryUtils.getLong(trailer, TAIL_OFFSET);
+        if(required > capacity - (tail - head)) {
+            head = MemoryUtils.getLongVolatile(trailer, HEAD_OFFSET);
+            if(required > capacity - (tail - head)) {
+                return -1;
+            }
+            MemoryUtils.setLong(trailer, HEAD_CACHE_OFFSET, head);
+        }
+        int padding = 0;
+        long recordIndex = tail & mask;
+        final int toBufferEnd = (int) (capacity - recordIndex);
+        if(required > toBufferEnd) {
+            long headIndex = head & mask;
+            if(required > headIndex) {
+                head = MemoryUtils.getLongVolatile(trailer, HEAD_OFFSET);
+                headIndex = head & mask;
+                if(required > headIndex) {
+                    return -1;
+                }
+                MemoryUtils.setLong(trailer, HEAD_CACHE_OFFSET, head);
+            }
+            padding = toBufferEnd;
+        }
+        if(padding != 0) {
+            writePaddingRecord(recordIndex, padding);
+            recordIndex = 0;
+        }
+        MemoryUtils.setLongOrdered(trailer, TAIL_OFFSET, tail + required + padding);
+        return recordIndex;
+    }
+}
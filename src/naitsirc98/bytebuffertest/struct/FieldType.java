@@ -0,0 +1,41 @@
+package naitsirc98.bytebuffertest.struct;
+
+/**
+ * Primitive types a {@link StructLayout} field can have, with the {@code MemoryUtils} accessors that read and write them.
+ */
+public enum FieldType {
+
+    BYTE(Byte.BYTES, "byte", "Byte"),
+    SHORT(Short.BYTES, "short", "Short"),
+    CHAR(Character.BYTES, "char", "Char"),
+    INT(Integer.BYTES, "int", "Int"),
+    LONG(Long.BYTES, "long", "Long"),
+    FLOAT(Float.BYTES, "float", "Float"),
+    DOUBLE(Double.BYTES, "double", "Double");
+
+    private final int size;
+    private final String javaType;
+    private final String accessorSuffix;
+
+    FieldType(int size, String javaType, String accessorSuffix) {
+        this.size = size;
+        this.javaType = javaType;
+        this.accessorSuffix = accessorSuffix;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String javaType() {
+        return javaType;
+    }
+
+    String getter() {
+        return "get" + accessorSuffix;
+    }
+
+    String setter() {
+        return "set" + accessorSuffix;
+    }
+}
@@ -0,0 +1,240 @@
+package naitsirc98.bytebuffertest.struct;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates the Java source of flyweight accessor classes for a {@link StructLayout}, over a raw address or a direct
+ * ByteBuffer. Accessors are plain {@code MemoryUtils} calls with constant offsets, so once inlined they are the same
+ * code as hand-written pointer arithmetic. Only the element index and array indices are checked.
+ *
+ * Array of structs flyweights point to one struct at a time, moved with {@code at(index)}. Struct of arrays
+ * flyweights keep one column address per field and the current index, and expose the column addresses for bulk loops.
+ */
+public final class FlyweightGenerator {
+
+    private static final String GENERATOR = FlyweightGenerator.class.getName();
+    private static final Set<String> AOS_RESERVED = new HashSet<>(Arrays.asList("wrap", "at", "count", "address", "sizeOf"));
+    private static final Set<String> SOA_RESERVED = new HashSet<>(Arrays.asList("wrap", "at", "count", "index", "sizeOf", "align"));
+
+    public static String arrayOfStructs(StructLayout layout, String packageName, String className) {
+        checkNames(layout, AOS_RESERVED, "");
+        Source source = new Source(packageName, className);
+        source.header("Array of structs flyweight over " + layout.name() + " structs of " + layout.size() + " bytes:", layout, true);
+        source.line("    public static final long SIZE = " + layout.size() + ";");
+        source.line("    public static final int ALIGNMENT = " + layout.alignment() + ";");
+        for(StructField field : layout.fields()) {
+            source.line("    public static final long " + constant(field, "OFFSET") + " = " + field.offset() + ";");
+            if(field.isArray()) {
+                source.line("    public static final int " + constant(field, "LENGTH") + " = " + field.length() + ";");
+            }
+        }
+        source.line("");
+        source.method("public static long sizeOf(long count)", "return count * SIZE;");
+        source.line("    private long base;");
+        source.line("    private long count;");
+        source.line("    private long address;");
+        source.line("");
+        source.method("public " + className + " wrap(long address, long count)",
+                "this.base = address;",
+                "this.count = count;",
+                "this.address = address;",
+                "return this;");
+        source.method("public " + className + " wrap(ByteBuffer buffer)",
+                "return wrap(MemoryUtils.addressOf(buffer), buffer.capacity() / SIZE);");
+        source.method("public long count()", "return count;");
+        source.method("public " + className + " at(long index)",
+                "Objects.checkIndex(index, count);",
+                "address = base + index * SIZE;",
+                "return this;");
+        source.method("public long address()", "return address;");
+        for(StructField field : layout.fields()) {
+            final FieldType type = field.type();
+            final String offset = constant(field, "OFFSET");
+            if(field.isArray()) {
+                final String element = offset + " + (long) i * " + type.size();
+                source.method("public " + type.javaType() + " " + field.name() + "(int i)",
+                        "Objects.checkIndex(i, " + constant(field, "LENGTH") + ");",
+                        "return MemoryUtils." + type.getter() + "(address, " + element + ");");
+                source.method("public " + className + " " + field.name() + "(int i, " + type.javaType() + " value)",
+                        "Objects.checkIndex(i, " + constant(field, "LENGTH") + ");",
+                        "MemoryUtils." + type.setter() + "(address, " + element + ", value);",
+                        "return this;");
+            } else {
+                source.method("public " + type.javaType() + " " + field.name() + "()",
+                        "return MemoryUtils." + type.getter() + "(address, " + offset + ");");
+                source.method("public " + className + " " + field.name() + "(" + type.javaType() + " value)",
+                        "MemoryUtils." + type.setter() + "(address, " + offset + ", value);",
+                        "return this;");
+            }
+        }
+        return source.end();
+    }
+
+    public static String structOfArrays(StructLayout layout, String packageName, String className) {
+        checkNames(layout, SOA_RESERVED, "Column");
+        Source source = new Source(packageName, className);
+        source.header("Struct of arrays flyweight over " + layout.name() + " structs, one column per field aligned to "
+                + StructLayout.COLUMN_ALIGNMENT + " bytes:", layout, false);
+        source.line("    public static final int COLUMN_ALIGNMENT = " + StructLayout.COLUMN_ALIGNMENT + ";");
+        for(StructField field : layout.fields()) {
+            if(field.isArray()) {
+                source.line("    public static final int " + constant(field, "LENGTH") + " = " + field.length() + ";");
+            }
+        }
+        source.line("");
+        String[] sizeOf = new String[layout.fields().size() + 2];
+        sizeOf[0] = "long offset = 0;";
+        for(int i = 0;i < layout.fields().size();i++) {
+            sizeOf[i + 1] = "offset = align(offset + count * " + layout.fields().get(i).size() + ");";
+        }
+        sizeOf[sizeOf.length - 1] = "return offset;";
+        source.method("public static long sizeOf(long count)", sizeOf);
+        source.method("private static long align(long offset)",
+                "return (offset + COLUMN_ALIGNMENT - 1) & -COLUMN_ALIGNMENT;");
+        source.line("    private long count;");
+        source.line("    private long index;");
+        for(StructField field : layout.fields()) {
+            source.line("    private long " + field.name() + "Column;");
+        }
+        source.line("");
+        final List<StructField> fields = layout.fields();
+        String[] wrap = new String[2 * fields.size() + 3];
+        int line = 0;
+        wrap[line++] = "this.count = count;";
+        wrap[line++] = "this.index = 0;";
+        wrap[line++] = "long offset = 0;";
+        for(int i = 0;i < fields.size();i++) {
+            wrap[line++] = fields.get(i).name() + "Column = address + offset;";
+            if(i < fields.size() - 1) {
+                wrap[line++] = "offset = align(offset + count * " + fields.get(i).size() + ");";
+            }
+        }
+        wrap[line] = "return this;";
+        source.method("public " + className + " wrap(long address, long count)", wrap);
+        source.method("public " + className + " wrap(ByteBuffer buffer, long count)",
+                "if(sizeOf(count) > buffer.capacity()) {",
+                "    throw new IllegalArgumentException(count + \" structs do not fit in \" + buffer.capacity() + \" bytes\");",
+                "}",
+                "return wrap(MemoryUtils.addressOf(buffer), count);");
+        source.method("public long count()", "return count;");
+        source.method("public " + className + " at(long index)",
+                "Objects.checkIndex(index, count);",
+                "this.index = index;",
+                "return this;");
+        source.method("public long index()", "return index;");
+        for(StructField field : layout.fields()) {
+            final FieldType type = field.type();
+            final String column = field.name() + "Column";
+            if(field.isArray()) {
+                final String length = constant(field, "LENGTH");
+                final String element = "(index * " + length + " + i) * " + type.size();
+                source.method("public " + type.javaType() + " " + field.name() + "(int i)",
+                        "Objects.checkIndex(i, " + length + ");",
+                        "return MemoryUtils." + type.getter() + "(" + column + ", " + element + ");");
+                source.method("public " + className + " " + field.name() + "(int i, " + type.javaType() + " value)",
+                        "Objects.checkIndex(i, " + length + ");",
+                        "MemoryUtils." + type.setter() + "(" + column + ", " + element + ", value);",
+                        "return this;");
+            } else {
+                source.method("public " + type.javaType() + " " + field.name() + "()",
+                        "return MemoryUtils." + type.getter() + "(" + column + ", index * " + type.size() + ");");
+                source.method("public " + className + " " + field.name() + "(" + type.javaType() + " value)",
+                        "MemoryUtils." + type.setter() + "(" + column + ", index * " + type.size() + ", value);",
+                        "return this;");
+            }
+            source.method("public long " + column + "()", "return " + column + ";");
+        }
+        return source.end();
+    }
+
+    /**
+     * Writes source under sourceRoot, in the directory of its package, and returns the written file.
+     */
+    public static Path write(Path sourceRoot, String packageName, String className, String source) {
+        final Path file = sourceRoot.resolve(packageName.replace('.', '/')).resolve(className + ".java");
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, source.getBytes());
+        } catch(IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+        return file;
+    }
+
+    private static void checkNames(StructLayout layout, Set<String> reserved, String suffix) {
+        final List<StructField> fields = layout.fields();
+        for(StructField field : fields) {
+            if(reserved.contains(field.name())) {
+                throw new IllegalArgumentException("Field name " + field.name() + " clashes with a flyweight method");
+            }
+            if(!suffix.isEmpty() && fields.stream().anyMatch(other -> other.name().equals(field.name() + suffix))) {
+                throw new IllegalArgumentException("Field name " + field.name() + suffix + " clashes with a column accessor");
+            }
+        }
+    }
+
+    private static String constant(StructField field, String suffix) {
+        return field.name().replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase() + "_" + suffix;
+    }
+
+    private static final class Source {
+
+        private final StringBuilder builder = new StringBuilder();
+        private final String className;
+
+        private Source(String packageName, String className) {
+            this.className = className;
+            if(!packageName.isEmpty()) {
+                line("package " + packageName + ";");
+                line("");
+            }
+            line("import naitsirc98.bytebuffertest.MemoryUtils;");
+            line("");
+            line("import java.nio.ByteBuffer;");
+            line("import java.util.Objects;");
+            line("");
+        }
+
+        private void header(String description, StructLayout layout, boolean offsets) {
+            line("/**");
+            line(" * " + description);
+            for(StructField field : layout.fields()) {
+                line(" * " + (offsets ? field.toString() : field.name() + ": " + field.type().javaType()
+                        + (field.isArray() ? "[" + field.length() + "]" : "")));
+            }
+            line(" *");
+            line(" * Generated by " + GENERATOR + ", do not edit.");
+            line(" */");
+            line("public final class " + className + " {");
+            line("");
+        }
+
+        private void method(String signature, String... body) {
+            line("    " + signature + " {");
+            for(String statement : body) {
+                line("        " + statement);
+            }
+            line("    }");
+            line("");
+        }
+
+        private void line(String line) {
+            builder.append(line).append('\n');
+        }
+
+        private String end() {
+            // Drop the blank line after the last member
+            builder.setLength(builder.length() - 1);
+            return builder.append("}\n").toString();
+        }
+    }
+
+    private FlyweightGenerator() {}
+}
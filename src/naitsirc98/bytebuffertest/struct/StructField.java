@@ -0,0 +1,61 @@
+package naitsirc98.bytebuffertest.struct;
+
+/**
+ * Field of a {@link StructLayout}: a primitive or a fixed length array of primitives at a fixed offset of the struct.
+ */
+public final class StructField {
+
+    private final String name;
+    private final FieldType type;
+    private final int length;
+    private final int alignment;
+    private final long offset;
+
+    StructField(String name, FieldType type, int length, int alignment, long offset) {
+        this.name = name;
+        this.type = type;
+        this.length = length;
+        this.alignment = alignment;
+        this.offset = offset;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public FieldType type() {
+        return type;
+    }
+
+    /**
+     * Number of elements, 1 unless the field is an array.
+     */
+    public int length() {
+        return length;
+    }
+
+    public boolean isArray() {
+        return length > 1;
+    }
+
+    public int alignment() {
+        return alignment;
+    }
+
+    public long offset() {
+        return offset;
+    }
+
+    public long size() {
+        return (long) type.size() * length;
+    }
+
+    StructField at(long offset) {
+        return new StructField(name, type, length, alignment, offset);
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + type.javaType() + (isArray() ? "[" + length + "]" : "") + " at " + offset;
+    }
+}
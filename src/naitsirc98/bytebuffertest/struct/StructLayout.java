@@ -0,0 +1,206 @@
+package naitsirc98.bytebuffertest.struct;
+
+import javax.lang.model.SourceVersion;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Layout of an off-heap struct: its fields with their offsets, its alignment and its size (the stride between
+ * consecutive structs of an array, tail padding included). Fields are naturally aligned unless the layout is
+ * {@link Builder#packed() packed}, and may be {@link Builder#reorder() reordered} by decreasing alignment so
+ * there is as little padding as possible.
+ *
+ * The same layout also describes a struct of arrays: one column per field, each one starting on a
+ * {@link #COLUMN_ALIGNMENT} byte boundary, see {@link #columnOffset(StructField, long)}.
+ *
+ * {@link FlyweightGenerator} turns a layout into flyweight accessor classes.
+ */
+public final class StructLayout {
+
+    public static final int COLUMN_ALIGNMENT = 64;
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    private final String name;
+    private final List<StructField> fields;
+    private final int alignment;
+    private final long size;
+
+    private StructLayout(String name, List<StructField> fields, int alignment, long size) {
+        this.name = name;
+        this.fields = Collections.unmodifiableList(fields);
+        this.alignment = alignment;
+        this.size = size;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public List<StructField> fields() {
+        return fields;
+    }
+
+    public StructField field(String name) {
+        for(StructField field : fields) {
+            if(field.name().equals(name)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("No field " + name + " in " + this.name);
+    }
+
+    public long offset(String name) {
+        return field(name).offset();
+    }
+
+    public int alignment() {
+        return alignment;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Bytes taken by the fields themselves, without padding.
+     */
+    public long payloadSize() {
+        long payload = 0;
+        for(StructField field : fields) {
+            payload += field.size();
+        }
+        return payload;
+    }
+
+    /**
+     * Offset of the column of field in a struct of arrays of count structs.
+     */
+    public long columnOffset(StructField field, long count) {
+        long offset = 0;
+        for(StructField column : fields) {
+            if(column == field) {
+                return offset;
+            }
+            offset = align(offset + column.size() * count, COLUMN_ALIGNMENT);
+        }
+        throw new IllegalArgumentException(field.name() + " is not a field of " + name);
+    }
+
+    /**
+     * Bytes taken by a struct of arrays of count structs.
+     */
+    public long columnsSize(long count) {
+        long offset = 0;
+        for(StructField column : fields) {
+            offset = align(offset + column.size() * count, COLUMN_ALIGNMENT);
+        }
+        return offset;
+    }
+
+    static long align(long offset, long alignment) {
+        return (offset + alignment - 1) & -alignment;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(name).append(" {size=").append(size).append(", alignment=").append(alignment)
+                .append(", padding=").append(size - payloadSize());
+        for(StructField field : fields) {
+            builder.append(", ").append(field);
+        }
+        return builder.append('}').toString();
+    }
+
+    public static final class Builder {
+
+        private final String name;
+        private final List<StructField> fields = new ArrayList<>();
+        private final Set<String> names = new HashSet<>();
+        private int alignment = 1;
+        private boolean packed;
+        private boolean reorder;
+
+        private Builder(String name) {
+            checkIdentifier(name);
+            this.name = name;
+        }
+
+        public Builder field(String name, FieldType type) {
+            return array(name, type, 1);
+        }
+
+        public Builder array(String name, FieldType type, int length) {
+            checkIdentifier(name);
+            if(!names.add(name)) {
+                throw new IllegalArgumentException("Duplicated field " + name + " in " + this.name);
+            }
+            if(length < 1) {
+                throw new IllegalArgumentException("Length of " + name + " must be positive: " + length);
+            }
+            fields.add(new StructField(name, type, length, type.size(), 0));
+            return this;
+        }
+
+        /**
+         * Minimum alignment of the struct, for instance 64 to give every struct of an array its own cache line.
+         */
+        public Builder align(int alignment) {
+            if(alignment < 1 || Integer.bitCount(alignment) != 1) {
+                throw new IllegalArgumentException("Alignment must be a power of two: " + alignment);
+            }
+            this.alignment = alignment;
+            return this;
+        }
+
+        /**
+         * Lays fields one after another without alignment padding. Accesses may be unaligned.
+         */
+        public Builder packed() {
+            packed = true;
+            return this;
+        }
+
+        /**
+         * Sorts fields by decreasing alignment, which removes all padding between them.
+         */
+        public Builder reorder() {
+            reorder = true;
+            return this;
+        }
+
+        public StructLayout build() {
+            if(fields.isEmpty()) {
+                throw new IllegalStateException(name + " has no fields");
+            }
+            List<StructField> ordered = new ArrayList<>(fields);
+            if(reorder) {
+                // Stable, so fields of the same alignment keep their declaration order
+                ordered.sort(Comparator.comparingInt(StructField::alignment).reversed());
+            }
+            List<StructField> placed = new ArrayList<>(ordered.size());
+            int structAlignment = alignment;
+            long offset = 0;
+            for(StructField field : ordered) {
+                final int fieldAlignment = packed ? 1 : field.alignment();
+                offset = StructLayout.align(offset, fieldAlignment);
+                placed.add(field.at(offset));
+                offset += field.size();
+                structAlignment = Math.max(structAlignment, fieldAlignment);
+            }
+            return new StructLayout(name, placed, structAlignment, StructLayout.align(offset, structAlignment));
+        }
+
+        private static void checkIdentifier(String name) {
+            if(name == null || !SourceVersion.isName(name) || name.contains(".")) {
+                throw new IllegalArgumentException("Not a valid Java identifier: " + name);
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package naitsirc98.bytebuffertest.workload;
+
+public enum AccessPattern {
+    SEQUENTIAL,
+    STRIDED,
+    RANDOM,
+    ZIPFIAN
+}
@@ -0,0 +1,267 @@
+package naitsirc98.bytebuffertest.workload;
+
+import naitsirc98.bytebuffertest.MemoryUtils;
+import naitsirc98.bytebuffertest.OffHeapRegion;
+import naitsirc98.bytebuffertest.alloc.ManagedBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Memory a {@link Workload} runs over: a ByteBuffer through its absolute accessors, an {@link OffHeapRegion} or a
+ * {@link ManagedBuffer} through their checked accessors, or a raw address through the unchecked {@link MemoryUtils}
+ * accessors.
+ */
+public interface AccessTarget {
+
+    static AccessTarget of(ByteBuffer buffer) {
+        return new BufferTarget(buffer);
+    }
+
+    static AccessTarget of(OffHeapRegion region) {
+        return new RegionTarget(region);
+    }
+
+    static AccessTarget of(ManagedBuffer buffer) {
+        return new ManagedTarget(buffer);
+    }
+
+    static AccessTarget ofPointer(long address, long size) {
+        return new PointerTarget(address, size);
+    }
+
+    long size();
+
+    byte getByte(long offset);
+
+    void setByte(long offset, byte value);
+
+    int getInt(long offset);
+
+    void setInt(long offset, int value);
+
+    long getLong(long offset);
+
+    void setLong(long offset, long value);
+
+    double getDouble(long offset);
+
+    void setDouble(long offset, double value);
+
+    final class BufferTarget implements AccessTarget {
+
+        private final ByteBuffer buffer;
+
+        private BufferTarget(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long size() {
+            return buffer.capacity();
+        }
+
+        @Override
+        public byte getByte(long offset) {
+            return buffer.get((int) offset);
+        }
+
+        @Override
+        public void setByte(long offset, byte value) {
+            buffer.put((int) offset, value);
+        }
+
+        @Override
+        public int getInt(long offset) {
+            return buffer.getInt((int) offset);
+        }
+
+        @Override
+        public void setInt(long offset, int value) {
+            buffer.putInt((int) offset, value);
+        }
+
+        @Override
+        public long getLong(long offset) {
+            return buffer.getLong((int) offset);
+        }
+
+        @Override
+        public void setLong(long offset, long value) {
+            buffer.putLong((int) offset, value);
+        }
+
+        @Override
+        public double getDouble(long offset) {
+            return buffer.getDouble((int) offset);
+        }
+
+        @Override
+        public void setDouble(long offset, double value) {
+            buffer.putDouble((int) offset, value);
+        }
+    }
+
+    final class RegionTarget implements AccessTarget {
+
+        private final OffHeapRegion region;
+
+        private RegionTarget(OffHeapRegion region) {
+            this.region = region;
+        }
+
+        @Override
+        public long size() {
+            return region.size();
+        }
+
+        @Override
+        public byte getByte(long offset) {
+            return region.getByte(offset);
+        }
+
+        @Override
+        public void setByte(long offset, byte value) {
+            region.setByte(offset, value);
+        }
+
+        @Override
+        public int getInt(long offset) {
+            return region.getInt(offset);
+        }
+
+        @Override
+        public void setInt(long offset, int value) {
+            region.setInt(offset, value);
+        }
+
+        @Override
+        public long getLong(long offset) {
+            return region.getLong(offset);
+        }
+
+        @Override
+        public void setLong(long offset, long value) {
+            region.setLong(offset, value);
+        }
+
+        @Override
+        public double getDouble(long offset) {
+            return region.getDouble(offset);
+        }
+
+        @Override
+        public void setDouble(long offset, double value) {
+            region.setDouble(offset, value);
+        }
+    }
+
+    final class ManagedTarget implements AccessTarget {
+
+        private final ManagedBuffer buffer;
+
+        private ManagedTarget(ManagedBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long size() {
+            return buffer.size();
+        }
+
+        @Override
+        public byte getByte(long offset) {
+            return buffer.getByte(offset);
+        }
+
+        @Override
+        public void setByte(long offset, byte value) {
+            buffer.setByte(offset, value);
+        }
+
+        @Override
+        public int getInt(long offset) {
+            return buffer.getInt(offset);
+        }
+
+        @Override
+        public void setInt(long offset, int value) {
+            buffer.setInt(offset, value);
+        }
+
+        @Override
+        public long getLong(long offset) {
+            return buffer.getLong(offset);
+        }
+
+        @Override
+        public void setLong(long offset, long value) {
+            buffer.setLong(offset, value);
+        }
+
+        @Override
+        public double getDouble(long offset) {
+            return buffer.getDouble(offset);
+        }
+
+        @Override
+        public void setDouble(long offset, double value) {
+            buffer.setDouble(offset, value);
+        }
+    }
+
+    final class PointerTarget implements AccessTarget {
+
+        private final long address;
+        private final long size;
+
+        private PointerTarget(long address, long size) {
+            this.address = address;
+            this.size = size;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public byte getByte(long offset) {
+            return MemoryUtils.getByte(address, offset);
+        }
+
+        @Override
+        public void setByte(long offset, byte value) {
+            MemoryUtils.setByte(address, offset, value);
+        }
+
+        @Override
+        public int getInt(long offset) {
+            return MemoryUtils.getInt(address, offset);
+        }
+
+        @Override
+        public void setInt(long offset, int value) {
+            MemoryUtils.setInt(address, offset, value);
+        }
+
+        @Override
+        public long getLong(long offset) {
+            return MemoryUtils.getLong(address, offset);
+        }
+
+        @Override
+        public void setLong(long offset, long value) {
+            MemoryUtils.setLong(address, offset, value);
+        }
+
+        @Override
+        public double getDouble(long offset) {
+            return MemoryUtils.getDouble(address, offset);
+        }
+
+        @Override
+        public void setDouble(long offset, double value) {
+            MemoryUtils.setDouble(address, offset, value);
+        }
+    }
+}
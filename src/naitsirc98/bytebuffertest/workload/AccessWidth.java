@@ -0,0 +1,18 @@
+package naitsirc98.bytebuffertest.workload;
+
+public enum AccessWidth {
+    BYTE(Byte.BYTES),
+    INT(Integer.BYTES),
+    LONG(Long.BYTES),
+    DOUBLE(Double.BYTES);
+
+    private final int bytes;
+
+    AccessWidth(int bytes) {
+        this.bytes = bytes;
+    }
+
+    public int bytes() {
+        return bytes;
+    }
+}
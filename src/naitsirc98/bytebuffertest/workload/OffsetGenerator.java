@@ -0,0 +1,31 @@
+package naitsirc98.bytebuffertest.workload;
+
+import java.util.SplittableRandom;
+
+/**
+ * Produces the byte offsets of a workload. Offsets are multiples of the access width and always leave room for a
+ * full access before the end of the target.
+ */
+public interface OffsetGenerator {
+
+    long next();
+
+    static OffsetGenerator of(Workload workload, long size, SplittableRandom random) {
+        final long slots = size / workload.width().bytes();
+        if(slots <= 0) {
+            throw new IllegalArgumentException("Target of " + size + " bytes is smaller than a " + workload.width() + " access");
+        }
+        switch(workload.pattern()) {
+            case SEQUENTIAL:
+                return new StridedOffsets(slots, workload.width().bytes(), workload.width().bytes());
+            case STRIDED:
+                return new StridedOffsets(slots, workload.width().bytes(), workload.stride());
+            case RANDOM:
+                return new UniformOffsets(slots, workload.width().bytes(), random);
+            case ZIPFIAN:
+                return new ZipfianOffsets(slots, workload.width().bytes(), workload.zipfExponent(), random);
+            default:
+                throw new IllegalArgumentException("Unknown access pattern: " + workload.pattern());
+        }
+    }
+}
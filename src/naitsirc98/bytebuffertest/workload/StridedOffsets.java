@@ -0,0 +1,31 @@
+package naitsirc98.bytebuffertest.workload;
+
+final class StridedOffsets implements OffsetGenerator {
+
+    private final long limit;
+    private final long width;
+    private final long stride;
+    private long pass;
+    private long offset;
+
+    StridedOffsets(long slots, int width, int stride) {
+        if(stride <= 0 || stride % width != 0) {
+            throw new IllegalArgumentException("Stride " + stride + " must be a positive multiple of " + width);
+        }
+        this.limit = slots * width;
+        this.width = width;
+        this.stride = stride;
+        this.offset = -stride;
+    }
+
+    @Override
+    public long next() {
+        offset += stride;
+        if(offset >= limit) {
+            // Start the next pass one access further so every slot is eventually visited
+            pass = (pass + width) % Math.min(stride, limit);
+            offset = pass;
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,21 @@
+package naitsirc98.bytebuffertest.workload;
+
+import java.util.SplittableRandom;
+
+final class UniformOffsets implements OffsetGenerator {
+
+    private final long slots;
+    private final int width;
+    private final SplittableRandom random;
+
+    UniformOffsets(long slots, int width, SplittableRandom random) {
+        this.slots = slots;
+        this.width = width;
+        this.random = random;
+    }
+
+    @Override
+    public long next() {
+        return random.nextLong(slots) * width;
+    }
+}
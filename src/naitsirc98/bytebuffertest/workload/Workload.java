@@ -0,0 +1,115 @@
+package naitsirc98.bytebuffertest.workload;
+
+import naitsirc98.bytebuffertest.LatencyHistogram;
+
+import java.util.SplittableRandom;
+
+/**
+ * Access pattern, width and read/write mix of the operations run over an {@link AccessTarget}.
+ */
+public final class Workload {
+
+    private final AccessPattern pattern;
+    private final AccessWidth width;
+    private final int readPercent;
+    private final int stride;
+    private final double zipfExponent;
+
+    public Workload(AccessPattern pattern, AccessWidth width, int readPercent, int stride, double zipfExponent) {
+        if(readPercent < 0 || readPercent > 100) {
+            throw new IllegalArgumentException("Read percent must be in [0, 100]: " + readPercent);
+        }
+        this.pattern = pattern;
+        this.width = width;
+        this.readPercent = readPercent;
+        this.stride = stride;
+        this.zipfExponent = zipfExponent;
+    }
+
+    public AccessPattern pattern() {
+        return pattern;
+    }
+
+    public AccessWidth width() {
+        return width;
+    }
+
+    public int readPercent() {
+        return readPercent;
+    }
+
+    public int stride() {
+        return stride;
+    }
+
+    public double zipfExponent() {
+        return zipfExponent;
+    }
+
+    public OffsetGenerator offsets(AccessTarget target, SplittableRandom random) {
+        return OffsetGenerator.of(this, target.size(), random);
+    }
+
+    /**
+     * Runs {@code operations} accesses and returns a checksum of the values read, so the reads cannot be optimized
+     * away. When {@code histogram} is not null the latency of every access is recorded in it.
+     */
+    public long run(AccessTarget target, OffsetGenerator offsets, SplittableRandom random, int operations,
+                    LatencyHistogram histogram) {
+        long checksum = 0;
+        for(int i = 0;i < operations;i++) {
+            final long offset = offsets.next();
+            final boolean read = random.nextInt(100) < readPercent;
+            if(histogram != null) {
+                final long start = System.nanoTime();
+                checksum += access(target, offset, read, i);
+                histogram.record(System.nanoTime() - start);
+            } else {
+                checksum += access(target, offset, read, i);
+            }
+        }
+        return checksum;
+    }
+
+    private long access(AccessTarget target, long offset, boolean read, int value) {
+        switch(width) {
+            case BYTE:
+                if(read) {
+                    return target.getByte(offset);
+                }
+                target.setByte(offset, (byte) value);
+                return 0;
+            case INT:
+                if(read) {
+                    return target.getInt(offset);
+                }
+                target.setInt(offset, value);
+                return 0;
+            case LONG:
+                if(read) {
+                    return target.getLong(offset);
+                }
+                target.setLong(offset, value);
+                return 0;
+            case DOUBLE:
+                if(read) {
+                    return Double.doubleToRawLongBits(target.getDouble(offset));
+                }
+                target.setDouble(offset, value);
+                return 0;
+            default:
+                throw new IllegalStateException("Unknown access width: " + width);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Workload{" +
+                "pattern=" + pattern +
+                ", width=" + width +
+                ", readPercent=" + readPercent +
+                (pattern == AccessPattern.STRIDED ? ", stride=" + stride : "") +
+                (pattern == AccessPattern.ZIPFIAN ? ", zipfExponent=" + zipfExponent : "") +
+                '}';
+    }
+}
@@ -0,0 +1,86 @@
+package naitsirc98.bytebuffertest.workload;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zipf distributed ranks drawn with rejection-inversion sampling (Hörmann and Derflinger), which needs O(1) setup
+ * and so works for the billions of slots of a multi GB target. Ranks are scattered over the target with a hash so
+ * the hot slots are not all packed at its start.
+ */
+final class ZipfianOffsets implements OffsetGenerator {
+
+    private final long slots;
+    private final int width;
+    private final double exponent;
+    private final SplittableRandom random;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double s;
+
+    ZipfianOffsets(long slots, int width, double exponent, SplittableRandom random) {
+        if(exponent <= 0) {
+            throw new IllegalArgumentException("Zipf exponent must be positive: " + exponent);
+        }
+        this.slots = slots;
+        this.width = width;
+        this.exponent = exponent;
+        this.random = random;
+        this.hIntegralX1 = hIntegral(1.5) - 1.0;
+        this.hIntegralN = hIntegral(slots + 0.5);
+        this.s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    @Override
+    public long next() {
+        return Math.floorMod(mix(rank()), slots) * width;
+    }
+
+    private long rank() {
+        while(true) {
+            final double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            final double x = hIntegralInverse(u);
+            long k = (long) (x + 0.5);
+            if(k < 1) {
+                k = 1;
+            } else if(k > slots) {
+                k = slots;
+            }
+            if(k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    private double hIntegral(double x) {
+        final double logX = Math.log(x);
+        return helper2((1.0 - exponent) * logX) * logX;
+    }
+
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1.0 - exponent);
+        if(t < -1.0) {
+            t = -1.0;
+        }
+        return Math.exp(helper1(t) * x);
+    }
+
+    // log1p(x) / x, accurate near 0
+    private static double helper1(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+
+    // expm1(x) / x, accurate near 0
+    private static double helper2(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1.0 + x * 0.5 * (1.0 + x * (1.0 / 3.0) * (1.0 + 0.25 * x));
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}